@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2016 dzyh
+ * All rights reserved.
+ *
+ * $$File: $$
+ * $$DateTime: $$
+ * $$Author: $$
+ * $$Revision: $$
+ */
+
+package common.cache;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * 基准测试使用的缓存对象, 对应表bench_entity, 业务唯一键是name
+ *
+ * @author wls
+ */
+public class BenchEntity implements ICacheable
+{
+	private long id;
+
+	private String name;
+
+	@CacheKeyField
+	private String cacheKey;
+
+	private long cachedTime;
+
+	private String payload;
+
+	public BenchEntity()
+	{
+	}
+
+	public BenchEntity(String name, String payload)
+	{
+		this.name = name;
+		this.payload = payload;
+	}
+
+	public String getCacheKey()
+	{
+		return cacheKey;
+	}
+
+	@Override
+	public long getCachedTime()
+	{
+		return cachedTime;
+	}
+
+	@Override
+	public long getId()
+	{
+		return id;
+	}
+
+	@Override
+	public String getKeyGene()
+	{
+		return "bench:" + name;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public String getPayload()
+	{
+		return payload;
+	}
+
+	@Override
+	public <T extends ICacheable> void readStream(ObjectInput in) throws IOException, ClassNotFoundException
+	{
+		id = in.readLong();
+		name = in.readUTF();
+		cacheKey = in.readUTF();
+		cachedTime = in.readLong();
+		payload = in.readUTF();
+	}
+
+	public void setCacheKey(String cacheKey)
+	{
+		this.cacheKey = cacheKey;
+	}
+
+	@Override
+	public void setCachedTime(long time)
+	{
+		cachedTime = time;
+	}
+
+	public void setId(long id)
+	{
+		this.id = id;
+	}
+
+	public void setName(String name)
+	{
+		this.name = name;
+	}
+
+	public void setPayload(String payload)
+	{
+		this.payload = payload;
+	}
+
+	@Override
+	public void writeStream(ObjectOutput out) throws IOException
+	{
+		out.writeLong(id);
+		out.writeUTF(name);
+		out.writeUTF(cacheKey == null ? "" : cacheKey);
+		out.writeLong(cachedTime);
+		out.writeUTF(payload == null ? "" : payload);
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2016 dzyh
+ * All rights reserved.
+ *
+ * $$File: $$
+ * $$DateTime: $$
+ * $$Author: $$
+ * $$Revision: $$
+ */
+
+package common.cache;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 读写路径的吞吐量, 线程数由运行参数-t指定, 见{@link CacheBenchmarkRunner}. 读取和写入都在全部条目中均匀随机选择key
+ *
+ * @author wls
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms8g", "-Xmx8g" })
+public class CacheBenchmark extends CacheState
+{
+	/**
+	 * 不在缓存也不在数据库中的key数
+	 */
+	private static final int MISS_KEYS = 1 << 16;
+
+	private String[] missKeys;
+
+	@Benchmark
+	public String calculateKey()
+	{
+		return service.calculateKey(entities[ThreadLocalRandom.current().nextInt(size)]);
+	}
+
+	/**
+	 * 写入已有的key后标记为脏, 每次迭代结束写入数据库
+	 */
+	@TearDown(Level.Iteration)
+	public void flush()
+	{
+		service.flushDirtyEntries();
+	}
+
+	@Benchmark
+	public BenchEntity readHit()
+	{
+		return service.readObject(entities[ThreadLocalRandom.current().nextInt(size)].getCacheKey(), false);
+	}
+
+	/**
+	 * 没有使用不存在记录的缓存, 每次都查询数据库
+	 */
+	@Benchmark
+	public BenchEntity readMiss()
+	{
+		return service.readObject(missKeys[ThreadLocalRandom.current().nextInt(MISS_KEYS)], false);
+	}
+
+	@Benchmark
+	public String writeObject()
+	{
+		BenchEntity e = entities[ThreadLocalRandom.current().nextInt(size)];
+		return service.writeObject(new BenchEntity(e.getName(), PAYLOAD));
+	}
+
+	@Override
+	void prepare()
+	{
+		missKeys = new String[MISS_KEYS];
+		for (int i = 0; i < MISS_KEYS; i++) {
+			missKeys[i] = service.calculateKey(new BenchEntity("miss" + i, PAYLOAD));
+		}
+	}
+}
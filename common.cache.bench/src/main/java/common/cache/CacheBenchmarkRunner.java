@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2016 dzyh
+ * All rights reserved.
+ *
+ * $$File: $$
+ * $$DateTime: $$
+ * $$Author: $$
+ * $$Revision: $$
+ */
+
+package common.cache;
+
+import java.io.File;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 依次用不同的线程数运行{@link CacheBenchmark}, 再运行{@link CacheMaintenanceBenchmark}, 每次运行的结果写入一个JSON文件,
+ * 用于对比不同版本.
+ * <p>
+ * 用法: java -jar benchmarks.jar [结果目录] [线程数列表, 默认1,4,16] [缓存大小列表, 默认10000到10000000]. 单独运行某个测试可以直接用JMH的命令行:
+ * java -cp benchmarks.jar org.openjdk.jmh.Main readHit -t 8 -p size=1000000 -rf json
+ *
+ * @author wls
+ */
+public class CacheBenchmarkRunner
+{
+	public static void main(String[] args) throws RunnerException
+	{
+		File dir = new File(args.length > 0 ? args[0] : ".");
+		String[] threads = (args.length > 1 ? args[1] : "1,4,16").split(",");
+		String[] sizes = args.length > 2 ? args[2].split(",") : null;
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IllegalArgumentException("Can not create directory " + dir);
+		}
+
+		for (String t : threads) {
+			ChainedOptionsBuilder builder = options(CacheBenchmark.class, sizes, new File(dir, "cache-benchmark-" + t.trim()
+					+ "t.json"));
+			new Runner(builder.threads(Integer.parseInt(t.trim())).build()).run();
+		}
+		new Runner(options(CacheMaintenanceBenchmark.class, sizes, new File(dir, "cache-maintenance.json")).build()).run();
+	}
+
+	private static ChainedOptionsBuilder options(Class<?> benchmark, String[] sizes, File result)
+	{
+		ChainedOptionsBuilder builder = new OptionsBuilder().include(Pattern.quote(benchmark.getName()) + "\\.")
+				.resultFormat(ResultFormatType.JSON).result(result.getPath());
+		if (sizes != null) {
+			builder.param("size", sizes);
+		}
+		return builder;
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2016 dzyh
+ * All rights reserved.
+ *
+ * $$File: $$
+ * $$DateTime: $$
+ * $$Author: $$
+ * $$Revision: $$
+ */
+
+package common.cache;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 定时任务的耗时: 过期扫描和写入数据库, 单线程执行, 每次调用前准备好要处理的条目
+ *
+ * @author wls
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xms8g", "-Xmx8g" })
+public class CacheMaintenanceBenchmark
+{
+	/**
+	 * 每次调用前写入dirtyCount个已有的key
+	 */
+	@State(Scope.Benchmark)
+	public static class DirtyState extends CacheState
+	{
+		@Param({ "1000", "10000", "100000" })
+		public int dirtyCount;
+
+		@Setup(Level.Invocation)
+		public void dirty()
+		{
+			for (int i = 0; i < Math.min(dirtyCount, size); i++) {
+				service.writeObject(new BenchEntity(entities[i].getName(), PAYLOAD));
+			}
+		}
+	}
+
+	/**
+	 * 每次调用前所有条目都已经到期
+	 */
+	@State(Scope.Benchmark)
+	public static class ExpiredState extends CacheState
+	{
+		@Setup(Level.Invocation)
+		public void expire() throws InterruptedException
+		{
+			populate(System.currentTimeMillis() - service.getExpireMillisecond() + EXPIRE_DELAY);
+			//时间轮最低一层的桶跨度约1秒
+			Thread.sleep(EXPIRE_DELAY + 2048);
+		}
+	}
+
+	/**
+	 * 没有到期的条目
+	 */
+	@State(Scope.Benchmark)
+	public static class IdleState extends CacheState
+	{
+	}
+
+	private static final long EXPIRE_DELAY = 1000;
+
+	@Benchmark
+	public void expireAll(ExpiredState state)
+	{
+		state.service.expireEntries();
+	}
+
+	/**
+	 * 没有条目到期时推进时间轮的开销, 和缓存大小无关
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@Warmup(iterations = 3, time = 2)
+	@Measurement(iterations = 5, time = 2)
+	public void expireIdle(IdleState state)
+	{
+		state.service.expireEntries();
+	}
+
+	@Benchmark
+	public void flushDirty(DirtyState state)
+	{
+		state.service.flushDirtyEntries();
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2016 dzyh
+ * All rights reserved.
+ *
+ * $$File: $$
+ * $$DateTime: $$
+ * $$Author: $$
+ * $$Revision: $$
+ */
+
+package common.cache;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * 基准测试的公共状态: 每组参数启动一个使用H2内存库的{@link MapBasedCacheService}, 直接放入size个条目(不经过数据库),
+ * 定时任务的间隔设为1小时, 避免后台过期和写入干扰测量
+ *
+ * @author wls
+ */
+@State(Scope.Benchmark)
+public abstract class CacheState
+{
+	static final String PAYLOAD = "0123456789abcdefghijklmnopqrstuvwxyz0123456789abcdefghijklmnopqrstuvwxyz0123456789abcdefghijklmnopqrst";
+
+	@Param({ "10000", "100000", "1000000", "10000000" })
+	public int size;
+
+	H2CacheDBOperator dbOperator;
+
+	MapBasedCacheService<BenchEntity> service;
+
+	/**
+	 * 缓存中的对象, 下标i的name是"e"+i
+	 */
+	BenchEntity[] entities;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IllegalArgumentException, IllegalAccessException
+	{
+		dbOperator = new H2CacheDBOperator();
+		service = new MapBasedCacheService<>();
+		service.setDbOperator(dbOperator);
+		service.setName(getClass().getSimpleName() + "-" + size);
+		service.setSchedlueTimeSecond(3600);
+		service.setFlushIntervalSecond(3600);
+		service.start();
+		entities = new BenchEntity[size];
+		for (int i = 0; i < size; i++) {
+			BenchEntity e = new BenchEntity("e" + i, PAYLOAD);
+			e.setId(i + 1);
+			e.setCacheKey(service.calculateKey(e));
+			entities[i] = e;
+		}
+		populate(System.currentTimeMillis());
+		prepare();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		service.stop();
+		dbOperator.shutdown();
+	}
+
+	/**
+	 * {@link #setUp()}的最后调用, 子类准备自己的数据
+	 */
+	void prepare()
+	{
+	}
+
+	/**
+	 * 把{@link #entities}作为从数据库加载的记录放入缓存, 已有的条目被替换
+	 *
+	 * @param cachedTime
+	 */
+	void populate(long cachedTime)
+	{
+		long now = System.currentTimeMillis();
+		for (BenchEntity e : entities) {
+			e.setCachedTime(cachedTime);
+			service.putLoaded(e.getCacheKey(), e, now);
+		}
+	}
+}
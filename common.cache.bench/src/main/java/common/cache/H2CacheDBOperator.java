@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2016 dzyh
+ * All rights reserved.
+ *
+ * $$File: $$
+ * $$DateTime: $$
+ * $$Author: $$
+ * $$Revision: $$
+ */
+
+package common.cache;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import common.rds.dbutils.DbunitsDsOperator;
+import common.rds.exp.SQLRuntimeException;
+import common.rds.sql.H2SQLProvider;
+
+/**
+ * 基准测试使用的数据库访问, 每个实例一个MySQL兼容模式的H2内存库, 不依赖Spring容器. upsert使用H2的merge语法
+ *
+ * @author wls
+ */
+public class H2CacheDBOperator extends CacheDBOperator<BenchEntity>
+{
+	private static final AtomicInteger DATABASE_SEQUENCE = new AtomicInteger();
+
+	private final JdbcDataSource ds;
+
+	public H2CacheDBOperator()
+	{
+		super("id");
+		sqlProvider = new H2SQLProvider("id", persistentClass);
+		ds = new JdbcDataSource();
+		ds.setURL("jdbc:h2:mem:cache_bench_" + DATABASE_SEQUENCE.incrementAndGet() + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+		execute("create table bench_entity (id bigint auto_increment primary key, name varchar(64) not null,"
+				+ " cache_key varchar(64), cached_time bigint not null, payload varchar(1024))");
+		execute("create unique index bench_entity_cache_key on bench_entity(cache_key)");
+		jdbcTemplate = new JdbcTemplate(ds);
+		jdbcReader = new DbunitsDsOperator(ds);
+	}
+
+	/**
+	 * 删除内存库
+	 */
+	public void shutdown()
+	{
+		execute("shutdown");
+	}
+
+	private void execute(String sql)
+	{
+		try (Connection con = ds.getConnection(); Statement st = con.createStatement()) {
+			st.execute(sql);
+		}
+		catch (SQLException e) {
+			throw new SQLRuntimeException(e);
+		}
+	}
+}
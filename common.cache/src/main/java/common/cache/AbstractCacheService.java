@@ -10,16 +10,39 @@
 
 package common.cache;
 
-import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
-import common.rds.exp.BugError;
-import common.utils.MD5Util;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * @author wls
  */
 abstract public class AbstractCacheService<T extends ICacheable> implements ICacheService<T>
 {
+	/**
+	 * 异步接口加载未命中的key使用的线程数
+	 */
+	private int asyncThreads = 8;
+
+	/**
+	 * 异步接口等待加载的任务数上限, 超出时返回失败的Future
+	 */
+	private int asyncQueueSize = 10000;
+
+	private ListeningExecutorService asyncExecutor;
 
 	/* (non-Javadoc)
 	 * @see common.cache.ICacheService#calculateKey(common.cache.ICacheable)
@@ -27,12 +50,157 @@ abstract public class AbstractCacheService<T extends ICacheable> implements ICac
 	@Override
 	public String calculateKey(T t)
 	{
-		try {
-			return MD5Util.md5Encode(t.getKeyGene());
+		return CacheKeys.toHex(CacheKeys.md5(t.getKeyGene()));
+	}
+
+	/**
+	 * @return the asyncQueueSize
+	 */
+	public int getAsyncQueueSize()
+	{
+		return asyncQueueSize;
+	}
+
+	/**
+	 * @return the asyncThreads
+	 */
+	public int getAsyncThreads()
+	{
+		return asyncThreads;
+	}
+
+	/* (non-Javadoc)
+	 * @see common.cache.ICacheService#readObjectAsync(java.lang.String, boolean)
+	 */
+	@Override
+	public ListenableFuture<T> readObjectAsync(final String key, final boolean resetExpireTime)
+	{
+		T t = readIfCached(key, resetExpireTime);
+		if (t != null) {
+			return Futures.immediateFuture(t);
+		}
+		return submit(new Callable<T>() {
+			@Override
+			public T call()
+			{
+				return readObject(key, resetExpireTime);
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see common.cache.ICacheService#readObjectByKeyGene(java.lang.String, boolean)
+	 */
+	@Override
+	public T readObjectByKeyGene(String keyGene, boolean resetExpireTime)
+	{
+		return readObject(CacheKeys.toHex(CacheKeys.md5(keyGene)), resetExpireTime);
+	}
+
+	/* (non-Javadoc)
+	 * @see common.cache.ICacheService#readObjectsAsync(java.util.Collection, boolean)
+	 */
+	@Override
+	public ListenableFuture<Map<String, T>> readObjectsAsync(Collection<String> keys, final boolean resetExpireTime)
+	{
+		final Map<String, T> result = new HashMap<>();
+		final List<String> misses = new ArrayList<>();
+		for (String key : keys) {
+			T t = readIfCached(key, resetExpireTime);
+			if (t != null) {
+				result.put(key, t);
+			}
+			else {
+				misses.add(key);
+			}
 		}
-		catch (NoSuchAlgorithmException e) {
-			throw new BugError(e);
+		if (misses.isEmpty()) {
+			return Futures.immediateFuture(result);
 		}
+		return submit(new Callable<Map<String, T>>() {
+			@Override
+			public Map<String, T> call()
+			{
+				result.putAll(readObjects(misses, resetExpireTime));
+				return result;
+			}
+		});
 	}
 
+	/**
+	 * @param asyncQueueSize
+	 *            the asyncQueueSize to set
+	 */
+	public void setAsyncQueueSize(int asyncQueueSize)
+	{
+		this.asyncQueueSize = asyncQueueSize;
+	}
+
+	/**
+	 * @param asyncThreads
+	 *            the asyncThreads to set
+	 */
+	public void setAsyncThreads(int asyncThreads)
+	{
+		this.asyncThreads = asyncThreads;
+	}
+
+	/* (non-Javadoc)
+	 * @see common.cache.ICacheService#writeObjectAsync(common.cache.ICacheable)
+	 */
+	@Override
+	public ListenableFuture<String> writeObjectAsync(final T t)
+	{
+		return submit(new Callable<String>() {
+			@Override
+			public String call()
+			{
+				return writeObject(t);
+			}
+		});
+	}
+
+	/**
+	 * 只读缓存, 不访问数据库. 默认总是未命中, 由子类覆盖
+	 *
+	 * @param key
+	 * @param resetExpireTime
+	 * @return 未命中时返回null
+	 */
+	protected T readIfCached(String key, boolean resetExpireTime)
+	{
+		return null;
+	}
+
+	/**
+	 * 停止异步接口的线程池, 已经提交的任务继续执行
+	 */
+	protected synchronized void shutdownAsyncExecutor()
+	{
+		if (asyncExecutor != null) {
+			asyncExecutor.shutdown();
+			asyncExecutor = null;
+		}
+	}
+
+	private synchronized ListeningExecutorService asyncExecutor()
+	{
+		if (asyncExecutor == null) {
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(asyncThreads, asyncThreads, 0, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<Runnable>(asyncQueueSize), new ThreadFactoryBuilder().setDaemon(true)
+							.setNameFormat(getClass().getSimpleName() + "-async-%d").build());
+			asyncExecutor = MoreExecutors.listeningDecorator(executor);
+		}
+		return asyncExecutor;
+	}
+
+	private <V> ListenableFuture<V> submit(Callable<V> task)
+	{
+		try {
+			return asyncExecutor().submit(task);
+		}
+		catch (RejectedExecutionException e) {
+			return Futures.immediateFailedFuture(e);
+		}
+	}
 }
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2016 dzyh
+ * All rights reserved.
+ *
+ * $$File: $$
+ * $$DateTime: $$
+ * $$Author: $$
+ * $$Revision: $$
+ */
+
+package common.cache;
+
+/**
+ * 基于{@link CacheableWrapper}内部指针的双向链表, 头部是最久未访问的条目. 非线程安全
+ *
+ * @author wls
+ */
+final class AccessOrderDeque<T extends ICacheable>
+{
+	private CacheableWrapper<T> first;
+
+	private CacheableWrapper<T> last;
+
+	void addLast(CacheableWrapper<T> w)
+	{
+		w.prevInAccessOrder = last;
+		w.nextInAccessOrder = null;
+		if (last == null) {
+			first = w;
+		}
+		else {
+			last.nextInAccessOrder = w;
+		}
+		last = w;
+	}
+
+	void clear()
+	{
+		CacheableWrapper<T> w = first;
+		while (w != null) {
+			CacheableWrapper<T> next = w.nextInAccessOrder;
+			w.prevInAccessOrder = null;
+			w.nextInAccessOrder = null;
+			w.queueType = CacheableWrapper.NOT_IN_POLICY;
+			w = next;
+		}
+		first = null;
+		last = null;
+	}
+
+	boolean isEmpty()
+	{
+		return first == null;
+	}
+
+	void moveToBack(CacheableWrapper<T> w)
+	{
+		if (w != last) {
+			remove(w);
+			addLast(w);
+		}
+	}
+
+	CacheableWrapper<T> peekFirst()
+	{
+		return first;
+	}
+
+	CacheableWrapper<T> pollFirst()
+	{
+		CacheableWrapper<T> w = first;
+		if (w != null) {
+			remove(w);
+		}
+		return w;
+	}
+
+	void remove(CacheableWrapper<T> w)
+	{
+		CacheableWrapper<T> prev = w.prevInAccessOrder;
+		CacheableWrapper<T> next = w.nextInAccessOrder;
+		if (prev == null) {
+			first = next;
+		}
+		else {
+			prev.nextInAccessOrder = next;
+		}
+		if (next == null) {
+			last = prev;
+		}
+		else {
+			next.prevInAccessOrder = prev;
+		}
+		w.prevInAccessOrder = null;
+		w.nextInAccessOrder = null;
+	}
+}
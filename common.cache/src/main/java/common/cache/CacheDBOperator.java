@@ -11,19 +11,26 @@
 package common.cache;
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import common.rds.dao.GenericDao;
+import common.rds.exp.BugError;
+import common.rds.sql.AbstractSQLProvider;
+import common.rds.sql.FieldAccessor;
 
 /**
  * @author wls
  */
 public class CacheDBOperator<T extends ICacheable> extends GenericDao<T>
 {
-
 	private Field cacheKeyField;
 
 	/**
@@ -47,23 +54,31 @@ public class CacheDBOperator<T extends ICacheable> extends GenericDao<T>
 		}
 	}
 
+	/**
+	 * 按缓存key插入或更新, 一条upsert语句, 表中缓存key的列需要有唯一索引
+	 *
+	 * @param t
+	 */
 	@Transactional(readOnly = false, propagation = Propagation.REQUIRED)
 	public void createCacheable(T t)
 	{
-		try {
-			T tt = getByCachedKey(cacheKeyField.get(t));
-			if (tt == null) {
-				super.insertIgnore(t, true);
-			}
-			else {
-				Object idValue = sqlProvider.getIdField().get(tt);
-				sqlProvider.getIdField().set(t, idValue);
-				super.update(t);
-			}
-		}
-		catch (IllegalArgumentException | IllegalAccessException e) {
-			logger.error("Cache key field value get error:{}", e);
+		super.upsert(t, cacheKeyField.getName());
+		fillIds(Collections.singletonList(t));
+	}
+
+	/**
+	 * 批量版本的{@link #createCacheable(ICacheable)}: 一次批量upsert, 再用in查询补上数据库没有返回的id
+	 *
+	 * @param list
+	 */
+	@Transactional(readOnly = false, propagation = Propagation.REQUIRED)
+	public void createCacheables(List<T> list)
+	{
+		if (list.isEmpty()) {
+			return;
 		}
+		super.batchUpsert(list, cacheKeyField.getName());
+		fillIds(list);
 	}
 
 	@Transactional(readOnly = false, propagation = Propagation.REQUIRED)
@@ -80,6 +95,29 @@ public class CacheDBOperator<T extends ICacheable> extends GenericDao<T>
 		return list == null || list.size() == 0 ? null : list.get(0);
 	}
 
+	/**
+	 * 按缓存key批量查询, 见{@link #getByFieldIn(String, Collection)}
+	 *
+	 * @param keys
+	 * @return <缓存key, 对象>, 不存在的key不在结果中
+	 */
+	public Map<Object, T> getByCachedKeys(Collection<?> keys)
+	{
+		Map<Object, T> result = new HashMap<>();
+		if (keys.isEmpty()) {
+			return result;
+		}
+		try {
+			for (T t : super.getByFieldIn(cacheKeyField.getName(), keys)) {
+				result.put(cacheKeyField.get(t), t);
+			}
+		}
+		catch (IllegalArgumentException | IllegalAccessException e) {
+			throw new BugError(e);
+		}
+		return result;
+	}
+
 	/**
 	 * @return the cacheKeyField
 	 */
@@ -94,9 +132,90 @@ public class CacheDBOperator<T extends ICacheable> extends GenericDao<T>
 		return super.getAll();
 	}
 
+	/**
+	 * 按id顺序分页加载, 用于分段预热
+	 *
+	 * @param afterId
+	 *            不包含
+	 * @param lastId
+	 *            包含
+	 * @param limit
+	 * @return
+	 */
+	public List<T> loadCacheablePage(long afterId, long lastId, int limit)
+	{
+		return super.getByFieldRange(sqlProvider.getIdField().getName(), afterId, lastId, false, true, null, null, 0, limit,
+				sqlProvider.getUnderscoreIdName(), null);
+	}
+
 	@Transactional(readOnly = false, propagation = Propagation.REQUIRED)
 	public void updateCacheable(T t)
 	{
 		super.update(t);
 	}
+
+	@Transactional(readOnly = false, propagation = Propagation.REQUIRED)
+	public void updateCacheables(List<T> list)
+	{
+		super.batchUpdate(list);
+	}
+
+	/**
+	 * 没有id的对象按缓存key查询数据库中的id, 之后按id更新时才能找到记录
+	 *
+	 * @param list
+	 */
+	private void fillIds(List<T> list)
+	{
+		FieldAccessor accessor = sqlProvider.getAccessor();
+		Class<?> idType = sqlProvider.getIdField().getType();
+		List<T> missing = new ArrayList<>();
+		List<Object> keys = new ArrayList<>();
+		try {
+			for (T t : list) {
+				Object idValue = accessor.getId(t);
+				if (idValue == null || ((Number) idValue).longValue() <= 0) {
+					missing.add(t);
+					keys.add(cacheKeyField.get(t));
+				}
+			}
+			if (missing.isEmpty()) {
+				return;
+			}
+			Map<Object, Object> ids = getIdsByCachedKeys(keys);
+			for (int i = 0; i < missing.size(); i++) {
+				Number idNum = (Number) ids.get(keys.get(i));
+				if (idNum == null) {
+					continue;
+				}
+				accessor.setId(missing.get(i), idType == int.class || idType == Integer.class ? (Object) idNum.intValue()
+						: idNum.longValue());
+			}
+		}
+		catch (IllegalArgumentException | IllegalAccessException e) {
+			throw new BugError(e);
+		}
+	}
+
+	/**
+	 * 按缓存key查询已经存在的记录的id, 每{@link #IN_CHUNK_SIZE}个key一次in查询, 参数个数和getByFieldIn一样补齐.
+	 * 刚写入的记录可能还没有同步到从库, 所以用主库的jdbcTemplate查询
+	 *
+	 * @param keys
+	 * @return <缓存key, id>
+	 */
+	private Map<Object, Object> getIdsByCachedKeys(List<Object> keys)
+	{
+		String keyColumn = AbstractSQLProvider.underscoreName(cacheKeyField.getName());
+		String idColumn = sqlProvider.getUnderscoreIdName();
+		Map<Object, Object> ids = new HashMap<>();
+		for (int from = 0; from < keys.size(); from += IN_CHUNK_SIZE) {
+			Object[] args = padInArgs(keys.subList(from, Math.min(from + IN_CHUNK_SIZE, keys.size())));
+			String sql = sqlProvider.provideQueryColumnsByFieldInSQL(idColumn + ", " + keyColumn, keyColumn, args.length);
+			for (Map<String, Object> row : jdbcTemplate.queryForList(sql, args)) {
+				ids.put(row.get(keyColumn), row.get(idColumn));
+			}
+		}
+		return ids;
+	}
 }
@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2016 dzyh
+ * All rights reserved.
+ *
+ * $$File: $$
+ * $$DateTime: $$
+ * $$Author: $$
+ * $$Revision: $$
+ */
+
+package common.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import common.rds.exp.BugError;
+
+/**
+ * 128位缓存key. 默认的key是key因子的MD5的32位大写十六进制, 缓存内部只保存MD5的两个long, 需要字符串时再转换.
+ * 其他的key(覆盖了{@link ICacheService#calculateKey(ICacheable)}的情况, 包括小写的十六进制)先对UTF-8编码做一次MD5,
+ * 不能再转换回原始的key, 需要时从缓存对象的缓存key字段读取. 只有大写十六进制直接解析, 所以大小写不同的key仍然是不同的key
+ *
+ * @author wls
+ */
+final class CacheKeys
+{
+	private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+	private static final int HEX_KEY_LENGTH = 32;
+
+	private static final ThreadLocal<MessageDigest> MD5 = new ThreadLocal<MessageDigest>() {
+		@Override
+		protected MessageDigest initialValue()
+		{
+			try {
+				return MessageDigest.getInstance("MD5");
+			}
+			catch (NoSuchAlgorithmException e) {
+				throw new BugError(e);
+			}
+		}
+	};
+
+	/**
+	 * 用于哈希表和频率统计的哈希值
+	 *
+	 * @param high
+	 * @param low
+	 * @return
+	 */
+	static int hash(long high, long low)
+	{
+		long h = (high ^ (low * 0x9e3779b97f4a7c15L)) * 0xbf58476d1ce4e5b9L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	/**
+	 * @param digest
+	 *            {@link #digest(String)}的返回值
+	 * @param shardCount
+	 * @return key所属的分片
+	 */
+	static int shard(byte[] digest, int shardCount)
+	{
+		return shard(high(digest), low(digest), shardCount);
+	}
+
+	/**
+	 * @param high
+	 * @param low
+	 * @param shardCount
+	 * @return key所属的分片
+	 */
+	static int shard(long high, long low, int shardCount)
+	{
+		//和KeyIndex的段使用哈希值的不同位
+		return (int) ((low >>> 1) % shardCount);
+	}
+
+	/**
+	 * 缓存key对应的128位, 用{@link #high(byte[])}和{@link #low(byte[])}取出两个long
+	 *
+	 * @param key
+	 * @return 16字节
+	 */
+	static byte[] digest(String key)
+	{
+		if (!isHexKey(key)) {
+			return MD5.get().digest(key.getBytes(StandardCharsets.UTF_8));
+		}
+		byte[] bytes = new byte[HEX_KEY_LENGTH / 2];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) (hexValue(key.charAt(i * 2)) << 4 | hexValue(key.charAt(i * 2 + 1)));
+		}
+		return bytes;
+	}
+
+	static long high(byte[] digest)
+	{
+		return toLong(digest, 0);
+	}
+
+	static long low(byte[] digest)
+	{
+		return toLong(digest, 8);
+	}
+
+	/**
+	 * 和{@link common.utils.MD5Util#md5Encode(String)}一样用平台默认编码, 保证生成的key和已经保存的key一致
+	 *
+	 * @param keyGene
+	 * @return 16字节的摘要
+	 */
+	static byte[] md5(String keyGene)
+	{
+		return MD5.get().digest(keyGene.getBytes());
+	}
+
+	static String toHex(byte[] digest)
+	{
+		return toHex(high(digest), low(digest));
+	}
+
+	/**
+	 * @param high
+	 * @param low
+	 * @return 和{@link common.utils.MD5Util#md5Encode(String)}相同格式的32位大写十六进制
+	 */
+	static String toHex(long high, long low)
+	{
+		char[] chars = new char[HEX_KEY_LENGTH];
+		for (int i = 15; i >= 0; i--) {
+			chars[i] = HEX_DIGITS[(int) (high & 0xf)];
+			high >>>= 4;
+			chars[i + 16] = HEX_DIGITS[(int) (low & 0xf)];
+			low >>>= 4;
+		}
+		return new String(chars);
+	}
+
+	private static int hexValue(char c)
+	{
+		if (c >= '0' && c <= '9') {
+			return c - '0';
+		}
+		if (c >= 'A' && c <= 'F') {
+			return c - 'A' + 10;
+		}
+		return -1;
+	}
+
+	private static boolean isHexKey(String key)
+	{
+		if (key.length() != HEX_KEY_LENGTH) {
+			return false;
+		}
+		for (int i = 0; i < HEX_KEY_LENGTH; i++) {
+			if (hexValue(key.charAt(i)) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static long toLong(byte[] bytes, int from)
+	{
+		long value = 0;
+		for (int i = from; i < from + 8; i++) {
+			value = (value << 8) | (bytes[i] & 0xff);
+		}
+		return value;
+	}
+
+	private CacheKeys()
+	{
+	}
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2016 dzyh
+ * All rights reserved.
+ *
+ * $$File: $$
+ * $$DateTime: $$
+ * $$Author: $$
+ * $$Revision: $$
+ */
+
+package common.cache;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * 缓存快照文件, 用于重启时不访问数据库快速恢复缓存.
+ * <p>
+ * 格式: [int 魔数][int 版本][long 快照时间][条目...][byte 0 结束标记], 每个条目是[byte 1][long key高位][long key低位][byte 待同步操作][int 长度][对象].
+ * 先写临时文件再改名, 没有结束标记的文件视为不完整. 读取时按窗口内存映射文件
+ *
+ * @author wls
+ */
+final class CacheSnapshot<T extends ICacheable>
+{
+	/**
+	 * 读取快照时每个条目的回调
+	 */
+	interface Visitor<T>
+	{
+		void visit(long keyHigh, long keyLow, T target, int operation);
+	}
+
+	private static final int MAGIC = 0x43534e50;
+
+	private static final int VERSION = 2;
+
+	private static final byte ENTRY = 1;
+
+	private static final int ENTRY_HEADER_SIZE = 22;
+
+	private static final long MAP_WINDOW = 64L << 20;
+
+	private final File file;
+
+	private final CacheableSerializer<T> serializer;
+
+	CacheSnapshot(File file, CacheableSerializer<T> serializer)
+	{
+		this.file = file;
+		this.serializer = serializer;
+	}
+
+	/**
+	 * 读取快照
+	 *
+	 * @param visitor
+	 * @return 快照时间, 文件不存在或不完整时返回-1
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	long read(Visitor<T> visitor) throws IOException, ClassNotFoundException
+	{
+		if (!file.isFile()) {
+			return -1;
+		}
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+			long length = channel.size();
+			long position = 0;
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(length, MAP_WINDOW));
+			if (buffer.remaining() < 16 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+				return -1;
+			}
+			long snapshotTime = buffer.getLong();
+			for (;;) {
+				if (buffer.remaining() < ENTRY_HEADER_SIZE) {
+					position += buffer.position();
+					buffer = remap(channel, position, length, 1);
+					if (buffer == null) {
+						return -1;
+					}
+				}
+				if (buffer.get() != ENTRY) {
+					return snapshotTime;
+				}
+				if (buffer.remaining() < ENTRY_HEADER_SIZE - 1) {
+					position += buffer.position();
+					buffer = remap(channel, position, length, ENTRY_HEADER_SIZE - 1);
+					if (buffer == null) {
+						return -1;
+					}
+				}
+				long keyHigh = buffer.getLong();
+				long keyLow = buffer.getLong();
+				int operation = buffer.get();
+				int valueLength = buffer.getInt();
+				if (buffer.remaining() < valueLength) {
+					position += buffer.position();
+					buffer = remap(channel, position, length, valueLength);
+					if (buffer == null) {
+						return -1;
+					}
+				}
+				byte[] value = new byte[valueLength];
+				buffer.get(value);
+				visitor.visit(keyHigh, keyLow, serializer.deserialize(value), operation);
+			}
+		}
+	}
+
+	/**
+	 * 写入快照, 完成后替换原来的文件
+	 *
+	 * @param entries
+	 * @param snapshotTime
+	 * @return 写入的条目数
+	 * @throws IOException
+	 */
+	int write(Iterable<CacheableWrapper<T>> entries, long snapshotTime) throws IOException
+	{
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+			throw new IOException("Can not create directory " + parent);
+		}
+		File tmp = new File(file.getPath() + ".tmp");
+		int count = 0;
+		FileOutputStream fos = new FileOutputStream(tmp);
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(snapshotTime);
+			for (CacheableWrapper<T> w : entries) {
+				T target = w.target;
+				if (target == null) {
+					continue;
+				}
+				byte[] value = serializer.serialize(target);
+				out.writeByte(ENTRY);
+				out.writeLong(w.keyHigh);
+				out.writeLong(w.keyLow);
+				out.writeByte(Math.max(w.operation, 0));
+				out.writeInt(value.length);
+				out.write(value);
+				count++;
+			}
+			out.writeByte(0);
+			//替换前刷盘, 否则掉电后可能留下一个替换过但内容不完整的快照
+			out.flush();
+			fos.getChannel().force(true);
+		}
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return count;
+	}
+
+	/**
+	 * 从position开始重新映射, 保证至少有required个字节
+	 */
+	private MappedByteBuffer remap(FileChannel channel, long position, long length, int required) throws IOException
+	{
+		if (length - position < required) {
+			return null;
+		}
+		long size = Math.min(length - position, Math.max(MAP_WINDOW, required));
+		return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+	}
+}
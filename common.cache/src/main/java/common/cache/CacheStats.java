@@ -0,0 +1,393 @@
+/*
+ * Copyright (C) 2016 dzyh
+ * All rights reserved.
+ *
+ * $$File: $$
+ * $$DateTime: $$
+ * $$Author: $$
+ * $$Revision: $$
+ */
+
+package common.cache;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 一个逻辑缓存的运行统计, 读写路径上只做分段累加, 读取统计时才汇总. 分片缓存的各个分片共用一个统计, 条目数等取各分片的和.
+ * 注册为MBean, 程序中可用{@link #snapshot()}取一份快照
+ *
+ * @author wls
+ */
+public class CacheStats implements CacheStatsMBean
+{
+	private static final double PERCENTILE = 0.99;
+
+	private static final Logger logger = LoggerFactory.getLogger(CacheStats.class);
+
+	private final List<MapBasedCacheService<?>> services = new CopyOnWriteArrayList<>();
+
+	private final StripedCounter hitCount = new StripedCounter();
+
+	private final StripedCounter missCount = new StripedCounter();
+
+	private final StripedCounter loadFailureCount = new StripedCounter();
+
+	private final StripedCounter coalescedLoadCount = new StripedCounter();
+
+	private final StripedCounter loadTimeoutCount = new StripedCounter();
+
+	private final StripedCounter promotionCount = new StripedCounter();
+
+	private final StripedCounter evictionCount = new StripedCounter();
+
+	private final StripedCounter expirationCount = new StripedCounter();
+
+	private final StripedCounter negativeHitCount = new StripedCounter();
+
+	private final StripedCounter refreshCount = new StripedCounter();
+
+	private final StripedCounter flushedEntryCount = new StripedCounter();
+
+	private final StripedCounter flushFailureCount = new StripedCounter();
+
+	private final LatencyHistogram readLatency = new LatencyHistogram();
+
+	private final LatencyHistogram writeLatency = new LatencyHistogram();
+
+	/**
+	 * 只记录成功的加载
+	 */
+	private final LatencyHistogram loadLatency = new LatencyHistogram();
+
+	private final LatencyHistogram flushLatency = new LatencyHistogram();
+
+	private ObjectName objectName;
+
+	@Override
+	public long getCoalescedLoadCount()
+	{
+		return coalescedLoadCount.sum();
+	}
+
+	@Override
+	public int getDirtySize()
+	{
+		int size = 0;
+		for (MapBasedCacheService<?> service : services) {
+			size += service.getDirtySize();
+		}
+		return size;
+	}
+
+	@Override
+	public long getEvictionCount()
+	{
+		return evictionCount.sum();
+	}
+
+	@Override
+	public long getExpirationCount()
+	{
+		return expirationCount.sum();
+	}
+
+	@Override
+	public long getFlushCount()
+	{
+		return flushLatency.count();
+	}
+
+	@Override
+	public long getFlushedEntryCount()
+	{
+		return flushedEntryCount.sum();
+	}
+
+	@Override
+	public long getFlushFailureCount()
+	{
+		return flushFailureCount.sum();
+	}
+
+	@Override
+	public long getFlushMaxMicros()
+	{
+		return flushLatency.maxNanos() / 1000;
+	}
+
+	@Override
+	public double getFlushMeanMicros()
+	{
+		return flushLatency.meanNanos() / 1000;
+	}
+
+	@Override
+	public long getFlushP99Micros()
+	{
+		return flushLatency.percentileNanos(PERCENTILE) / 1000;
+	}
+
+	@Override
+	public long getHitCount()
+	{
+		return hitCount.sum();
+	}
+
+	@Override
+	public double getHitRate()
+	{
+		long hits = hitCount.sum();
+		long total = hits + missCount.sum();
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	@Override
+	public long getLoadCount()
+	{
+		return loadLatency.count() + loadFailureCount.sum();
+	}
+
+	@Override
+	public long getLoadFailureCount()
+	{
+		return loadFailureCount.sum();
+	}
+
+	@Override
+	public long getLoadMaxMicros()
+	{
+		return loadLatency.maxNanos() / 1000;
+	}
+
+	@Override
+	public double getLoadMeanMicros()
+	{
+		return loadLatency.meanNanos() / 1000;
+	}
+
+	@Override
+	public long getLoadP99Micros()
+	{
+		return loadLatency.percentileNanos(PERCENTILE) / 1000;
+	}
+
+	@Override
+	public long getLoadTimeoutCount()
+	{
+		return loadTimeoutCount.sum();
+	}
+
+	@Override
+	public long getMissCount()
+	{
+		return missCount.sum();
+	}
+
+	@Override
+	public long getNegativeHitCount()
+	{
+		return negativeHitCount.sum();
+	}
+
+	@Override
+	public int getOffHeapSize()
+	{
+		int size = 0;
+		for (MapBasedCacheService<?> service : services) {
+			size += service.getOffHeapSize();
+		}
+		return size;
+	}
+
+	@Override
+	public long getPromotionCount()
+	{
+		return promotionCount.sum();
+	}
+
+	@Override
+	public long getReadMaxMicros()
+	{
+		return readLatency.maxNanos() / 1000;
+	}
+
+	@Override
+	public double getReadMeanMicros()
+	{
+		return readLatency.meanNanos() / 1000;
+	}
+
+	@Override
+	public long getReadP99Micros()
+	{
+		return readLatency.percentileNanos(PERCENTILE) / 1000;
+	}
+
+	@Override
+	public long getRefreshCount()
+	{
+		return refreshCount.sum();
+	}
+
+	@Override
+	public int getSize()
+	{
+		int size = 0;
+		for (MapBasedCacheService<?> service : services) {
+			size += service.getSize();
+		}
+		return size;
+	}
+
+	@Override
+	public long getWriteCount()
+	{
+		return writeLatency.count();
+	}
+
+	@Override
+	public long getWriteMaxMicros()
+	{
+		return writeLatency.maxNanos() / 1000;
+	}
+
+	@Override
+	public double getWriteMeanMicros()
+	{
+		return writeLatency.meanNanos() / 1000;
+	}
+
+	@Override
+	public long getWriteP99Micros()
+	{
+		return writeLatency.percentileNanos(PERCENTILE) / 1000;
+	}
+
+	/**
+	 * @return 当前统计的不可变副本
+	 */
+	public CacheStatsSnapshot snapshot()
+	{
+		return new CacheStatsSnapshot(this);
+	}
+
+	void attach(MapBasedCacheService<?> service)
+	{
+		services.add(service);
+	}
+
+	void recordCoalescedLoad()
+	{
+		coalescedLoadCount.increment();
+	}
+
+	void recordEviction(boolean expired)
+	{
+		(expired ? expirationCount : evictionCount).increment();
+	}
+
+	void recordFlush(int entries, long nanos)
+	{
+		flushedEntryCount.add(entries);
+		flushLatency.record(nanos);
+	}
+
+	void recordFlushFailure()
+	{
+		flushFailureCount.increment();
+	}
+
+	void recordHits(int count)
+	{
+		hitCount.add(count);
+	}
+
+	void recordLoad(long nanos)
+	{
+		loadLatency.record(nanos);
+	}
+
+	void recordLoadFailure()
+	{
+		loadFailureCount.increment();
+	}
+
+	void recordLoadTimeout()
+	{
+		loadTimeoutCount.increment();
+	}
+
+	void recordMisses(int count)
+	{
+		missCount.add(count);
+	}
+
+	void recordNegativeHit()
+	{
+		negativeHitCount.increment();
+	}
+
+	void recordPromotion()
+	{
+		promotionCount.increment();
+	}
+
+	/**
+	 * @param nanos
+	 *            一次读取调用的耗时, 批量读取也只记录一次
+	 */
+	void recordRead(long nanos)
+	{
+		readLatency.record(nanos);
+	}
+
+	void recordRefresh()
+	{
+		refreshCount.increment();
+	}
+
+	void recordWrite(long nanos)
+	{
+		writeLatency.record(nanos);
+	}
+
+	/**
+	 * 注册为common.cache:type=type,name="name", name加引号, 可以包含逗号, 等号等字符. 同名的缓存已注册时只记录警告
+	 *
+	 * @param type
+	 * @param name
+	 */
+	synchronized void register(String type, String name)
+	{
+		try {
+			ObjectName on = new ObjectName("common.cache:type=" + type + ",name=" + ObjectName.quote(name));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+			objectName = on;
+		}
+		catch (JMException e) {
+			logger.warn("Register stats MBean of cache '" + name + "' error", e);
+		}
+	}
+
+	synchronized void unregister()
+	{
+		if (objectName == null) {
+			return;
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		}
+		catch (JMException e) {
+			logger.warn("Unregister stats MBean " + objectName + " error", e);
+		}
+		objectName = null;
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2016 dzyh
+ * All rights reserved.
+ *
+ * $$File: $$
+ * $$DateTime: $$
+ * $$Author: $$
+ * $$Revision: $$
+ */
+
+package common.cache;
+
+/**
+ * 缓存统计的JMX接口, 耗时单位都是微秒
+ *
+ * @author wls
+ */
+public interface CacheStatsMBean
+{
+	/**
+	 * @return 等待其他线程加载结果的次数
+	 */
+	long getCoalescedLoadCount();
+
+	/**
+	 * @return 等待写入数据库的条目数
+	 */
+	int getDirtySize();
+
+	/**
+	 * @return 因容量被淘汰的条目数
+	 */
+	long getEvictionCount();
+
+	/**
+	 * @return 过期的条目数
+	 */
+	long getExpirationCount();
+
+	/**
+	 * @return 写入数据库的次数(每次可能有多个批量)
+	 */
+	long getFlushCount();
+
+	/**
+	 * @return 写入数据库的条目数
+	 */
+	long getFlushedEntryCount();
+
+	/**
+	 * @return 批量和逐条重试都失败的条目数
+	 */
+	long getFlushFailureCount();
+
+	long getFlushMaxMicros();
+
+	double getFlushMeanMicros();
+
+	long getFlushP99Micros();
+
+	long getHitCount();
+
+	/**
+	 * @return 命中率, 没有访问时为0
+	 */
+	double getHitRate();
+
+	/**
+	 * @return 访问数据库加载的次数, 批量读取的一次in查询算一次
+	 */
+	long getLoadCount();
+
+	long getLoadFailureCount();
+
+	long getLoadMaxMicros();
+
+	double getLoadMeanMicros();
+
+	long getLoadP99Micros();
+
+	long getLoadTimeoutCount();
+
+	long getMissCount();
+
+	/**
+	 * @return 命中不存在记录, 没有访问数据库的次数
+	 */
+	long getNegativeHitCount();
+
+	/**
+	 * @return 堆外存储的条目数
+	 */
+	int getOffHeapSize();
+
+	/**
+	 * @return 从堆外存储升级回堆内的次数
+	 */
+	long getPromotionCount();
+
+	long getReadMaxMicros();
+
+	double getReadMeanMicros();
+
+	long getReadP99Micros();
+
+	/**
+	 * @return 提前刷新成功的次数
+	 */
+	long getRefreshCount();
+
+	/**
+	 * @return 堆内缓存的条目数
+	 */
+	int getSize();
+
+	long getWriteCount();
+
+	long getWriteMaxMicros();
+
+	double getWriteMeanMicros();
+
+	long getWriteP99Micros();
+}
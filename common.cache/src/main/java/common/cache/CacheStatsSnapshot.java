@@ -0,0 +1,354 @@
+/*
+ * Copyright (C) 2016 dzyh
+ * All rights reserved.
+ *
+ * $$File: $$
+ * $$DateTime: $$
+ * $$Author: $$
+ * $$Revision: $$
+ */
+
+package common.cache;
+
+import java.io.Serializable;
+
+/**
+ * {@link CacheStats}在某一时刻的不可变副本, 用于程序采集统计
+ *
+ * @author wls
+ */
+public final class CacheStatsSnapshot implements CacheStatsMBean, Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	private final long time;
+
+	private final long coalescedLoadCount;
+
+	private final int dirtySize;
+
+	private final long evictionCount;
+
+	private final long expirationCount;
+
+	private final long flushCount;
+
+	private final long flushedEntryCount;
+
+	private final long flushFailureCount;
+
+	private final long flushMaxMicros;
+
+	private final double flushMeanMicros;
+
+	private final long flushP99Micros;
+
+	private final long hitCount;
+
+	private final double hitRate;
+
+	private final long loadCount;
+
+	private final long loadFailureCount;
+
+	private final long loadMaxMicros;
+
+	private final double loadMeanMicros;
+
+	private final long loadP99Micros;
+
+	private final long loadTimeoutCount;
+
+	private final long missCount;
+
+	private final long negativeHitCount;
+
+	private final int offHeapSize;
+
+	private final long promotionCount;
+
+	private final long readMaxMicros;
+
+	private final double readMeanMicros;
+
+	private final long readP99Micros;
+
+	private final long refreshCount;
+
+	private final int size;
+
+	private final long writeCount;
+
+	private final long writeMaxMicros;
+
+	private final double writeMeanMicros;
+
+	private final long writeP99Micros;
+
+	CacheStatsSnapshot(CacheStatsMBean stats)
+	{
+		time = System.currentTimeMillis();
+		coalescedLoadCount = stats.getCoalescedLoadCount();
+		dirtySize = stats.getDirtySize();
+		evictionCount = stats.getEvictionCount();
+		expirationCount = stats.getExpirationCount();
+		flushCount = stats.getFlushCount();
+		flushedEntryCount = stats.getFlushedEntryCount();
+		flushFailureCount = stats.getFlushFailureCount();
+		flushMaxMicros = stats.getFlushMaxMicros();
+		flushMeanMicros = stats.getFlushMeanMicros();
+		flushP99Micros = stats.getFlushP99Micros();
+		hitCount = stats.getHitCount();
+		hitRate = stats.getHitRate();
+		loadCount = stats.getLoadCount();
+		loadFailureCount = stats.getLoadFailureCount();
+		loadMaxMicros = stats.getLoadMaxMicros();
+		loadMeanMicros = stats.getLoadMeanMicros();
+		loadP99Micros = stats.getLoadP99Micros();
+		loadTimeoutCount = stats.getLoadTimeoutCount();
+		missCount = stats.getMissCount();
+		negativeHitCount = stats.getNegativeHitCount();
+		offHeapSize = stats.getOffHeapSize();
+		promotionCount = stats.getPromotionCount();
+		readMaxMicros = stats.getReadMaxMicros();
+		readMeanMicros = stats.getReadMeanMicros();
+		readP99Micros = stats.getReadP99Micros();
+		refreshCount = stats.getRefreshCount();
+		size = stats.getSize();
+		writeCount = stats.getWriteCount();
+		writeMaxMicros = stats.getWriteMaxMicros();
+		writeMeanMicros = stats.getWriteMeanMicros();
+		writeP99Micros = stats.getWriteP99Micros();
+	}
+
+	@Override
+	public long getCoalescedLoadCount()
+	{
+		return coalescedLoadCount;
+	}
+
+	@Override
+	public int getDirtySize()
+	{
+		return dirtySize;
+	}
+
+	@Override
+	public long getEvictionCount()
+	{
+		return evictionCount;
+	}
+
+	@Override
+	public long getExpirationCount()
+	{
+		return expirationCount;
+	}
+
+	@Override
+	public long getFlushCount()
+	{
+		return flushCount;
+	}
+
+	@Override
+	public long getFlushFailureCount()
+	{
+		return flushFailureCount;
+	}
+
+	@Override
+	public long getFlushMaxMicros()
+	{
+		return flushMaxMicros;
+	}
+
+	@Override
+	public double getFlushMeanMicros()
+	{
+		return flushMeanMicros;
+	}
+
+	@Override
+	public long getFlushP99Micros()
+	{
+		return flushP99Micros;
+	}
+
+	@Override
+	public long getFlushedEntryCount()
+	{
+		return flushedEntryCount;
+	}
+
+	@Override
+	public long getHitCount()
+	{
+		return hitCount;
+	}
+
+	@Override
+	public double getHitRate()
+	{
+		return hitRate;
+	}
+
+	@Override
+	public long getLoadCount()
+	{
+		return loadCount;
+	}
+
+	@Override
+	public long getLoadFailureCount()
+	{
+		return loadFailureCount;
+	}
+
+	@Override
+	public long getLoadMaxMicros()
+	{
+		return loadMaxMicros;
+	}
+
+	@Override
+	public double getLoadMeanMicros()
+	{
+		return loadMeanMicros;
+	}
+
+	@Override
+	public long getLoadP99Micros()
+	{
+		return loadP99Micros;
+	}
+
+	@Override
+	public long getLoadTimeoutCount()
+	{
+		return loadTimeoutCount;
+	}
+
+	@Override
+	public long getMissCount()
+	{
+		return missCount;
+	}
+
+	@Override
+	public long getNegativeHitCount()
+	{
+		return negativeHitCount;
+	}
+
+	@Override
+	public int getOffHeapSize()
+	{
+		return offHeapSize;
+	}
+
+	@Override
+	public long getPromotionCount()
+	{
+		return promotionCount;
+	}
+
+	@Override
+	public long getReadMaxMicros()
+	{
+		return readMaxMicros;
+	}
+
+	@Override
+	public double getReadMeanMicros()
+	{
+		return readMeanMicros;
+	}
+
+	@Override
+	public long getReadP99Micros()
+	{
+		return readP99Micros;
+	}
+
+	@Override
+	public long getRefreshCount()
+	{
+		return refreshCount;
+	}
+
+	@Override
+	public int getSize()
+	{
+		return size;
+	}
+
+	/**
+	 * @return 快照时间
+	 */
+	public long getTime()
+	{
+		return time;
+	}
+
+	@Override
+	public long getWriteCount()
+	{
+		return writeCount;
+	}
+
+	@Override
+	public long getWriteMaxMicros()
+	{
+		return writeMaxMicros;
+	}
+
+	@Override
+	public double getWriteMeanMicros()
+	{
+		return writeMeanMicros;
+	}
+
+	@Override
+	public long getWriteP99Micros()
+	{
+		return writeP99Micros;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "CacheStatsSnapshot [time=" + time
+				+ ", coalescedLoadCount=" + coalescedLoadCount
+				+ ", dirtySize=" + dirtySize
+				+ ", evictionCount=" + evictionCount
+				+ ", expirationCount=" + expirationCount
+				+ ", flushCount=" + flushCount
+				+ ", flushedEntryCount=" + flushedEntryCount
+				+ ", flushFailureCount=" + flushFailureCount
+				+ ", flushMaxMicros=" + flushMaxMicros
+				+ ", flushMeanMicros=" + flushMeanMicros
+				+ ", flushP99Micros=" + flushP99Micros
+				+ ", hitCount=" + hitCount
+				+ ", hitRate=" + hitRate
+				+ ", loadCount=" + loadCount
+				+ ", loadFailureCount=" + loadFailureCount
+				+ ", loadMaxMicros=" + loadMaxMicros
+				+ ", loadMeanMicros=" + loadMeanMicros
+				+ ", loadP99Micros=" + loadP99Micros
+				+ ", loadTimeoutCount=" + loadTimeoutCount
+				+ ", missCount=" + missCount
+				+ ", negativeHitCount=" + negativeHitCount
+				+ ", offHeapSize=" + offHeapSize
+				+ ", promotionCount=" + promotionCount
+				+ ", readMaxMicros=" + readMaxMicros
+				+ ", readMeanMicros=" + readMeanMicros
+				+ ", readP99Micros=" + readP99Micros
+				+ ", refreshCount=" + refreshCount
+				+ ", size=" + size
+				+ ", writeCount=" + writeCount
+				+ ", writeMaxMicros=" + writeMaxMicros
+				+ ", writeMeanMicros=" + writeMeanMicros
+				+ ", writeP99Micros=" + writeP99Micros + "]";
+	}
+}
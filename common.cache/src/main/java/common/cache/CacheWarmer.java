@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2016 dzyh
+ * All rights reserved.
+ *
+ * $$File: $$
+ * $$DateTime: $$
+ * $$Author: $$
+ * $$Revision: $$
+ */
+
+package common.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import common.cache.exp.CacheLoadException;
+
+/**
+ * 预热: 按id范围分段, 多线程分页加载整个表, 每一页处理完就交给{@link Sink}, 内存占用只和页大小有关
+ *
+ * @author wls
+ */
+final class CacheWarmer<T extends ICacheable>
+{
+	/**
+	 * 接收加载到的记录
+	 */
+	interface Sink<T>
+	{
+		/**
+		 * @param t
+		 * @param now
+		 *            加载这一页的时间
+		 * @return 是否放入了缓存
+		 */
+		boolean put(T t, long now);
+	}
+
+	/**
+	 * 每加载这么多行输出一次进度
+	 */
+	private static final long PROGRESS_ROWS = 100000;
+
+	private static final Logger logger = LoggerFactory.getLogger(CacheWarmer.class);
+
+	private final CacheDBOperator<T> dbOperator;
+
+	private final int pageSize;
+
+	private final int threads;
+
+	CacheWarmer(CacheDBOperator<T> dbOperator, int pageSize, int threads)
+	{
+		this.dbOperator = dbOperator;
+		this.pageSize = pageSize;
+		this.threads = Math.max(1, threads);
+	}
+
+	void warmUp(final Sink<T> sink)
+	{
+		long[] range = dbOperator.getIdRange();
+		if (range == null) {
+			return;
+		}
+		final long start = System.currentTimeMillis();
+		final AtomicLong loaded = new AtomicLong();
+		final AtomicLong cached = new AtomicLong();
+		long span = (range[1] - range[0]) / threads + 1;
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<?>> futures = new ArrayList<>(threads);
+		try {
+			for (long afterId = range[0] - 1; afterId < range[1]; afterId += span) {
+				final long from = afterId;
+				final long to = Math.min(range[1], afterId + span);
+				futures.add(pool.submit(new Runnable() {
+					@Override
+					public void run()
+					{
+						warmUpRange(from, to, sink, loaded, cached, start);
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CacheLoadException("Interrupted while warming up", e);
+		}
+		catch (ExecutionException e) {
+			throw new CacheLoadException("Warm up error", e.getCause());
+		}
+		finally {
+			pool.shutdownNow();
+		}
+		long elapsed = System.currentTimeMillis() - start;
+		logger.info("Warm up finished: {} rows loaded, {} cached in {}ms, {} rows/s", loaded.get(), cached.get(), elapsed,
+				loaded.get() * 1000 / Math.max(1, elapsed));
+	}
+
+	/**
+	 * 分页加载(afterId, lastId]范围内的记录
+	 */
+	private void warmUpRange(long afterId, long lastId, Sink<T> sink, AtomicLong loaded, AtomicLong cached, long start)
+	{
+		long cursor = afterId;
+		for (;;) {
+			List<T> page = dbOperator.loadCacheablePage(cursor, lastId, pageSize);
+			long now = System.currentTimeMillis();
+			for (T t : page) {
+				if (sink.put(t, now)) {
+					cached.incrementAndGet();
+				}
+			}
+			long total = loaded.addAndGet(page.size());
+			if (total / PROGRESS_ROWS != (total - page.size()) / PROGRESS_ROWS) {
+				long elapsed = Math.max(1, now - start);
+				logger.info("Warm up progress: {} rows loaded, {} cached, {} rows/s", total, cached.get(), total * 1000
+						/ elapsed);
+			}
+			if (page.size() < pageSize) {
+				return;
+			}
+			cursor = page.get(page.size() - 1).getId();
+		}
+	}
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2016 dzyh
+ * All rights reserved.
+ *
+ * $$File: $$
+ * $$DateTime: $$
+ * $$Author: $$
+ * $$Revision: $$
+ */
+
+package common.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import common.rds.exp.BugError;
+
+/**
+ * 用{@link ICacheable#writeStream(java.io.ObjectOutput)}和{@link ICacheable#readStream(java.io.ObjectInput)}把缓存对象转换为字节,
+ * 缓存时间单独保存, 不依赖对象自己的序列化实现
+ *
+ * @author wls
+ */
+public class CacheableSerializer<T extends ICacheable>
+{
+	private final Class<T> type;
+
+	/**
+	 * @param type
+	 *            缓存对象的类型, 需要有无参构造函数
+	 */
+	public CacheableSerializer(Class<T> type)
+	{
+		this.type = type;
+	}
+
+	public T deserialize(byte[] bytes) throws IOException, ClassNotFoundException
+	{
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+		try {
+			long cachedTime = in.readLong();
+			T t = newInstance();
+			t.readStream(in);
+			t.setCachedTime(cachedTime);
+			return t;
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	public byte[] serialize(T t) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeLong(t.getCachedTime());
+		t.writeStream(out);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private T newInstance()
+	{
+		try {
+			return type.newInstance();
+		}
+		catch (InstantiationException | IllegalAccessException e) {
+			throw new BugError("Can not create instance of " + type.getName(), e);
+		}
+	}
+}
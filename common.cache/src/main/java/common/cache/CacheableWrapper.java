@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2016 dzyh
+ * All rights reserved.
+ *
+ * $$File: $$
+ * $$DateTime: $$
+ * $$Author: $$
+ * $$Revision: $$
+ */
+
+package common.cache;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * 缓存条目，除了缓存对象本身，还记录了需要同步到数据库的操作以及淘汰策略, 过期时间轮使用的链表指针
+ *
+ * @author wls
+ */
+@SuppressWarnings("rawtypes")
+final class CacheableWrapper<T extends ICacheable>
+{
+	private static final AtomicIntegerFieldUpdater<CacheableWrapper> OPERATION = AtomicIntegerFieldUpdater.newUpdater(
+			CacheableWrapper.class, "operation");
+
+	private static final AtomicIntegerFieldUpdater<CacheableWrapper> QUEUED = AtomicIntegerFieldUpdater.newUpdater(
+			CacheableWrapper.class, "queued");
+
+	private static final AtomicIntegerFieldUpdater<CacheableWrapper> REFRESHING = AtomicIntegerFieldUpdater.newUpdater(
+			CacheableWrapper.class, "refreshing");
+
+	static final byte NOT_IN_POLICY = 0;
+	static final byte WINDOW = 1;
+	static final byte PROBATION = 2;
+	static final byte PROTECTED = 3;
+
+	/**
+	 * 128位key, 见{@link CacheKeys}
+	 */
+	final long keyHigh;
+
+	final long keyLow;
+
+	T target;
+
+	volatile int operation = 0;
+
+	/**
+	 * 1表示已经在{@link DirtyJournal}中等待写入数据库
+	 */
+	volatile int queued = 0;
+
+	/**
+	 * 1表示已经提交了提前刷新
+	 */
+	volatile int refreshing = 0;
+
+	/**
+	 * 条目的权重，由{@link ICacheWeigher}计算
+	 */
+	int weight = 1;
+
+	//以下字段由淘汰策略维护, 只能在策略锁内访问
+	byte queueType = NOT_IN_POLICY;
+
+	CacheableWrapper<T> prevInAccessOrder;
+
+	CacheableWrapper<T> nextInAccessOrder;
+
+	//以下字段由过期时间轮维护, 只能在策略锁内访问
+	long expireTime;
+
+	/**
+	 * 过期时写入数据库连续失败的次数, 决定重试的间隔
+	 */
+	int expireFailures;
+
+	CacheableWrapper<T> prevInTimer;
+
+	CacheableWrapper<T> nextInTimer;
+
+	/**
+	 * @param keyHigh
+	 * @param keyLow
+	 * @param target
+	 * @param operation
+	 */
+	CacheableWrapper(long keyHigh, long keyLow, T target, int operation)
+	{
+		this.keyHigh = keyHigh;
+		this.keyLow = keyLow;
+		this.target = target;
+		this.operation = operation;
+	}
+
+	/**
+	 * @param key
+	 * @param target
+	 * @param operation
+	 */
+	CacheableWrapper(String key, T target, int operation)
+	{
+		this(CacheKeys.digest(key), target, operation);
+	}
+
+	private CacheableWrapper(byte[] digest, T target, int operation)
+	{
+		this(CacheKeys.high(digest), CacheKeys.low(digest), target, operation);
+	}
+
+	@Override
+	public String toString()
+	{
+		return key();
+	}
+
+	int hash()
+	{
+		return CacheKeys.hash(keyHigh, keyLow);
+	}
+
+	/**
+	 * @return 十六进制的key, 覆盖了{@link ICacheService#calculateKey(ICacheable)}时和原始的key不同
+	 */
+	String key()
+	{
+		return CacheKeys.toHex(keyHigh, keyLow);
+	}
+
+	/**
+	 * 标记需要同步到数据库的操作, 尚未写入数据库的CREATE不会被UPDATE覆盖
+	 *
+	 * @param op
+	 */
+	void markOperation(int op)
+	{
+		for (;;) {
+			int current = operation;
+			int next = current == MapBasedCacheService.CREATE_OPERATION ? current : op;
+			if (current == next || OPERATION.compareAndSet(this, current, next)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return true表示由调用方负责放入队列
+	 */
+	boolean markQueued()
+	{
+		return QUEUED.compareAndSet(this, 0, 1);
+	}
+
+	/**
+	 * @return true表示由调用方负责提交刷新
+	 */
+	boolean markRefreshing()
+	{
+		return REFRESHING.compareAndSet(this, 0, 1);
+	}
+
+	/**
+	 * 取走待同步的操作, 并重置为NON_OPERATION, 保证同一次修改只会被写入一次数据库
+	 *
+	 * @return
+	 */
+	int takeOperation()
+	{
+		return OPERATION.getAndSet(this, MapBasedCacheService.NON_OPERATION);
+	}
+
+	void unmarkQueued()
+	{
+		queued = 0;
+	}
+
+	void unmarkRefreshing()
+	{
+		refreshing = 0;
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2016 dzyh
+ * All rights reserved.
+ *
+ * $$File: $$
+ * $$DateTime: $$
+ * $$Author: $$
+ * $$Revision: $$
+ */
+
+package common.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 记录有修改需要写入数据库的条目, 刷新时只处理队列中的条目而不用扫描整个缓存. 一个条目在被取走之前只会入队一次
+ *
+ * @author wls
+ */
+final class DirtyJournal<T extends ICacheable>
+{
+	private final Queue<CacheableWrapper<T>> queue = new ConcurrentLinkedQueue<>();
+
+	private final AtomicInteger size = new AtomicInteger();
+
+	/**
+	 * 取出最多max个条目, 取出的条目可以再次入队
+	 *
+	 * @param max
+	 * @return
+	 */
+	List<CacheableWrapper<T>> drain(int max)
+	{
+		List<CacheableWrapper<T>> list = null;
+		CacheableWrapper<T> w;
+		while ((list == null || list.size() < max) && (w = queue.poll()) != null) {
+			size.decrementAndGet();
+			//先清除入队标记再由调用方取走操作, 期间的新修改会重新入队
+			w.unmarkQueued();
+			if (list == null) {
+				list = new ArrayList<>();
+			}
+			list.add(w);
+		}
+		return list == null ? Collections.<CacheableWrapper<T>> emptyList() : list;
+	}
+
+	void enqueue(CacheableWrapper<T> w)
+	{
+		if (w.markQueued()) {
+			//先计数再入队, 保证size()不少于已经入队的条目数
+			size.incrementAndGet();
+			queue.offer(w);
+		}
+	}
+
+	void markDirty(CacheableWrapper<T> w, int operation)
+	{
+		w.markOperation(operation);
+		enqueue(w);
+	}
+
+	int size()
+	{
+		return size.get();
+	}
+}
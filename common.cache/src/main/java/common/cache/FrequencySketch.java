@@ -0,0 +1,144 @@
+/*
+ * Copyright 2015 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Modified from Caffeine's FrequencySketch: package and class visibility changed,
+ * comments translated and condensed.
+ */
+
+package common.cache;
+
+/**
+ * 4-bit Count-Min Sketch, 用于估算key的访问频率(TinyLFU). 每个long存放16个4位计数器,
+ * 当采样次数达到容量的10倍时所有计数器减半, 使频率随时间衰减. 非线程安全
+ * <p>
+ * 派生自Caffeine的com.github.benmanes.caffeine.cache.FrequencySketch
+ * (https://github.com/ben-manes/caffeine), 按Apache License 2.0使用和修改, 版权归原作者
+ *
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+final class FrequencySketch
+{
+	private static final long[] SEED = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+			0xcbf29ce484222325L };
+
+	private static final long RESET_MASK = 0x7777777777777777L;
+
+	private static final long ONE_MASK = 0x1111111111111111L;
+
+	private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+	private static int ceilingPowerOfTwo(int x)
+	{
+		return 1 << -Integer.numberOfLeadingZeros(x - 1);
+	}
+
+	private static int spread(int x)
+	{
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		return (x >>> 16) ^ x;
+	}
+
+	private long[] table;
+
+	private int tableMask;
+
+	private int sampleSize;
+
+	private int size;
+
+	FrequencySketch(long maximumSize)
+	{
+		ensureCapacity(maximumSize);
+	}
+
+	/**
+	 * 按预期的最大条目数调整计数表大小, 调整后之前的统计会丢失
+	 *
+	 * @param maximumSize
+	 */
+	void ensureCapacity(long maximumSize)
+	{
+		int maximum = (int) Math.min(Math.max(maximumSize, 1), MAXIMUM_CAPACITY);
+		if (table != null && table.length >= maximum) {
+			return;
+		}
+		table = new long[ceilingPowerOfTwo(maximum)];
+		tableMask = table.length - 1;
+		sampleSize = 10 * maximum;
+		if (sampleSize <= 0) {
+			sampleSize = Integer.MAX_VALUE;
+		}
+		size = 0;
+	}
+
+	/**
+	 * @param hashCode
+	 * @return 估算的访问频率, 最大15
+	 */
+	int frequency(int hashCode)
+	{
+		int hash = spread(hashCode);
+		int start = (hash & 3) << 2;
+		int frequency = Integer.MAX_VALUE;
+		for (int i = 0; i < 4; i++) {
+			int index = indexOf(hash, i);
+			int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+			frequency = Math.min(frequency, count);
+		}
+		return frequency;
+	}
+
+	void increment(int hashCode)
+	{
+		int hash = spread(hashCode);
+		int start = (hash & 3) << 2;
+		boolean added = false;
+		for (int i = 0; i < 4; i++) {
+			added |= incrementAt(indexOf(hash, i), start + i);
+		}
+		if (added && (++size == sampleSize)) {
+			reset();
+		}
+	}
+
+	private boolean incrementAt(int i, int j)
+	{
+		int offset = j << 2;
+		long mask = 0xfL << offset;
+		if ((table[i] & mask) != mask) {
+			table[i] += 1L << offset;
+			return true;
+		}
+		return false;
+	}
+
+	private int indexOf(int item, int i)
+	{
+		long hash = (item + SEED[i]) * SEED[i];
+		hash += hash >>> 32;
+		return (int) hash & tableMask;
+	}
+
+	private void reset()
+	{
+		int count = 0;
+		for (int i = 0; i < table.length; i++) {
+			count += Long.bitCount(table[i] & ONE_MASK);
+			table[i] = (table[i] >>> 1) & RESET_MASK;
+		}
+		size = (size >>> 1) - (count >>> 2);
+	}
+}
@@ -1,5 +1,10 @@
 package common.cache;
 
+import java.util.Collection;
+import java.util.Map;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
 /**
  * @author wls
  */
@@ -41,11 +46,66 @@ public interface ICacheService<T extends ICacheable>
 	 */
 	T readObject(String key, boolean resetExpireTime);
 
+	/**
+	 * 异步读取, 缓存命中时在调用线程直接返回已完成的Future, 未命中时由有界的线程池加载
+	 *
+	 * @param key
+	 *            读取的键
+	 * @param resetExpireTime
+	 *            是否重新设置过期时间
+	 * @return 线程池已满时返回失败的Future
+	 */
+	ListenableFuture<T> readObjectAsync(String key, boolean resetExpireTime);
+
+	/**
+	 * 按key因子读取, 和readObject(calculateKey(t))读到的是同一个对象, 但不用生成十六进制的key.
+	 * 只适用于默认的{@link #calculateKey(ICacheable)}
+	 *
+	 * @param keyGene
+	 *            {@link ICacheable#getKeyGene()}
+	 * @param resetExpireTime
+	 *            是否重新设置过期时间
+	 * @return
+	 */
+	T readObjectByKeyGene(String keyGene, boolean resetExpireTime);
+
+	/**
+	 * 批量读取, 缓存中没有的对象一起从数据库加载
+	 *
+	 * @param keys
+	 *            读取的键
+	 * @param resetExpireTime
+	 *            是否重新设置过期时间
+	 * @return <key, 对象>, 不存在的key不在结果中
+	 */
+	Map<String, T> readObjects(Collection<String> keys, boolean resetExpireTime);
+
+	/**
+	 * 异步批量读取, 全部命中时直接返回已完成的Future, 否则未命中的key由线程池一起加载
+	 *
+	 * @param keys
+	 *            读取的键
+	 * @param resetExpireTime
+	 *            是否重新设置过期时间
+	 * @return <key, 对象>, 不存在的key不在结果中
+	 */
+	ListenableFuture<Map<String, T>> readObjectsAsync(Collection<String> keys, boolean resetExpireTime);
+
 	/**
 	 * 将对象写入缓存
 	 *
 	 * @param t
 	 * @return key
+	 * @throws common.cache.exp.CacheWriteException
+	 *             使用预写日志时记录日志失败, 这次写入被撤销, 缓存和数据库都保持原来的对象
 	 */
 	String writeObject(T t);
+
+	/**
+	 * 在线程池中写入缓存, 同一个key的多次异步写入不保证顺序
+	 *
+	 * @param t
+	 * @return key
+	 */
+	ListenableFuture<String> writeObjectAsync(T t);
 }
@@ -0,0 +1,18 @@
+package common.cache;
+
+/**
+ * 计算缓存条目的权重，用于按权重限制缓存容量
+ *
+ * @author wls
+ */
+public interface ICacheWeigher<T extends ICacheable>
+{
+	/**
+	 * 返回条目的权重(比如估算的字节数), 必须大于等于0
+	 *
+	 * @param key
+	 * @param value
+	 * @return
+	 */
+	int weigh(String key, T value);
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright (C) 2016 dzyh
+ * All rights reserved.
+ *
+ * $$File: $$
+ * $$DateTime: $$
+ * $$Author: $$
+ * $$Revision: $$
+ */
+
+package common.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 128位key到缓存条目的并发索引. 分段的开放寻址(线性探测)哈希表, key以两个long存放在数组中, 不需要每个条目一个节点对象.
+ * <p>
+ * 写操作对段加锁, 删除时把后面的条目前移(backward shift), 不留删除标记. 读操作不加锁, 命中的条目用它自己的key校验;
+ * 由于并发的前移可能漏掉条目, 未命中时加锁再查一次
+ *
+ * @author wls
+ */
+final class KeyIndex<T extends ICacheable>
+{
+	private static final class Segment<T extends ICacheable>
+	{
+		volatile Table<T> table = new Table<>(INITIAL_CAPACITY);
+
+		volatile int size;
+	}
+
+	private static final class Table<T extends ICacheable>
+	{
+		/**
+		 * 第i个槽的key是keys[2i], keys[2i+1]
+		 */
+		final AtomicLongArray keys;
+
+		final AtomicReferenceArray<CacheableWrapper<T>> values;
+
+		final int mask;
+
+		Table(int capacity)
+		{
+			keys = new AtomicLongArray(capacity << 1);
+			values = new AtomicReferenceArray<>(capacity);
+			mask = capacity - 1;
+		}
+	}
+
+	private static final int SEGMENT_BITS = 5;
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final Segment<T>[] segments;
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	KeyIndex()
+	{
+		segments = new Segment[1 << SEGMENT_BITS];
+		for (int i = 0; i < segments.length; i++) {
+			segments[i] = new Segment<>();
+		}
+	}
+
+	void clear()
+	{
+		for (Segment<T> segment : segments) {
+			synchronized (segment) {
+				segment.table = new Table<>(INITIAL_CAPACITY);
+				segment.size = 0;
+			}
+		}
+	}
+
+	/**
+	 * @param key
+	 *            字符串形式的缓存key, 只计算一次{@link CacheKeys#digest(String)}
+	 * @return
+	 */
+	CacheableWrapper<T> get(String key)
+	{
+		byte[] digest = CacheKeys.digest(key);
+		return get(CacheKeys.high(digest), CacheKeys.low(digest));
+	}
+
+	CacheableWrapper<T> get(long high, long low)
+	{
+		int hash = CacheKeys.hash(high, low);
+		Segment<T> segment = segmentFor(hash);
+		CacheableWrapper<T> w = find(segment.table, hash, high, low);
+		if (w != null) {
+			return w;
+		}
+		synchronized (segment) {
+			return find(segment.table, hash, high, low);
+		}
+	}
+
+	/**
+	 * @param w
+	 * @return 被替换的条目
+	 */
+	CacheableWrapper<T> put(CacheableWrapper<T> w)
+	{
+		return put(w, false);
+	}
+
+	/**
+	 * @param w
+	 * @return 已经存在的条目, 不存在时放入w并返回null
+	 */
+	CacheableWrapper<T> putIfAbsent(CacheableWrapper<T> w)
+	{
+		return put(w, true);
+	}
+
+	/**
+	 * @param high
+	 * @param low
+	 * @return 被删除的条目
+	 */
+	CacheableWrapper<T> remove(long high, long low)
+	{
+		return remove(high, low, null);
+	}
+
+	/**
+	 * 只有key当前对应的是w时才删除
+	 *
+	 * @param w
+	 * @return
+	 */
+	boolean remove(CacheableWrapper<T> w)
+	{
+		return remove(w.keyHigh, w.keyLow, w) != null;
+	}
+
+	/**
+	 * 只有key当前对应的是expected时才替换为w
+	 *
+	 * @param expected
+	 * @param w
+	 *            和expected的key相同
+	 * @return
+	 */
+	boolean replace(CacheableWrapper<T> expected, CacheableWrapper<T> w)
+	{
+		int hash = CacheKeys.hash(w.keyHigh, w.keyLow);
+		Segment<T> segment = segmentFor(hash);
+		synchronized (segment) {
+			Table<T> table = segment.table;
+			int i = indexOf(table, hash, w.keyHigh, w.keyLow);
+			if (i < 0 || table.values.get(i) != expected) {
+				return false;
+			}
+			table.values.set(i, w);
+			return true;
+		}
+	}
+
+	int size()
+	{
+		int size = 0;
+		for (Segment<T> segment : segments) {
+			size += segment.size;
+		}
+		return size;
+	}
+
+	/**
+	 * @return 所有条目的副本, 不反映复制期间的修改
+	 */
+	List<CacheableWrapper<T>> values()
+	{
+		List<CacheableWrapper<T>> list = new ArrayList<>(size());
+		for (Segment<T> segment : segments) {
+			synchronized (segment) {
+				Table<T> table = segment.table;
+				for (int i = 0; i <= table.mask; i++) {
+					CacheableWrapper<T> w = table.values.get(i);
+					if (w != null) {
+						list.add(w);
+					}
+				}
+			}
+		}
+		return list;
+	}
+
+	private CacheableWrapper<T> find(Table<T> table, int hash, long high, long low)
+	{
+		int i = hash & table.mask;
+		for (int n = 0; n <= table.mask; n++, i = (i + 1) & table.mask) {
+			CacheableWrapper<T> w = table.values.get(i);
+			if (w == null) {
+				return null;
+			}
+			if (table.keys.get(i << 1) == high && table.keys.get((i << 1) + 1) == low && w.keyHigh == high
+					&& w.keyLow == low) {
+				return w;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 调用方持有段锁
+	 *
+	 * @return 槽的位置, 不存在时返回-1
+	 */
+	private int indexOf(Table<T> table, int hash, long high, long low)
+	{
+		int i = hash & table.mask;
+		for (int n = 0; n <= table.mask; n++, i = (i + 1) & table.mask) {
+			CacheableWrapper<T> w = table.values.get(i);
+			if (w == null) {
+				return -1;
+			}
+			if (w.keyHigh == high && w.keyLow == low) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private void insert(Table<T> table, int hash, CacheableWrapper<T> w)
+	{
+		int i = hash & table.mask;
+		while (table.values.get(i) != null) {
+			i = (i + 1) & table.mask;
+		}
+		table.keys.set(i << 1, w.keyHigh);
+		table.keys.set((i << 1) + 1, w.keyLow);
+		table.values.set(i, w);
+	}
+
+	private CacheableWrapper<T> put(CacheableWrapper<T> w, boolean onlyIfAbsent)
+	{
+		int hash = CacheKeys.hash(w.keyHigh, w.keyLow);
+		Segment<T> segment = segmentFor(hash);
+		synchronized (segment) {
+			Table<T> table = segment.table;
+			int i = indexOf(table, hash, w.keyHigh, w.keyLow);
+			if (i >= 0) {
+				CacheableWrapper<T> old = table.values.get(i);
+				if (!onlyIfAbsent) {
+					table.values.set(i, w);
+				}
+				return old;
+			}
+			//装载因子不超过2/3
+			if ((segment.size + 1) * 3 > (table.mask + 1) * 2) {
+				table = resize(table);
+				segment.table = table;
+			}
+			insert(table, hash, w);
+			segment.size++;
+			return null;
+		}
+	}
+
+	private CacheableWrapper<T> remove(long high, long low, CacheableWrapper<T> expected)
+	{
+		int hash = CacheKeys.hash(high, low);
+		Segment<T> segment = segmentFor(hash);
+		synchronized (segment) {
+			Table<T> table = segment.table;
+			int i = indexOf(table, hash, high, low);
+			if (i < 0) {
+				return null;
+			}
+			CacheableWrapper<T> old = table.values.get(i);
+			if (expected != null && old != expected) {
+				return null;
+			}
+			//后面属于同一探测链的条目前移填补空位
+			int hole = i;
+			int j = i;
+			for (;;) {
+				j = (j + 1) & table.mask;
+				CacheableWrapper<T> w = table.values.get(j);
+				if (w == null) {
+					break;
+				}
+				int home = CacheKeys.hash(w.keyHigh, w.keyLow) & table.mask;
+				if (((j - home) & table.mask) >= ((j - hole) & table.mask)) {
+					table.keys.set(hole << 1, w.keyHigh);
+					table.keys.set((hole << 1) + 1, w.keyLow);
+					table.values.set(hole, w);
+					hole = j;
+				}
+			}
+			table.values.set(hole, null);
+			segment.size--;
+			return old;
+		}
+	}
+
+	private Table<T> resize(Table<T> table)
+	{
+		Table<T> resized = new Table<>((table.mask + 1) << 1);
+		for (int i = 0; i <= table.mask; i++) {
+			CacheableWrapper<T> w = table.values.get(i);
+			if (w != null) {
+				insert(resized, CacheKeys.hash(w.keyHigh, w.keyLow), w);
+			}
+		}
+		return resized;
+	}
+
+	private Segment<T> segmentFor(int hash)
+	{
+		return segments[hash >>> (32 - SEGMENT_BITS)];
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2016 dzyh
+ * All rights reserved.
+ *
+ * $$File: $$
+ * $$DateTime: $$
+ * $$Author: $$
+ * $$Revision: $$
+ */
+
+package common.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 耗时直方图, 按2的幂分桶(第i个桶是[2^(i-1), 2^i)纳秒), 百分位数取桶的上界, 误差在2倍以内. 和{@link StripedCounter}一样按线程分段记录
+ *
+ * @author wls
+ */
+final class LatencyHistogram
+{
+	private static final int BUCKETS = 65;
+
+	/**
+	 * 每个分段: 65个桶, 1个总耗时, 补齐到缓存行的整数倍
+	 */
+	private static final int ROW = 72;
+
+	private static final int TOTAL = BUCKETS;
+
+	private final AtomicLongArray cells = new AtomicLongArray(StripedCounter.STRIPES * ROW);
+
+	private final AtomicLong max = new AtomicLong();
+
+	long count()
+	{
+		long count = 0;
+		for (int s = 0; s < StripedCounter.STRIPES; s++) {
+			for (int i = 0; i < BUCKETS; i++) {
+				count += cells.get(s * ROW + i);
+			}
+		}
+		return count;
+	}
+
+	long maxNanos()
+	{
+		return max.get();
+	}
+
+	double meanNanos()
+	{
+		long count = count();
+		if (count == 0) {
+			return 0;
+		}
+		long total = 0;
+		for (int s = 0; s < StripedCounter.STRIPES; s++) {
+			total += cells.get(s * ROW + TOTAL);
+		}
+		return (double) total / count;
+	}
+
+	/**
+	 * @param percentile
+	 *            0到1之间
+	 * @return 纳秒
+	 */
+	long percentileNanos(double percentile)
+	{
+		long[] counts = new long[BUCKETS];
+		long count = 0;
+		for (int s = 0; s < StripedCounter.STRIPES; s++) {
+			for (int i = 0; i < BUCKETS; i++) {
+				long c = cells.get(s * ROW + i);
+				counts[i] += c;
+				count += c;
+			}
+		}
+		if (count == 0) {
+			return 0;
+		}
+		long threshold = (long) Math.ceil(count * percentile);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= threshold) {
+				return i == 0 ? 0 : Math.min(max.get(), i == 64 ? Long.MAX_VALUE : (1L << i) - 1);
+			}
+		}
+		return max.get();
+	}
+
+	void record(long nanos)
+	{
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		int row = StripedCounter.stripe() * ROW;
+		cells.getAndIncrement(row + 64 - Long.numberOfLeadingZeros(nanos));
+		cells.getAndAdd(row + TOTAL, nanos);
+		for (long current = max.get(); nanos > current; current = max.get()) {
+			if (max.compareAndSet(current, nanos)) {
+				break;
+			}
+		}
+	}
+}
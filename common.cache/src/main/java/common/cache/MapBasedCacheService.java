@@ -10,13 +10,26 @@
 
 package common.cache;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -26,27 +39,18 @@ import javax.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.SettableFuture;
+
+import common.cache.exp.CacheLoadException;
+import common.cache.exp.CacheWriteException;
+import common.cache.offheap.OffHeapStore;
+import common.rds.exp.BugError;
+
 /**
  * @author wls
  */
 public class MapBasedCacheService<T extends ICacheable> extends AbstractCacheService<T>
 {
-	private class CacheableWrapper<K extends ICacheable>
-	{
-		K target;
-		short operation = 0;
-
-		/**
-		 * @param timestamp
-		 * @param target
-		 */
-		public CacheableWrapper(K target, short operation)
-		{
-			this.target = target;
-			this.operation = operation;
-		}
-	}
-
 	public static void main(String[] args)
 	{
 		String key = "djaflkal;fa;edfaqfq:123";
@@ -59,12 +63,28 @@ public class MapBasedCacheService<T extends ICacheable> extends AbstractCacheSer
 
 	static short UPDATE_OPERATION = 2;
 
-	private final ConcurrentHashMap<String, CacheableWrapper<T>> cacheMap = new ConcurrentHashMap<>();
+	/**
+	 * 停止时等待正在执行的定时任务结束的最长时间
+	 */
+	static final long STOP_TIMEOUT_SECOND = 15;
+
+	/**
+	 * 过期时写入数据库失败后第一次重试的间隔, 之后每次失败加倍
+	 */
+	private static final long EXPIRE_RETRY_MILLISECOND = 1000;
+
+	private static final long MAX_EXPIRE_RETRY_MILLISECOND = 60 * 1000;
+
+	private final KeyIndex<T> cacheMap = new KeyIndex<>();
 
 	private final ScheduledExecutorService ex = Executors.newSingleThreadScheduledExecutor();
 
 	private ScheduledFuture<?> expireFuture;
 
+	private ScheduledFuture<?> flushFuture;
+
+	private ScheduledFuture<?> snapshotFuture;
+
 	private long expireMillisecond = 1000 * 60 * 60 * 24 * 7; //24 hour * 7
 
 	private final Lock refreshLock = new ReentrantLock();
@@ -73,18 +93,194 @@ public class MapBasedCacheService<T extends ICacheable> extends AbstractCacheSer
 
 	private long schedlueTimeSecond = 30;
 
+	/**
+	 * 把修改写入数据库的间隔
+	 */
+	private long flushIntervalSecond = 30;
+
+	/**
+	 * 每个JDBC批量写入的最大条目数
+	 */
+	private int flushBatchSize = 500;
+
+	private final DirtyJournal<T> dirtyJournal = new DirtyJournal<>();
+
+	/**
+	 * 正在从数据库加载的key, 同一个key同时只有一个线程访问数据库, 其他线程等待它的结果
+	 */
+	private final ConcurrentHashMap<String, SettableFuture<T>> loadingMap = new ConcurrentHashMap<>();
+
+	/**
+	 * 等待其他线程加载的超时时间
+	 */
+	private long loadTimeoutMillisecond = 10 * 1000;
+
+	private final CacheStats stats;
+
+	/**
+	 * 注册MBean使用的缓存名称, 默认是实体类的类名
+	 */
+	private String name;
+
+	/**
+	 * 作为{@link ShardedCacheService}的分片时, 只保存属于自己的key
+	 */
+	private final int shardIndex;
+
+	private final int shardCount;
+
+	/**
+	 * 最大缓存条目数, <=0 表示不限制
+	 */
+	private long maximumSize = -1;
+
+	/**
+	 * 最大缓存总权重, <=0 表示不限制, 权重由{@link #weigher}计算
+	 */
+	private long maximumWeight = -1;
+
+	private ICacheWeigher<T> weigher;
+
+	/**
+	 * 容量受限时的淘汰策略, 由{@link #policyLock}保护
+	 */
+	private TinyLfuPolicy<T> policy;
+
+	/**
+	 * 按过期时间调度条目, 由{@link #policyLock}保护
+	 */
+	private final TimerWheel<T> timerWheel = new TimerWheel<>(System.currentTimeMillis());
+
+	private final Lock policyLock = new ReentrantLock();
+
+	/**
+	 * 因容量被淘汰但还有修改没有写入数据库的条目. 它们已经离开淘汰策略, 但留在cacheMap中仍然可以读取,
+	 * 由{@link #flushDirtyEntries()}写入数据库后再删除, 淘汰不会在读写线程上访问数据库
+	 */
+	private final ConcurrentLinkedQueue<CacheableWrapper<T>> pendingEvictions = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * 堆外存储的容量(字节), <=0 表示不使用. 因容量被淘汰的条目写入数据库后降级到堆外, 再次读取时升级回堆内
+	 */
+	private long offHeapCapacity = -1;
+
+	private OffHeapStore offHeapStore;
+
+	private CacheableSerializer<T> serializer;
+
+	/**
+	 * 快照文件路径, 为null表示不使用快照. 设置后启动时先从快照恢复, 再用{@link #deltaFieldName}查询快照之后修改过的记录,
+	 * 快照不存在或损坏时才全量加载数据库
+	 */
+	private String snapshotFile;
+
+	private long snapshotIntervalSecond = 10 * 60;
+
+	/**
+	 * 快照恢复后增量查询使用的字段, 记录每次修改都需要更新这个字段
+	 */
+	private String deltaFieldName = "cachedTime";
+
+	private CacheSnapshot<T> snapshot;
+
+	/**
+	 * 预热时每页加载的行数, <=0 表示一次加载全表. 设置后按id范围分成{@link #warmUpThreads}段并行分页加载,
+	 * 每一页处理完就放入缓存, 内存占用只和页大小有关
+	 */
+	private int warmUpPageSize = -1;
+
+	private int warmUpThreads = 4;
+
+	/**
+	 * 预写日志目录, 为null表示不使用. 设置后{@link #writeObject(ICacheable)}和重置过期时间的读取先记录日志并刷盘才返回,
+	 * 修改写入数据库后删除日志, 启动时重放未写入数据库的修改
+	 */
+	private String walDir;
+
+	private WriteAheadLog<T> wal;
+
+	/**
+	 * 提前刷新的比例, <=0 表示不使用. 剩余存活时间不到过期时间的这个比例时, 读取会提交后台任务从数据库重新加载, 期间仍然返回当前的对象.
+	 * 只有被读取的条目才会刷新, 不再访问的条目照常过期
+	 */
+	private double refreshAheadRatio = -1;
+
+	private int refreshAheadThreads = 2;
+
+	/**
+	 * 等待刷新的任务数上限, 超出的刷新请求直接放弃
+	 */
+	private int refreshAheadQueueSize = 1000;
+
+	private ThreadPoolExecutor refreshExecutor;
+
+	/**
+	 * 缓存时间超过这个值的条目在读取时提前刷新
+	 */
+	private long refreshAheadAge;
+
+	/**
+	 * 记录数据库中不存在的key的最大数量, <=0 表示不使用. 记录的key在{@link #negativeCacheTtlMillisecond}内再次读取直接返回null,
+	 * 写入同一个key时删除记录
+	 */
+	private int negativeCacheCapacity = -1;
+
+	private long negativeCacheTtlMillisecond = 60 * 1000;
+
+	private NegativeCache negativeCache;
+
 	private static final Logger logger = LoggerFactory.getLogger(MapBasedCacheService.class);
 
+	public MapBasedCacheService()
+	{
+		this(new CacheStats(), 0, 1);
+	}
+
+	/**
+	 * 分片, 统计记录到逻辑缓存的stats中
+	 *
+	 * @param stats
+	 * @param shardIndex
+	 * @param shardCount
+	 */
+	MapBasedCacheService(CacheStats stats, int shardIndex, int shardCount)
+	{
+		this.stats = stats;
+		this.shardIndex = shardIndex;
+		this.shardCount = shardCount;
+		stats.attach(this);
+	}
+
 	/* (non-Javadoc)
 	 * @see common.cache.ICacheService#deleteByKey(java.lang.String)
 	 */
 	@Override
 	public boolean deleteByKey(String key)
 	{
-		cacheMap.remove(key);
+		byte[] digest = CacheKeys.digest(key);
+		long high = CacheKeys.high(digest);
+		long low = CacheKeys.low(digest);
+		CacheableWrapper<T> w = cacheMap.remove(high, low);
+		if (w != null) {
+			onRemoved(w);
+			//删除的条目不再写入数据库, 重放日志时也不再恢复
+			w.takeOperation();
+			log(w, WriteAheadLog.DELETE_OPERATION);
+		}
+		if (offHeapStore != null) {
+			offHeapStore.remove(high, low);
+		}
 		return true;
 	}
 
+	/**
+	 * @return 等待其他线程加载结果的次数
+	 */
+	public long getCoalescedLoadCount()
+	{
+		return stats.getCoalescedLoadCount();
+	}
+
 	/**
 	 * @return the dbOperator
 	 */
@@ -93,6 +289,22 @@ public class MapBasedCacheService<T extends ICacheable> extends AbstractCacheSer
 		return dbOperator;
 	}
 
+	/**
+	 * @return the deltaFieldName
+	 */
+	public String getDeltaFieldName()
+	{
+		return deltaFieldName;
+	}
+
+	/**
+	 * @return 等待写入数据库的条目数
+	 */
+	public int getDirtySize()
+	{
+		return dirtyJournal.size();
+	}
+
 	/**
 	 * @return the expireMillisecond
 	 */
@@ -103,180 +315,1657 @@ public class MapBasedCacheService<T extends ICacheable> extends AbstractCacheSer
 	}
 
 	/**
-	 * @return the schedlueTimeSecond
+	 * @return the flushBatchSize
 	 */
-	public long getSchedlueTimeSecond()
+	public int getFlushBatchSize()
 	{
-		return schedlueTimeSecond;
+		return flushBatchSize;
 	}
 
-	@Override
-	public boolean isCached(String key)
+	/**
+	 * @return the flushIntervalSecond
+	 */
+	public long getFlushIntervalSecond()
 	{
-		return cacheMap.contains(key);
+		return flushIntervalSecond;
 	}
 
-	/* (non-Javadoc)
-	 * @see common.cache.ICacheService#readObject(java.lang.String, boolean)
+	/**
+	 * @return 访问数据库加载的次数
 	 */
-	@Override
-	public T readObject(String key, boolean resetExpireTime)
+	public long getLoadCount()
 	{
-		logger.debug("read: '{}', resetExpireTime: {}", key, resetExpireTime);
-		CacheableWrapper<T> w = cacheMap.get(key);
+		return stats.getLoadCount();
+	}
 
-		if (w == null) {
-			//缓存没有命中，从数据库中读取
-			//			long id = new Long(key.substring(key.lastIndexOf(':') + 1));
-			logger.debug("Read key '{}' from DB", key);
-			T target = this.dbOperator.getByCachedKey(key);
-			if (target != null) {
-				target.setCachedTime(System.currentTimeMillis());
-				cacheMap.put(key, new CacheableWrapper<>(target, UPDATE_OPERATION));
-			}
-			return target;
-		}
+	/**
+	 * @return 等待其他线程加载超时的次数
+	 */
+	public long getLoadTimeoutCount()
+	{
+		return stats.getLoadTimeoutCount();
+	}
 
-		T t = w.target;
-		if (t != null && resetExpireTime) {
-			t.setCachedTime(System.currentTimeMillis());
-			w.operation = UPDATE_OPERATION;
-		}
-		return t;
+	/**
+	 * @return the loadTimeoutMillisecond
+	 */
+	public long getLoadTimeoutMillisecond()
+	{
+		return loadTimeoutMillisecond;
 	}
 
 	/**
-	 * @param dbOperator
-	 *            the dbOperator to set
+	 * @return the maximumSize
 	 */
-	public void setDbOperator(CacheDBOperator<T> dbOperator)
+	public long getMaximumSize()
 	{
-		this.dbOperator = dbOperator;
+		return maximumSize;
 	}
 
 	/**
-	 * @param expireMillisecond
-	 *            the expireMillisecond to set
+	 * @return the maximumWeight
 	 */
-	public void setExpireMillisecond(long expireMillisecond)
+	public long getMaximumWeight()
 	{
-		this.expireMillisecond = expireMillisecond;
+		return maximumWeight;
 	}
 
 	/**
-	 * @param schedlueTimeSecond
-	 *            the schedlueTimeSecond to set
+	 * @return the name
 	 */
-	public void setSchedlueTimeSecond(long schedlueTimeSecond)
+	public String getName()
 	{
-		this.schedlueTimeSecond = schedlueTimeSecond;
+		return name;
 	}
 
-	@PostConstruct
-	public void start() throws IllegalArgumentException, IllegalAccessException
+	/**
+	 * @return the negativeCacheCapacity
+	 */
+	public int getNegativeCacheCapacity()
 	{
-		refresh();
-		startScheduleTask();
+		return negativeCacheCapacity;
 	}
 
-	public void startScheduleTask()
+	/**
+	 * @return the negativeCacheTtlMillisecond
+	 */
+	public long getNegativeCacheTtlMillisecond()
 	{
-		expireFuture = ex.scheduleAtFixedRate(new Runnable() {
-			@Override
-			public void run()
-			{
-				try {
-					Set<String> keys = cacheMap.keySet();
-					for (String key : keys) {
-						logger.debug("refresh key: {}", key);
-						CacheableWrapper<T> w = cacheMap.get(key);
-						if (w == null || w.target == null) {
-							continue;
-						}
-						if (System.currentTimeMillis() - w.target.getCachedTime() > getExpireMillisecond()) {
-							cacheMap.remove(key);
-						}
-						else if (w.operation > 0) {
-							doDBSaveUpdate(w);
-						}
-					}
-				}
-				catch (Exception e) {
-					e.printStackTrace();
-				}
-			}
-		}, schedlueTimeSecond, schedlueTimeSecond, TimeUnit.SECONDS);
+		return negativeCacheTtlMillisecond;
 	}
 
-	@PreDestroy
-	public void stop()
+	/**
+	 * @return the offHeapCapacity
+	 */
+	public long getOffHeapCapacity()
 	{
-		try {
-			ex.awaitTermination(15, TimeUnit.SECONDS);
-		}
-		catch (InterruptedException e) {
-		}
-		if (expireFuture != null) {
-			expireFuture.cancel(true);
-		}
-		ex.shutdown();
+		return offHeapCapacity;
 	}
 
-	/* (non-Javadoc)
-	 * @see common.cache.ICacheService#writeObject(common.cache.ICacheable)
+	/**
+	 * @return 堆外存储的条目数
 	 */
-	@Override
-	public String writeObject(T t)
+	public int getOffHeapSize()
 	{
-		String key = calculateKey(t);
-		t.setCachedTime(System.currentTimeMillis());
-		try {
-			dbOperator.getCacheKeyField().set(t, key);
-		}
-		catch (IllegalArgumentException | IllegalAccessException e) {
-			e.printStackTrace();
-			logger.error("Set cache key field value error !");
-		}
-		cacheMap.put(key, new CacheableWrapper<>(t, CREATE_OPERATION));
-		return key;
+		return offHeapStore == null ? 0 : offHeapStore.size();
 	}
 
-	private void doDBSaveUpdate(final CacheableWrapper<T> w) throws IllegalArgumentException, IllegalAccessException
+	/**
+	 * @return the refreshAheadQueueSize
+	 */
+	public int getRefreshAheadQueueSize()
 	{
-		if (w.operation == CREATE_OPERATION) {
-			logger.debug("create key: {}", dbOperator.getCacheKeyField().get(w.target));
-			dbOperator.createCacheable(w.target);
-		}
-		else if (w.operation == UPDATE_OPERATION) {
-			logger.debug("update key: {}", dbOperator.getCacheKeyField().get(w.target));
-			dbOperator.updateCacheable(w.target);
-		}
-		w.operation = NON_OPERATION;
+		return refreshAheadQueueSize;
 	}
 
 	/**
-	 * 刷新整个缓存
-	 *
-	 * @throws IllegalArgumentException
-	 * @throws IllegalAccessException
+	 * @return the refreshAheadRatio
 	 */
-	private void refresh() throws IllegalArgumentException, IllegalAccessException
+	public double getRefreshAheadRatio()
 	{
-		if (refreshLock.tryLock()) {
-			try {
-				List<T> list = dbOperator.loadAllCacheable();
-				cacheMap.clear();
-				if (list.size() > 0) {
-					for (T tt : list) {
-						if (System.currentTimeMillis() - tt.getCachedTime() <= expireMillisecond) {
-							cacheMap.put(calculateKey(tt), new CacheableWrapper<>(tt, NON_OPERATION));
-						}
-					}
-				}
-			}
-			finally {
-				refreshLock.unlock();
-			}
+		return refreshAheadRatio;
+	}
+
+	/**
+	 * @return the refreshAheadThreads
+	 */
+	public int getRefreshAheadThreads()
+	{
+		return refreshAheadThreads;
+	}
+
+	/**
+	 * @return the schedlueTimeSecond
+	 */
+	public long getSchedlueTimeSecond()
+	{
+		return schedlueTimeSecond;
+	}
+
+	/**
+	 * @return 堆内缓存的条目数
+	 */
+	public int getSize()
+	{
+		return cacheMap.size();
+	}
+
+	/**
+	 * @return the snapshotFile
+	 */
+	public String getSnapshotFile()
+	{
+		return snapshotFile;
+	}
+
+	/**
+	 * @return the snapshotIntervalSecond
+	 */
+	public long getSnapshotIntervalSecond()
+	{
+		return snapshotIntervalSecond;
+	}
+
+	/**
+	 * @return 运行统计, 同时注册为MBean
+	 */
+	public CacheStats getStats()
+	{
+		return stats;
+	}
+
+	/**
+	 * @return the walDir
+	 */
+	public String getWalDir()
+	{
+		return walDir;
+	}
+
+	/**
+	 * @return the warmUpPageSize
+	 */
+	public int getWarmUpPageSize()
+	{
+		return warmUpPageSize;
+	}
+
+	/**
+	 * @return the warmUpThreads
+	 */
+	public int getWarmUpThreads()
+	{
+		return warmUpThreads;
+	}
+
+	@Override
+	public boolean isCached(String key)
+	{
+		return cacheMap.get(key) != null;
+	}
+
+	/* (non-Javadoc)
+	 * @see common.cache.ICacheService#readObject(java.lang.String, boolean)
+	 */
+	@Override
+	public T readObject(String key, boolean resetExpireTime)
+	{
+		long start = System.nanoTime();
+		CacheableWrapper<T> w = cacheMap.get(key);
+
+		T t;
+		if (w == null) {
+			//缓存没有命中，从数据库中读取
+			//			long id = new Long(key.substring(key.lastIndexOf(':') + 1));
+			stats.recordMisses(1);
+			t = load(key, resetExpireTime);
+		}
+		else {
+			stats.recordHits(1);
+			t = readCached(w, resetExpireTime);
+		}
+		stats.recordRead(System.nanoTime() - start);
+		return t;
+	}
+
+	/* (non-Javadoc)
+	 * @see common.cache.AbstractCacheService#readObjectByKeyGene(java.lang.String, boolean)
+	 */
+	@Override
+	public T readObjectByKeyGene(String keyGene, boolean resetExpireTime)
+	{
+		long start = System.nanoTime();
+		byte[] digest = CacheKeys.md5(keyGene);
+		CacheableWrapper<T> w = cacheMap.get(CacheKeys.high(digest), CacheKeys.low(digest));
+		T t;
+		if (w == null) {
+			stats.recordMisses(1);
+			t = load(CacheKeys.toHex(digest), resetExpireTime);
+		}
+		else {
+			stats.recordHits(1);
+			t = readCached(w, resetExpireTime);
+		}
+		stats.recordRead(System.nanoTime() - start);
+		return t;
+	}
+
+	/* (non-Javadoc)
+	 * @see common.cache.ICacheService#readObjects(java.util.Collection, boolean)
+	 */
+	@Override
+	public Map<String, T> readObjects(Collection<String> keys, boolean resetExpireTime)
+	{
+		long start = System.nanoTime();
+		Map<String, T> result = new HashMap<>();
+		List<String> misses = null;
+		for (String key : keys) {
+			CacheableWrapper<T> w = cacheMap.get(key);
+			if (w == null) {
+				if (misses == null) {
+					misses = new ArrayList<>();
+				}
+				misses.add(key);
+				continue;
+			}
+			T t = readCached(w, resetExpireTime);
+			if (t != null) {
+				result.put(key, t);
+			}
+		}
+
+		int missCount = misses == null ? 0 : misses.size();
+		stats.recordHits(keys.size() - missCount);
+		if (misses != null) {
+			stats.recordMisses(missCount);
+			loadAll(misses, result, resetExpireTime);
+		}
+		stats.recordRead(System.nanoTime() - start);
+		return result;
+	}
+
+	/**
+	 * @param dbOperator
+	 *            the dbOperator to set
+	 */
+	public void setDbOperator(CacheDBOperator<T> dbOperator)
+	{
+		this.dbOperator = dbOperator;
+	}
+
+	/**
+	 * @param deltaFieldName
+	 *            the deltaFieldName to set
+	 */
+	public void setDeltaFieldName(String deltaFieldName)
+	{
+		this.deltaFieldName = deltaFieldName;
+	}
+
+	/**
+	 * @param expireMillisecond
+	 *            the expireMillisecond to set
+	 */
+	public void setExpireMillisecond(long expireMillisecond)
+	{
+		this.expireMillisecond = expireMillisecond;
+	}
+
+	/**
+	 * @param flushBatchSize
+	 *            the flushBatchSize to set
+	 */
+	public void setFlushBatchSize(int flushBatchSize)
+	{
+		this.flushBatchSize = flushBatchSize;
+	}
+
+	/**
+	 * @param flushIntervalSecond
+	 *            the flushIntervalSecond to set
+	 */
+	public void setFlushIntervalSecond(long flushIntervalSecond)
+	{
+		this.flushIntervalSecond = flushIntervalSecond;
+	}
+
+	/**
+	 * @param loadTimeoutMillisecond
+	 *            the loadTimeoutMillisecond to set
+	 */
+	public void setLoadTimeoutMillisecond(long loadTimeoutMillisecond)
+	{
+		this.loadTimeoutMillisecond = loadTimeoutMillisecond;
+	}
+
+	/**
+	 * @param maximumSize
+	 *            the maximumSize to set
+	 */
+	public void setMaximumSize(long maximumSize)
+	{
+		this.maximumSize = maximumSize;
+	}
+
+	/**
+	 * @param maximumWeight
+	 *            the maximumWeight to set, 需要同时设置{@link #setWeigher(ICacheWeigher)}
+	 */
+	public void setMaximumWeight(long maximumWeight)
+	{
+		this.maximumWeight = maximumWeight;
+	}
+
+	/**
+	 * @param name
+	 *            the name to set
+	 */
+	public void setName(String name)
+	{
+		this.name = name;
+	}
+
+	/**
+	 * @param negativeCacheCapacity
+	 *            the negativeCacheCapacity to set
+	 */
+	public void setNegativeCacheCapacity(int negativeCacheCapacity)
+	{
+		this.negativeCacheCapacity = negativeCacheCapacity;
+	}
+
+	/**
+	 * @param negativeCacheTtlMillisecond
+	 *            the negativeCacheTtlMillisecond to set
+	 */
+	public void setNegativeCacheTtlMillisecond(long negativeCacheTtlMillisecond)
+	{
+		this.negativeCacheTtlMillisecond = negativeCacheTtlMillisecond;
+	}
+
+	/**
+	 * @param offHeapCapacity
+	 *            the offHeapCapacity to set, 只有设置了{@link #setMaximumSize(long)}或{@link #setMaximumWeight(long)}才会降级到堆外
+	 */
+	public void setOffHeapCapacity(long offHeapCapacity)
+	{
+		this.offHeapCapacity = offHeapCapacity;
+	}
+
+	/**
+	 * @param refreshAheadQueueSize
+	 *            the refreshAheadQueueSize to set
+	 */
+	public void setRefreshAheadQueueSize(int refreshAheadQueueSize)
+	{
+		this.refreshAheadQueueSize = refreshAheadQueueSize;
+	}
+
+	/**
+	 * @param refreshAheadRatio
+	 *            the refreshAheadRatio to set, 0到1之间
+	 */
+	public void setRefreshAheadRatio(double refreshAheadRatio)
+	{
+		this.refreshAheadRatio = refreshAheadRatio;
+	}
+
+	/**
+	 * @param refreshAheadThreads
+	 *            the refreshAheadThreads to set
+	 */
+	public void setRefreshAheadThreads(int refreshAheadThreads)
+	{
+		this.refreshAheadThreads = refreshAheadThreads;
+	}
+
+	/**
+	 * @param schedlueTimeSecond
+	 *            the schedlueTimeSecond to set
+	 */
+	public void setSchedlueTimeSecond(long schedlueTimeSecond)
+	{
+		this.schedlueTimeSecond = schedlueTimeSecond;
+	}
+
+	/**
+	 * @param snapshotFile
+	 *            the snapshotFile to set
+	 */
+	public void setSnapshotFile(String snapshotFile)
+	{
+		this.snapshotFile = snapshotFile;
+	}
+
+	/**
+	 * @param snapshotIntervalSecond
+	 *            the snapshotIntervalSecond to set
+	 */
+	public void setSnapshotIntervalSecond(long snapshotIntervalSecond)
+	{
+		this.snapshotIntervalSecond = snapshotIntervalSecond;
+	}
+
+	/**
+	 * @param walDir
+	 *            the walDir to set
+	 */
+	public void setWalDir(String walDir)
+	{
+		this.walDir = walDir;
+	}
+
+	/**
+	 * @param warmUpPageSize
+	 *            the warmUpPageSize to set
+	 */
+	public void setWarmUpPageSize(int warmUpPageSize)
+	{
+		this.warmUpPageSize = warmUpPageSize;
+	}
+
+	/**
+	 * @param warmUpThreads
+	 *            the warmUpThreads to set
+	 */
+	public void setWarmUpThreads(int warmUpThreads)
+	{
+		this.warmUpThreads = warmUpThreads;
+	}
+
+	/**
+	 * @param weigher
+	 *            the weigher to set
+	 */
+	public void setWeigher(ICacheWeigher<T> weigher)
+	{
+		this.weigher = weigher;
+	}
+
+	@PostConstruct
+	public void start() throws IllegalArgumentException, IllegalAccessException
+	{
+		open();
+		if (!restoreSnapshot()) {
+			refresh();
+		}
+		activate();
+		if (name == null) {
+			name = dbOperator.getPersistentClass().getSimpleName();
+		}
+		stats.register("MapBasedCacheService", name);
+	}
+
+	public void startScheduleTask()
+	{
+		expireFuture = ex.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run()
+			{
+				try {
+					expireEntries();
+				}
+				catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+		}, schedlueTimeSecond, schedlueTimeSecond, TimeUnit.SECONDS);
+
+		flushFuture = ex.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run()
+			{
+				try {
+					flushDirtyEntries();
+				}
+				catch (Exception e) {
+					logger.error("Flush dirty entries error", e);
+				}
+			}
+		}, flushIntervalSecond, flushIntervalSecond, TimeUnit.SECONDS);
+
+		if (snapshot != null) {
+			snapshotFuture = ex.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run()
+				{
+					writeSnapshot();
+				}
+			}, snapshotIntervalSecond, snapshotIntervalSecond, TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * 停止定时任务, 等待正在执行的任务结束后写入剩余的修改
+	 */
+	@PreDestroy
+	public void stop()
+	{
+		cancelTasks();
+		awaitTasks(System.nanoTime() + TimeUnit.SECONDS.toNanos(STOP_TIMEOUT_SECOND));
+		close();
+	}
+
+	/* (non-Javadoc)
+	 * @see common.cache.ICacheService#writeObject(common.cache.ICacheable)
+	 */
+	@Override
+	public String writeObject(T t)
+	{
+		long start = System.nanoTime();
+		String key = calculateKey(t);
+		t.setCachedTime(System.currentTimeMillis());
+		try {
+			dbOperator.getCacheKeyField().set(t, key);
+		}
+		catch (IllegalArgumentException | IllegalAccessException e) {
+			e.printStackTrace();
+			logger.error("Set cache key field value error !");
+		}
+		CacheableWrapper<T> w = new CacheableWrapper<>(key, t, CREATE_OPERATION);
+		if (offHeapStore != null) {
+			offHeapStore.remove(w.keyHigh, w.keyLow);
+		}
+		CacheableWrapper<T> old = putEntry(w);
+		//先入队再记录日志, 保证写入数据库前切换日志段时, 旧段中的记录都已经在队列中
+		try {
+			log(w, CREATE_OPERATION);
+		}
+		catch (CacheWriteException e) {
+			//调用方得到写入失败, 撤销这次写入: 不再写入数据库, 恢复被替换的条目
+			w.takeOperation();
+			if (old != null ? cacheMap.replace(w, old) : cacheMap.remove(w)) {
+				if (old != null) {
+					admitEntry(old, w);
+				}
+				else {
+					onRemoved(w);
+				}
+			}
+			throw e;
+		}
+		stats.recordWrite(System.nanoTime() - start);
+		return key;
+	}
+
+	/* (non-Javadoc)
+	 * @see common.cache.AbstractCacheService#readIfCached(java.lang.String, boolean)
+	 */
+	@Override
+	protected T readIfCached(String key, boolean resetExpireTime)
+	{
+		CacheableWrapper<T> w = cacheMap.get(key);
+		if (w == null) {
+			return null;
+		}
+		stats.recordHits(1);
+		return readCached(w, resetExpireTime);
+	}
+
+	/**
+	 * 数据加载完成后重放预写日志, 开始后台任务
+	 */
+	void activate()
+	{
+		if (walDir != null) {
+			wal = new WriteAheadLog<>(new File(walDir), serializer);
+			replayWal();
+		}
+		if (refreshAheadRatio > 0) {
+			refreshAheadAge = (long) (expireMillisecond * (1 - Math.min(1, refreshAheadRatio)));
+			refreshExecutor = new ThreadPoolExecutor(refreshAheadThreads, refreshAheadThreads, 0, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<Runnable>(refreshAheadQueueSize));
+		}
+		startScheduleTask();
+	}
+
+	/**
+	 * 等待{@link #cancelTasks()}时正在执行的定时任务结束
+	 *
+	 * @param deadline
+	 *            {@link System#nanoTime()}表示的最晚时间
+	 */
+	void awaitTasks(long deadline)
+	{
+		try {
+			if (!ex.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+				logger.warn("Scheduled tasks of cache '{}' are still running after stop timeout", name);
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * 取消定时任务并关闭各个线程池, 不等待正在执行的任务
+	 */
+	void cancelTasks()
+	{
+		if (expireFuture != null) {
+			expireFuture.cancel(true);
+		}
+		if (flushFuture != null) {
+			flushFuture.cancel(false);
+		}
+		if (snapshotFuture != null) {
+			snapshotFuture.cancel(false);
+		}
+		ex.shutdown();
+		shutdownAsyncExecutor();
+		if (refreshExecutor != null) {
+			refreshExecutor.shutdownNow();
+		}
+	}
+
+	/**
+	 * 定时任务停止后写入剩余的修改和快照, 关闭预写日志
+	 */
+	void close()
+	{
+		flushDirtyEntries();
+		if (snapshot != null) {
+			writeSnapshot();
+		}
+		if (wal != null) {
+			try {
+				wal.close();
+			}
+			catch (IOException e) {
+				logger.error("Close write ahead log '" + walDir + "' error", e);
+			}
+		}
+		stats.unregister();
+	}
+
+	/**
+	 * 推进时间轮, 只处理已经到期的条目
+	 */
+	void expireEntries()
+	{
+		List<CacheableWrapper<T>> expired;
+		policyLock.lock();
+		try {
+			expired = timerWheel.advance(System.currentTimeMillis(), expireMillisecond);
+			if (policy != null) {
+				for (CacheableWrapper<T> w : expired) {
+					policy.onRemove(w);
+				}
+			}
+		}
+		finally {
+			policyLock.unlock();
+		}
+
+		if (!expired.isEmpty()) {
+			logger.debug("{} entries expired", expired.size());
+		}
+		for (CacheableWrapper<T> w : expired) {
+			evictEntry(w, false);
+		}
+	}
+
+	/**
+	 * 把日志中记录的修改分批写入数据库, 只处理开始时已经在队列中的条目, 失败重新入队的条目留到下一次.
+	 * 之后删除修改已经写入的待淘汰条目
+	 */
+	void flushDirtyEntries()
+	{
+		List<File> logged = Collections.emptyList();
+		if (wal != null) {
+			try {
+				logged = wal.rotate();
+			}
+			catch (IOException e) {
+				logger.error("Rotate write ahead log '" + walDir + "' error", e);
+			}
+		}
+		int pending = dirtyJournal.size();
+		long start = System.nanoTime();
+		int flushed = 0;
+		while (flushed < pending) {
+			List<CacheableWrapper<T>> batch = dirtyJournal.drain(Math.min(flushBatchSize, pending - flushed));
+			if (batch.isEmpty()) {
+				break;
+			}
+			flushed += batch.size();
+			List<CacheableWrapper<T>> creates = new ArrayList<>();
+			List<CacheableWrapper<T>> updates = new ArrayList<>();
+			for (CacheableWrapper<T> w : batch) {
+				int operation = w.takeOperation();
+				if (operation == CREATE_OPERATION) {
+					creates.add(w);
+				}
+				else if (operation == UPDATE_OPERATION) {
+					updates.add(w);
+				}
+			}
+			flushBatch(creates, CREATE_OPERATION);
+			flushBatch(updates, UPDATE_OPERATION);
+		}
+		if (flushed > 0) {
+			long elapsed = System.nanoTime() - start;
+			stats.recordFlush(flushed, elapsed);
+			logger.debug("Flushed {} dirty entries in {}ms", flushed, TimeUnit.NANOSECONDS.toMillis(elapsed));
+		}
+		evictPending();
+		//失败的条目已经重新记录到新的段
+		if (!logged.isEmpty()) {
+			wal.delete(logged);
+		}
+	}
+
+	/**
+	 * 创建各个组件, 还没有加载数据
+	 */
+	void open()
+	{
+		if (maximumSize > 0 || maximumWeight > 0) {
+			policy = new TinyLfuPolicy<>(maximumSize, maximumWeight);
+		}
+		serializer = new CacheableSerializer<>(dbOperator.getPersistentClass());
+		if (offHeapCapacity > 0) {
+			offHeapStore = new OffHeapStore(offHeapCapacity);
+		}
+		if (negativeCacheCapacity > 0) {
+			negativeCache = new NegativeCache(negativeCacheCapacity, negativeCacheTtlMillisecond);
+		}
+		if (snapshotFile != null) {
+			snapshot = new CacheSnapshot<>(new File(snapshotFile), serializer);
+		}
+	}
+
+	/**
+	 * 放入从数据库加载的记录, 已经过期的忽略
+	 *
+	 * @param key
+	 * @param t
+	 * @param now
+	 * @return 是否放入了缓存
+	 */
+	boolean putLoaded(String key, T t, long now)
+	{
+		if (now - t.getCachedTime() > expireMillisecond) {
+			return false;
+		}
+		putEntry(new CacheableWrapper<>(key, t, NON_OPERATION));
+		return true;
+	}
+
+	/**
+	 * 从快照恢复缓存, 再用增量查询合并快照之后数据库中修改过的记录
+	 *
+	 * @return false表示没有可用的快照, 需要全量加载
+	 */
+	boolean restoreSnapshot()
+	{
+		if (snapshot == null) {
+			return false;
+		}
+		long start = System.currentTimeMillis();
+		final int[] restored = { 0 };
+		long snapshotTime;
+		try {
+			snapshotTime = snapshot.read(new CacheSnapshot.Visitor<T>() {
+				@Override
+				public void visit(long keyHigh, long keyLow, T target, int operation)
+				{
+					//快照中未写入数据库的修改即使过期也要恢复, 过期时会先写入数据库
+					if (operation > 0 || System.currentTimeMillis() - target.getCachedTime() <= expireMillisecond) {
+						putEntry(new CacheableWrapper<>(keyHigh, keyLow, target, operation > 0 ? operation : NON_OPERATION));
+						restored[0]++;
+					}
+				}
+			});
+		}
+		catch (IOException | ClassNotFoundException | RuntimeException e) {
+			logger.error("Read snapshot '" + snapshotFile + "' error, load all from DB", e);
+			return false;
+		}
+		if (snapshotTime < 0) {
+			logger.info("No usable snapshot '{}', load all from DB", snapshotFile);
+			return false;
+		}
+		logger.info("Restored {} entries from snapshot in {}ms", restored[0], System.currentTimeMillis() - start);
+
+		List<T> changed = dbOperator.getByFieldRange(deltaFieldName, snapshotTime, null, true, false);
+		long now = System.currentTimeMillis();
+		int merged = 0;
+		for (T row : changed) {
+			CacheableWrapper<T> fresh = new CacheableWrapper<>(calculateKey(row), row, NON_OPERATION);
+			if (!owns(fresh.keyHigh, fresh.keyLow)) {
+				continue;
+			}
+			CacheableWrapper<T> w = cacheMap.get(fresh.keyHigh, fresh.keyLow);
+			if (w != null && w.operation > 0 && w.target.getCachedTime() >= row.getCachedTime()) {
+				//快照中的修改更新, 等待写入数据库
+				continue;
+			}
+			if (w != null) {
+				//数据库中的记录更新, 快照中旧的修改不再写入数据库
+				w.takeOperation();
+			}
+			if (now - row.getCachedTime() <= expireMillisecond) {
+				putEntry(fresh);
+				merged++;
+			}
+			else if (w != null && cacheMap.remove(w)) {
+				onRemoved(w);
+			}
+		}
+		logger.info("Merged {} entries changed since snapshot in {}ms", merged, System.currentTimeMillis() - start);
+		return true;
+	}
+
+	/**
+	 * 已经放入cacheMap的条目加入淘汰策略和时间轮, 并替换掉原来的条目
+	 *
+	 * @param w
+	 * @param old
+	 *            被替换的条目
+	 */
+	private void admitEntry(CacheableWrapper<T> w, CacheableWrapper<T> old)
+	{
+		if (policy != null && weigher != null) {
+			w.weight = weigher.weigh(keyOf(w), w.target);
+		}
+		List<CacheableWrapper<T>> victims = Collections.emptyList();
+		policyLock.lock();
+		try {
+			if (old != null) {
+				unlinkEntry(old);
+			}
+			//加锁前可能已经被其他线程删除或替换
+			if (cacheMap.get(w.keyHigh, w.keyLow) == w) {
+				linkEntry(w);
+			}
+			if (policy != null) {
+				victims = policy.evict();
+				for (CacheableWrapper<T> victim : victims) {
+					timerWheel.deschedule(victim);
+				}
+			}
+		}
+		finally {
+			policyLock.unlock();
+		}
+
+		if (w.operation > 0) {
+			dirtyJournal.enqueue(w);
+		}
+		for (CacheableWrapper<T> victim : victims) {
+			if (victim.operation > 0) {
+				pendingEvictions.add(victim);
+			}
+			else {
+				evictEntry(victim, true);
+			}
+		}
+	}
+
+	/**
+	 * 清空缓存中的条目
+	 */
+	private void clearEntries()
+	{
+		cacheMap.clear();
+		pendingEvictions.clear();
+		policyLock.lock();
+		try {
+			if (policy != null) {
+				policy.clear();
+			}
+			timerWheel.clear();
+			if (offHeapStore != null) {
+				offHeapStore.clear();
+			}
+			if (negativeCache != null) {
+				negativeCache.clear();
+			}
+		}
+		finally {
+			policyLock.unlock();
+		}
+	}
+
+	/**
+	 * 把已经写入数据库的条目降级到堆外存储, 堆外空间不足时放弃
+	 *
+	 * @param w
+	 */
+	private void demote(CacheableWrapper<T> w)
+	{
+		try {
+			if (!offHeapStore.put(w.keyHigh, w.keyLow, serializer.serialize(w.target))) {
+				logger.debug("No off-heap space for key '{}'", w);
+			}
+		}
+		catch (IOException e) {
+			logger.warn("Serialize key '" + w + "' error, drop it", e);
+		}
+	}
+
+	private void doDBSaveUpdate(final CacheableWrapper<T> w)
+	{
+		int operation = w.takeOperation();
+		try {
+			if (operation == CREATE_OPERATION) {
+				logger.debug("create key: {}", w);
+				dbOperator.createCacheable(w.target);
+			}
+			else if (operation == UPDATE_OPERATION) {
+				logger.debug("update key: {}", w);
+				dbOperator.updateCacheable(w.target);
+			}
+		}
+		catch (RuntimeException e) {
+			if (operation > 0) {
+				redirty(w, operation);
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * 淘汰一个条目, 有未同步数据库的修改则先写入数据库再从缓存删除
+	 *
+	 * @param w
+	 * @param demote
+	 *            是否降级到堆外存储, 过期的条目直接丢弃
+	 */
+	private void evictEntry(CacheableWrapper<T> w, boolean demote)
+	{
+		try {
+			if (w.operation > 0) {
+				doDBSaveUpdate(w);
+			}
+			if (cacheMap.remove(w)) {
+				stats.recordEviction(!demote);
+				if (w.operation > 0) {
+					//删除前又被修改过
+					doDBSaveUpdate(w);
+				}
+				if (demote && offHeapStore != null) {
+					demote(w);
+				}
+			}
+		}
+		catch (Exception e) {
+			logger.error("Flush evicted key '" + w + "' error, keep it in cache", e);
+			cacheMap.putIfAbsent(w);
+			policyLock.lock();
+			try {
+				//删除前失败时条目还在cacheMap中, 同样已经离开了淘汰策略和时间轮; 已经被其他线程替换的不再处理
+				if (cacheMap.get(w.keyHigh, w.keyLow) == w) {
+					linkEntry(w);
+					if (!demote) {
+						retryExpire(w);
+					}
+				}
+			}
+			finally {
+				policyLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * 删除修改已经写入数据库的待淘汰条目, 写入失败或又被修改的留到下一次
+	 */
+	private void evictPending()
+	{
+		for (int n = pendingEvictions.size(); n > 0; n--) {
+			CacheableWrapper<T> w = pendingEvictions.poll();
+			if (w == null) {
+				return;
+			}
+			//已经被删除或替换
+			if (cacheMap.get(w.keyHigh, w.keyLow) != w) {
+				continue;
+			}
+			if (w.operation > 0) {
+				pendingEvictions.add(w);
+				continue;
+			}
+			evictEntry(w, true);
+			//等待期间可能因撤销写入重新加入了淘汰策略
+			if (cacheMap.get(w.keyHigh, w.keyLow) != w) {
+				onRemoved(w);
+			}
+		}
+	}
+
+	/**
+	 * 分批写入一组相同操作的条目, 批量失败时逐条重试, 仍然失败的条目重新标记等待下次写入
+	 *
+	 * @param ws
+	 * @param operation
+	 */
+	private void flushBatch(List<CacheableWrapper<T>> ws, int operation)
+	{
+		if (ws.isEmpty()) {
+			return;
+		}
+		List<T> targets = new ArrayList<>(ws.size());
+		for (CacheableWrapper<T> w : ws) {
+			targets.add(w.target);
+		}
+		try {
+			if (operation == CREATE_OPERATION) {
+				dbOperator.createCacheables(targets);
+			}
+			else {
+				dbOperator.updateCacheables(targets);
+			}
+			return;
+		}
+		catch (RuntimeException e) {
+			logger.error("Batch flush " + ws.size() + " entries error, retry one by one", e);
+		}
+
+		for (CacheableWrapper<T> w : ws) {
+			try {
+				if (operation == CREATE_OPERATION) {
+					dbOperator.createCacheable(w.target);
+				}
+				else {
+					dbOperator.updateCacheable(w.target);
+				}
+			}
+			catch (RuntimeException e) {
+				logger.error("Flush key '" + w + "' error", e);
+				stats.recordFlushFailure();
+				redirty(w, operation);
+			}
+		}
+	}
+
+	/**
+	 * @param key
+	 * @param task
+	 * @param timeout
+	 *            毫秒, <0表示一直等待
+	 * @return
+	 */
+	private T getLoaded(String key, Future<T> future, long timeout)
+	{
+		try {
+			return timeout < 0 ? future.get() : future.get(timeout, TimeUnit.MILLISECONDS);
+		}
+		catch (TimeoutException e) {
+			stats.recordLoadTimeout();
+			throw new CacheLoadException("Wait loading key '" + key + "' timeout: " + timeout + "ms");
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CacheLoadException("Interrupted while loading key '" + key + "'", e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new CacheLoadException("Load key '" + key + "' error", e.getCause());
+		}
+	}
+
+	/**
+	 * 覆盖了{@link #calculateKey(ICacheable)}的key被MD5成128位后不能还原, 所以优先使用缓存对象中缓存key字段的值,
+	 * 快照, 日志和堆外存储恢复的条目也能取到原始的key
+	 *
+	 * @param w
+	 * @return 条目的原始key, 用于查询数据库
+	 */
+	private String keyOf(CacheableWrapper<T> w)
+	{
+		Object key;
+		try {
+			key = w.target == null ? null : dbOperator.getCacheKeyField().get(w.target);
+		}
+		catch (IllegalArgumentException | IllegalAccessException e) {
+			throw new BugError(e);
+		}
+		return key == null ? w.key() : key.toString();
+	}
+
+	/**
+	 * 把条目加入淘汰策略和时间轮, 调用方持有{@link #policyLock}
+	 *
+	 * @param w
+	 */
+	private void linkEntry(CacheableWrapper<T> w)
+	{
+		if (policy != null) {
+			policy.onAdd(w);
+		}
+		w.expireTime = w.target.getCachedTime() + expireMillisecond;
+		timerWheel.schedule(w);
+	}
+
+	/**
+	 * 缓存未命中时先从堆外存储升级, 没有再从数据库加载. 同一个key同时只有一个线程加载, 其他线程最多等待{@link #loadTimeoutMillisecond}
+	 *
+	 * @param key
+	 * @param resetExpireTime
+	 * @return
+	 */
+	private T load(String key, boolean resetExpireTime)
+	{
+		SettableFuture<T> future = SettableFuture.create();
+		SettableFuture<T> loading = loadingMap.putIfAbsent(key, future);
+		if (loading != null) {
+			stats.recordCoalescedLoad();
+			return getLoaded(key, loading, loadTimeoutMillisecond);
+		}
+
+		try {
+			T target;
+			byte[] digest = CacheKeys.digest(key);
+			long high = CacheKeys.high(digest);
+			long low = CacheKeys.low(digest);
+			CacheableWrapper<T> w = cacheMap.get(high, low);
+			if (w != null) {
+				//抢到加载权之前已经被其他线程放入缓存
+				target = w.target;
+			}
+			else if ((w = promote(high, low, resetExpireTime)) != null) {
+				target = w.target;
+			}
+			else if (negativeCache != null && negativeCache.contains(high, low)) {
+				stats.recordNegativeHit();
+				target = null;
+			}
+			else {
+				target = loadFromDB(key);
+				if (target != null) {
+					target.setCachedTime(System.currentTimeMillis());
+					putEntry(new CacheableWrapper<>(key, target, UPDATE_OPERATION));
+				}
+				else {
+					rememberAbsent(high, low);
+				}
+			}
+			future.set(target);
+			return target;
+		}
+		catch (RuntimeException e) {
+			future.setException(e);
+			throw e;
+		}
+		finally {
+			loadingMap.remove(key, future);
+		}
+	}
+
+	/**
+	 * 批量版本的{@link #load(String)}: 其他线程正在加载的key等待其结果, 其余的用一次(分批的)in查询加载
+	 *
+	 * @param keys
+	 * @param result
+	 *            加载到的对象放入result
+	 * @param resetExpireTime
+	 */
+	private void loadAll(List<String> keys, Map<String, T> result, boolean resetExpireTime)
+	{
+		Map<String, SettableFuture<T>> owned = new HashMap<>();
+		Map<String, SettableFuture<T>> waiting = null;
+		for (String key : keys) {
+			if (owned.containsKey(key) || result.containsKey(key)) {
+				continue;
+			}
+			SettableFuture<T> future = SettableFuture.create();
+			SettableFuture<T> loading = loadingMap.putIfAbsent(key, future);
+			if (loading == null) {
+				owned.put(key, future);
+			}
+			else {
+				if (waiting == null) {
+					waiting = new HashMap<>();
+				}
+				waiting.put(key, loading);
+			}
+		}
+
+		try {
+			List<String> dbKeys = new ArrayList<>(owned.size());
+			for (Map.Entry<String, SettableFuture<T>> entry : owned.entrySet()) {
+				byte[] digest = CacheKeys.digest(entry.getKey());
+				long high = CacheKeys.high(digest);
+				long low = CacheKeys.low(digest);
+				CacheableWrapper<T> w = cacheMap.get(high, low);
+				if (w == null) {
+					w = promote(high, low, resetExpireTime);
+				}
+				if (w == null && negativeCache != null && negativeCache.contains(high, low)) {
+					stats.recordNegativeHit();
+					entry.getValue().set(null);
+				}
+				else if (w == null) {
+					dbKeys.add(entry.getKey());
+				}
+				else {
+					entry.getValue().set(w.target);
+					result.put(entry.getKey(), w.target);
+				}
+			}
+
+			if (!dbKeys.isEmpty()) {
+				long start = System.nanoTime();
+				Map<Object, T> loaded;
+				try {
+					loaded = dbOperator.getByCachedKeys(dbKeys);
+				}
+				catch (RuntimeException e) {
+					stats.recordLoadFailure();
+					throw e;
+				}
+				stats.recordLoad(System.nanoTime() - start);
+				long now = System.currentTimeMillis();
+				for (String key : dbKeys) {
+					T target = loaded.get(key);
+					if (target != null) {
+						target.setCachedTime(now);
+						putEntry(new CacheableWrapper<>(key, target, UPDATE_OPERATION));
+						result.put(key, target);
+					}
+					else {
+						byte[] digest = CacheKeys.digest(key);
+						rememberAbsent(CacheKeys.high(digest), CacheKeys.low(digest));
+					}
+					owned.get(key).set(target);
+				}
+			}
+		}
+		catch (RuntimeException e) {
+			for (SettableFuture<T> future : owned.values()) {
+				future.setException(e);
+			}
+			throw e;
+		}
+		finally {
+			for (Map.Entry<String, SettableFuture<T>> entry : owned.entrySet()) {
+				loadingMap.remove(entry.getKey(), entry.getValue());
+			}
+		}
+
+		if (waiting != null) {
+			for (Map.Entry<String, SettableFuture<T>> entry : waiting.entrySet()) {
+				stats.recordCoalescedLoad();
+				T target = getLoaded(entry.getKey(), entry.getValue(), loadTimeoutMillisecond);
+				if (target != null) {
+					result.put(entry.getKey(), target);
+				}
+			}
+		}
+	}
+
+	/**
+	 * 从数据库读取一个key, 记录耗时
+	 *
+	 * @param key
+	 * @return
+	 */
+	private T loadFromDB(String key)
+	{
+		long start = System.nanoTime();
+		T target;
+		try {
+			target = dbOperator.getByCachedKey(key);
+		}
+		catch (RuntimeException e) {
+			stats.recordLoadFailure();
+			throw e;
+		}
+		stats.recordLoad(System.nanoTime() - start);
+		return target;
+	}
+
+	/**
+	 * 记录预写日志并等待刷盘
+	 *
+	 * @param w
+	 * @param operation
+	 */
+	private void log(CacheableWrapper<T> w, int operation)
+	{
+		if (wal == null) {
+			return;
+		}
+		try {
+			wal.sync(wal.append(w, operation));
+		}
+		catch (IOException e) {
+			throw new CacheWriteException("Write ahead log of key '" + w + "' error", e);
+		}
+	}
+
+	/**
+	 * 条目已从cacheMap删除, 同步从淘汰策略中删除
+	 *
+	 * @param w
+	 */
+	private void onRemoved(CacheableWrapper<T> w)
+	{
+		policyLock.lock();
+		try {
+			unlinkEntry(w);
+		}
+		finally {
+			policyLock.unlock();
+		}
+	}
+
+	/**
+	 * @param high
+	 * @param low
+	 * @return key是否属于这个分片
+	 */
+	private boolean owns(long high, long low)
+	{
+		return shardCount == 1 || CacheKeys.shard(high, low, shardCount) == shardIndex;
+	}
+
+	/**
+	 * 从堆外存储取出条目放回缓存, 已经过期的丢弃
+	 *
+	 * @param keyHigh
+	 * @param keyLow
+	 * @param resetExpireTime
+	 * @return 放回缓存的条目, 堆外没有时返回null
+	 */
+	private CacheableWrapper<T> promote(long keyHigh, long keyLow, boolean resetExpireTime)
+	{
+		if (offHeapStore == null) {
+			return null;
+		}
+		byte[] bytes = offHeapStore.remove(keyHigh, keyLow);
+		if (bytes == null) {
+			return null;
+		}
+		T target;
+		try {
+			target = serializer.deserialize(bytes);
+		}
+		catch (IOException | ClassNotFoundException e) {
+			logger.warn("Deserialize off-heap key '" + CacheKeys.toHex(keyHigh, keyLow) + "' error, reload it from DB", e);
+			return null;
+		}
+		long now = System.currentTimeMillis();
+		if (now - target.getCachedTime() > expireMillisecond) {
+			return null;
+		}
+		int operation = NON_OPERATION;
+		if (resetExpireTime) {
+			target.setCachedTime(now);
+			operation = UPDATE_OPERATION;
+		}
+		CacheableWrapper<T> w = new CacheableWrapper<>(keyHigh, keyLow, target, operation);
+		putEntry(w);
+		stats.recordPromotion();
+		return w;
+	}
+
+	/**
+	 * 放入缓存, 容量受限时淘汰超出的条目
+	 *
+	 * @param w
+	 * @return 被替换的条目
+	 */
+	private CacheableWrapper<T> putEntry(CacheableWrapper<T> w)
+	{
+		CacheableWrapper<T> old = cacheMap.put(w);
+		admitEntry(w, old);
+		if (negativeCache != null) {
+			negativeCache.remove(w.keyHigh, w.keyLow);
+		}
+		return old;
+	}
+
+	/**
+	 * 缓存命中
+	 *
+	 * @param w
+	 * @param resetExpireTime
+	 * @return
+	 */
+	private T readCached(CacheableWrapper<T> w, boolean resetExpireTime)
+	{
+		T t = w.target;
+		if (t != null && resetExpireTime) {
+			t.setCachedTime(System.currentTimeMillis());
+			dirtyJournal.markDirty(w, UPDATE_OPERATION);
+			log(w, UPDATE_OPERATION);
+		}
+		else if (t != null && refreshExecutor != null
+				&& System.currentTimeMillis() - t.getCachedTime() > refreshAheadAge) {
+			refreshAhead(w);
+		}
+		recordAccess(w, t != null && resetExpireTime);
+		return t;
+	}
+
+	/**
+	 * 记录一次命中, 需要时重新调度过期时间. 锁被占用时放弃本次记录, 不阻塞读操作,
+	 * 没来得及重新调度的条目在时间轮到期时会按实际的缓存时间重新调度
+	 *
+	 * @param w
+	 * @param expireTimeReset
+	 */
+	private void recordAccess(CacheableWrapper<T> w, boolean expireTimeReset)
+	{
+		if ((policy != null || expireTimeReset) && policyLock.tryLock()) {
+			try {
+				if (policy != null) {
+					policy.onAccess(w);
+				}
+				if (expireTimeReset) {
+					w.expireTime = w.target.getCachedTime() + expireMillisecond;
+					timerWheel.reschedule(w);
+				}
+			}
+			finally {
+				policyLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * 写入数据库失败, 重新标记等待下次写入. 同时重新记录日志, 因为原来的记录所在的段可能在这次写入后被删除
+	 *
+	 * @param w
+	 * @param operation
+	 */
+	private void redirty(CacheableWrapper<T> w, int operation)
+	{
+		dirtyJournal.markDirty(w, operation);
+		try {
+			log(w, operation);
+		}
+		catch (CacheWriteException e) {
+			logger.error("Re-log failed key '" + w + "' error", e);
+		}
+	}
+
+	/**
+	 * 刷新整个缓存
+	 *
+	 * @throws IllegalArgumentException
+	 * @throws IllegalAccessException
+	 */
+	private void refresh() throws IllegalArgumentException, IllegalAccessException
+	{
+		if (refreshLock.tryLock()) {
+			try {
+				if (warmUpPageSize > 0) {
+					clearEntries();
+					new CacheWarmer<>(dbOperator, warmUpPageSize, warmUpThreads).warmUp(new CacheWarmer.Sink<T>() {
+						@Override
+						public boolean put(T t, long now)
+						{
+							return putLoaded(calculateKey(t), t, now);
+						}
+					});
+					return;
+				}
+				List<T> list = dbOperator.loadAllCacheable();
+				clearEntries();
+				for (T tt : list) {
+					putLoaded(calculateKey(tt), tt, System.currentTimeMillis());
+				}
+			}
+			finally {
+				refreshLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * 提交后台任务提前刷新快要过期的条目. 有未写入数据库修改的条目不刷新, 数据库中的是旧数据
+	 *
+	 * @param w
+	 */
+	private void refreshAhead(final CacheableWrapper<T> w)
+	{
+		if (w.operation > 0 || !w.markRefreshing()) {
+			return;
+		}
+		try {
+			refreshExecutor.execute(new Runnable() {
+				@Override
+				public void run()
+				{
+					refreshEntry(w);
+				}
+			});
+		}
+		catch (RejectedExecutionException e) {
+			//队列已满, 等下一次读取再提交
+			w.unmarkRefreshing();
+		}
+	}
+
+	/**
+	 * 从数据库重新加载条目, 加载期间条目被修改或替换时放弃
+	 *
+	 * @param w
+	 */
+	private void refreshEntry(CacheableWrapper<T> w)
+	{
+		try {
+			T target = loadFromDB(keyOf(w));
+			if (target == null || w.operation > 0) {
+				return;
+			}
+			//重新加载的就是数据库中的数据, 只在缓存中延长存活时间, 不需要写回数据库
+			target.setCachedTime(System.currentTimeMillis());
+			CacheableWrapper<T> fresh = new CacheableWrapper<>(w.keyHigh, w.keyLow, target, NON_OPERATION);
+			if (cacheMap.replace(w, fresh)) {
+				admitEntry(fresh, w);
+				stats.recordRefresh();
+			}
+		}
+		catch (RuntimeException e) {
+			logger.warn("Refresh key '" + w + "' error", e);
+		}
+		finally {
+			w.unmarkRefreshing();
+		}
+	}
+
+	/**
+	 * 记录数据库中不存在的key. 记录前可能已经被其他线程写入缓存, 记录后再检查一次, 和{@link #putEntry(CacheableWrapper)}先放入再删除记录配合,
+	 * 保证不会留下已经存在的key
+	 *
+	 * @param high
+	 * @param low
+	 */
+	private void rememberAbsent(long high, long low)
+	{
+		if (negativeCache == null) {
+			return;
+		}
+		negativeCache.add(high, low);
+		if (cacheMap.get(high, low) != null) {
+			negativeCache.remove(high, low);
+		}
+	}
+
+	/**
+	 * 重放预写日志中还没有写入数据库的修改, 然后开始记录新的日志
+	 */
+	private void replayWal()
+	{
+		long start = System.currentTimeMillis();
+		final Map<String, CacheableWrapper<T>> replayed = new HashMap<>();
+		int count;
+		try {
+			count = wal.replay(new CacheSnapshot.Visitor<T>() {
+				@Override
+				public void visit(long keyHigh, long keyLow, T target, int operation)
+				{
+					String key = CacheKeys.toHex(keyHigh, keyLow);
+					if (operation == WriteAheadLog.DELETE_OPERATION) {
+						replayed.remove(key);
+						return;
+					}
+					CacheableWrapper<T> old = replayed.get(key);
+					//未写入数据库的新建之后的更新仍然是新建
+					if (old != null && old.operation == CREATE_OPERATION) {
+						operation = CREATE_OPERATION;
+					}
+					replayed.put(key, new CacheableWrapper<>(keyHigh, keyLow, target, operation));
+				}
+			});
+			wal.open();
+		}
+		catch (IOException | ClassNotFoundException e) {
+			throw new CacheLoadException("Replay write ahead log '" + walDir + "' error", e);
+		}
+		//崩溃前可能已经写入数据库, 新建按缓存key upsert并补上id, 重复写入只会更新原来的记录, 不需要逐个查询
+		for (CacheableWrapper<T> w : replayed.values()) {
+			putEntry(w);
+		}
+		logger.info("Replayed {} log records, {} entries pending flush in {}ms", count, replayed.size(),
+				System.currentTimeMillis() - start);
+	}
+
+	/**
+	 * 过期的条目写入数据库失败, 按失败次数退避后再次到期重试, 调用方持有{@link #policyLock}
+	 *
+	 * @param w
+	 */
+	private void retryExpire(CacheableWrapper<T> w)
+	{
+		long delay = Math.min(EXPIRE_RETRY_MILLISECOND << Math.min(w.expireFailures, 16), MAX_EXPIRE_RETRY_MILLISECOND);
+		w.expireFailures++;
+		w.expireTime = System.currentTimeMillis() + delay;
+		timerWheel.schedule(w);
+	}
+
+	/**
+	 * 把条目从淘汰策略和时间轮中移除, 调用方持有{@link #policyLock}
+	 *
+	 * @param w
+	 */
+	private void unlinkEntry(CacheableWrapper<T> w)
+	{
+		if (policy != null) {
+			policy.onRemove(w);
+		}
+		timerWheel.deschedule(w);
+	}
+
+	/**
+	 * 把缓存写入快照文件
+	 */
+	private void writeSnapshot()
+	{
+		long start = System.currentTimeMillis();
+		try {
+			int count = snapshot.write(cacheMap.values(), start);
+			logger.info("Wrote {} entries to snapshot in {}ms", count, System.currentTimeMillis() - start);
+		}
+		catch (IOException | RuntimeException e) {
+			logger.error("Write snapshot '" + snapshotFile + "' error", e);
 		}
 	}
-}
+}
\ No newline at end of file
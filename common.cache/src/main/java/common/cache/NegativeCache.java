@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2016 dzyh
+ * All rights reserved.
+ *
+ * $$File: $$
+ * $$DateTime: $$
+ * $$Author: $$
+ * $$Revision: $$
+ */
+
+package common.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 数据库中不存在的key, 短时间内再次读取时不访问数据库.
+ * <p>
+ * 先查布隆过滤器, 绝大多数存在的key不需要加锁; 过滤器可能误判, 以LRU中的精确记录为准. 过滤器分新旧两代,
+ * 新一代存在超过ttl后轮换, 过期的key最多在过滤器中保留2倍ttl. LRU只保存两个long的key和过期时间
+ *
+ * @author wls
+ */
+final class NegativeCache
+{
+	private static final class Key
+	{
+		final long high;
+
+		final long low;
+
+		Key(long high, long low)
+		{
+			this.high = high;
+			this.low = low;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return high == other.high && low == other.low;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return CacheKeys.hash(high, low);
+		}
+	}
+
+	/**
+	 * 每个key在过滤器中设置的位数
+	 */
+	private static final int HASHES = 4;
+
+	/**
+	 * 每个key占的位数, 4个哈希时误判率约1%
+	 */
+	private static final int BITS_PER_KEY = 10;
+
+	private final long ttl;
+
+	private final int bitMask;
+
+	private final LinkedHashMap<Key, Long> entries;
+
+	private volatile AtomicLongArray current;
+
+	private volatile AtomicLongArray previous;
+
+	/**
+	 * 当前一代的开始时间, 由entries的锁保护
+	 */
+	private long generationStart;
+
+	/**
+	 * @param capacity
+	 *            最多记录的key数
+	 * @param ttl
+	 *            毫秒
+	 */
+	NegativeCache(final int capacity, long ttl)
+	{
+		this.ttl = ttl;
+		int bits = Integer.highestOneBit(Math.max(64, capacity * BITS_PER_KEY - 1)) << 1;
+		bitMask = bits - 1;
+		current = new AtomicLongArray(bits >>> 6);
+		previous = new AtomicLongArray(bits >>> 6);
+		generationStart = System.currentTimeMillis();
+		entries = new LinkedHashMap<Key, Long>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Long> eldest)
+			{
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * 记录一个不存在的key
+	 *
+	 * @param high
+	 * @param low
+	 */
+	void add(long high, long low)
+	{
+		long now = System.currentTimeMillis();
+		synchronized (entries) {
+			if (now - generationStart > ttl) {
+				previous = current;
+				current = new AtomicLongArray(previous.length());
+				generationStart = now;
+			}
+			entries.put(new Key(high, low), now + ttl);
+			setBits(current, high, low);
+		}
+	}
+
+	void clear()
+	{
+		synchronized (entries) {
+			entries.clear();
+			current = new AtomicLongArray(current.length());
+			previous = new AtomicLongArray(current.length());
+			generationStart = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * @param high
+	 * @param low
+	 * @return true表示key不存在并且没有过期
+	 */
+	boolean contains(long high, long low)
+	{
+		if (!mightContain(high, low)) {
+			return false;
+		}
+		Key key = new Key(high, low);
+		synchronized (entries) {
+			Long expireTime = entries.get(key);
+			if (expireTime == null) {
+				return false;
+			}
+			if (expireTime < System.currentTimeMillis()) {
+				entries.remove(key);
+				return false;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * key已经存在, 删除记录
+	 *
+	 * @param high
+	 * @param low
+	 */
+	void remove(long high, long low)
+	{
+		if (!mightContain(high, low)) {
+			return;
+		}
+		synchronized (entries) {
+			entries.remove(new Key(high, low));
+		}
+	}
+
+	int size()
+	{
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * 第i个位置取key的第i个32位, MD5的各部分已经是均匀分布的
+	 */
+	private int bitIndex(long high, long low, int i)
+	{
+		long bits = i < 2 ? high : low;
+		return (int) (i % 2 == 0 ? bits : bits >>> 32) & bitMask;
+	}
+
+	private boolean isSet(AtomicLongArray filter, long high, long low)
+	{
+		for (int i = 0; i < HASHES; i++) {
+			int index = bitIndex(high, low, i);
+			if ((filter.get(index >>> 6) & (1L << index)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean mightContain(long high, long low)
+	{
+		return isSet(current, high, low) || isSet(previous, high, low);
+	}
+
+	private void setBits(AtomicLongArray filter, long high, long low)
+	{
+		for (int i = 0; i < HASHES; i++) {
+			int index = bitIndex(high, low, i);
+			long mask = 1L << index;
+			for (;;) {
+				long word = filter.get(index >>> 6);
+				if ((word & mask) != 0 || filter.compareAndSet(index >>> 6, word, word | mask)) {
+					break;
+				}
+			}
+		}
+	}
+}
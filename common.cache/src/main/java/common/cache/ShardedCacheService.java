@@ -0,0 +1,813 @@
+/*
+ * Copyright (C) 2016 dzyh
+ * All rights reserved.
+ *
+ * $$File: $$
+ * $$DateTime: $$
+ * $$Author: $$
+ * $$Revision: $$
+ */
+
+package common.cache;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 分片缓存: key按哈希分到多个独立的{@link MapBasedCacheService}, 每个分片有自己的过期时间轮, 修改队列和后台线程,
+ * 一个分片写数据库慢不影响其他分片. 设置和{@link MapBasedCacheService}相同, 容量类的设置是所有分片的合计. 统计按整个逻辑缓存汇总
+ *
+ * @author wls
+ */
+public class ShardedCacheService<T extends ICacheable> extends AbstractCacheService<T>
+{
+	/**
+	 * 分片数, 每个分片有独立的过期时间轮, 修改队列和写数据库的线程
+	 */
+	private int shardCount = 16;
+
+	private CacheDBOperator<T> dbOperator;
+
+	/**
+	 * 分片使用的数据库操作, 第i个分片使用第(i % size)个, 用于把分片固定到不同的数据源. 为null时都使用{@link #dbOperator},
+	 * 启动时的全量加载总是使用{@link #dbOperator}
+	 */
+	private List<CacheDBOperator<T>> shardDbOperators;
+
+	/**
+	 * 注册MBean使用的缓存名称, 默认是实体类的类名
+	 */
+	private String name;
+
+	private long expireMillisecond = 1000 * 60 * 60 * 24 * 7;
+
+	private long schedlueTimeSecond = 30;
+
+	private long flushIntervalSecond = 30;
+
+	private int flushBatchSize = 500;
+
+	private long loadTimeoutMillisecond = 10 * 1000;
+
+	/**
+	 * 所有分片的最大条目数, 平均分到各分片, <=0 表示不限制
+	 */
+	private long maximumSize = -1;
+
+	/**
+	 * 所有分片的最大总权重, 平均分到各分片, <=0 表示不限制
+	 */
+	private long maximumWeight = -1;
+
+	private ICacheWeigher<T> weigher;
+
+	/**
+	 * 所有分片的堆外存储容量(字节), 平均分到各分片, <=0 表示不使用
+	 */
+	private long offHeapCapacity = -1;
+
+	/**
+	 * 快照文件路径, 每个分片一个文件, 文件名后加".分片号"
+	 */
+	private String snapshotFile;
+
+	private long snapshotIntervalSecond = 10 * 60;
+
+	private String deltaFieldName = "cachedTime";
+
+	/**
+	 * 预写日志目录, 每个分片使用其中的一个子目录
+	 */
+	private String walDir;
+
+	private double refreshAheadRatio = -1;
+
+	/**
+	 * 每个分片的提前刷新线程数
+	 */
+	private int refreshAheadThreads = 2;
+
+	/**
+	 * 每个分片等待刷新的任务数上限
+	 */
+	private int refreshAheadQueueSize = 1000;
+
+	/**
+	 * 所有分片记录不存在的key的最大数量, 平均分到各分片
+	 */
+	private int negativeCacheCapacity = -1;
+
+	private long negativeCacheTtlMillisecond = 60 * 1000;
+
+	private int warmUpPageSize = -1;
+
+	private int warmUpThreads = 4;
+
+	private final CacheStats stats = new CacheStats();
+
+	private volatile List<MapBasedCacheService<T>> shards;
+
+	private static final Logger logger = LoggerFactory.getLogger(ShardedCacheService.class);
+
+	/* (non-Javadoc)
+	 * @see common.cache.ICacheService#deleteByKey(java.lang.String)
+	 */
+	@Override
+	public boolean deleteByKey(String key)
+	{
+		return shardFor(key).deleteByKey(key);
+	}
+
+	/**
+	 * @return the dbOperator
+	 */
+	public CacheDBOperator<T> getDbOperator()
+	{
+		return dbOperator;
+	}
+
+	/**
+	 * @return the deltaFieldName
+	 */
+	public String getDeltaFieldName()
+	{
+		return deltaFieldName;
+	}
+
+	/**
+	 * @return 所有分片等待写入数据库的条目数
+	 */
+	public int getDirtySize()
+	{
+		return stats.getDirtySize();
+	}
+
+	/**
+	 * @return the expireMillisecond
+	 */
+	@Override
+	public long getExpireMillisecond()
+	{
+		return expireMillisecond;
+	}
+
+	/**
+	 * @return the flushBatchSize
+	 */
+	public int getFlushBatchSize()
+	{
+		return flushBatchSize;
+	}
+
+	/**
+	 * @return the flushIntervalSecond
+	 */
+	public long getFlushIntervalSecond()
+	{
+		return flushIntervalSecond;
+	}
+
+	/**
+	 * @return the loadTimeoutMillisecond
+	 */
+	public long getLoadTimeoutMillisecond()
+	{
+		return loadTimeoutMillisecond;
+	}
+
+	/**
+	 * @return the maximumSize
+	 */
+	public long getMaximumSize()
+	{
+		return maximumSize;
+	}
+
+	/**
+	 * @return the maximumWeight
+	 */
+	public long getMaximumWeight()
+	{
+		return maximumWeight;
+	}
+
+	/**
+	 * @return the name
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * @return the negativeCacheCapacity
+	 */
+	public int getNegativeCacheCapacity()
+	{
+		return negativeCacheCapacity;
+	}
+
+	/**
+	 * @return the negativeCacheTtlMillisecond
+	 */
+	public long getNegativeCacheTtlMillisecond()
+	{
+		return negativeCacheTtlMillisecond;
+	}
+
+	/**
+	 * @return the offHeapCapacity
+	 */
+	public long getOffHeapCapacity()
+	{
+		return offHeapCapacity;
+	}
+
+	/**
+	 * @return 所有分片堆外存储的条目数
+	 */
+	public int getOffHeapSize()
+	{
+		return stats.getOffHeapSize();
+	}
+
+	/**
+	 * @return the refreshAheadQueueSize
+	 */
+	public int getRefreshAheadQueueSize()
+	{
+		return refreshAheadQueueSize;
+	}
+
+	/**
+	 * @return the refreshAheadRatio
+	 */
+	public double getRefreshAheadRatio()
+	{
+		return refreshAheadRatio;
+	}
+
+	/**
+	 * @return the refreshAheadThreads
+	 */
+	public int getRefreshAheadThreads()
+	{
+		return refreshAheadThreads;
+	}
+
+	/**
+	 * @return the schedlueTimeSecond
+	 */
+	public long getSchedlueTimeSecond()
+	{
+		return schedlueTimeSecond;
+	}
+
+	/**
+	 * @return the shardCount
+	 */
+	public int getShardCount()
+	{
+		return shardCount;
+	}
+
+	/**
+	 * @return the shardDbOperators
+	 */
+	public List<CacheDBOperator<T>> getShardDbOperators()
+	{
+		return shardDbOperators;
+	}
+
+	/**
+	 * @return 所有分片堆内缓存的条目数
+	 */
+	public int getSize()
+	{
+		return stats.getSize();
+	}
+
+	/**
+	 * @return the snapshotFile
+	 */
+	public String getSnapshotFile()
+	{
+		return snapshotFile;
+	}
+
+	/**
+	 * @return the snapshotIntervalSecond
+	 */
+	public long getSnapshotIntervalSecond()
+	{
+		return snapshotIntervalSecond;
+	}
+
+	/**
+	 * @return 所有分片合计的运行统计, 同时注册为MBean
+	 */
+	public CacheStats getStats()
+	{
+		return stats;
+	}
+
+	/**
+	 * @return the walDir
+	 */
+	public String getWalDir()
+	{
+		return walDir;
+	}
+
+	/**
+	 * @return the warmUpPageSize
+	 */
+	public int getWarmUpPageSize()
+	{
+		return warmUpPageSize;
+	}
+
+	/**
+	 * @return the warmUpThreads
+	 */
+	public int getWarmUpThreads()
+	{
+		return warmUpThreads;
+	}
+
+	/**
+	 * @return the weigher
+	 */
+	public ICacheWeigher<T> getWeigher()
+	{
+		return weigher;
+	}
+
+	@Override
+	public boolean isCached(String key)
+	{
+		return shardFor(key).isCached(key);
+	}
+
+	/* (non-Javadoc)
+	 * @see common.cache.ICacheService#readObject(java.lang.String, boolean)
+	 */
+	@Override
+	public T readObject(String key, boolean resetExpireTime)
+	{
+		return shardFor(key).readObject(key, resetExpireTime);
+	}
+
+	/* (non-Javadoc)
+	 * @see common.cache.AbstractCacheService#readObjectByKeyGene(java.lang.String, boolean)
+	 */
+	@Override
+	public T readObjectByKeyGene(String keyGene, boolean resetExpireTime)
+	{
+		byte[] digest = CacheKeys.md5(keyGene);
+		return shardFor(CacheKeys.high(digest), CacheKeys.low(digest)).readObjectByKeyGene(keyGene, resetExpireTime);
+	}
+
+	/* (non-Javadoc)
+	 * @see common.cache.ICacheService#readObjects(java.util.Collection, boolean)
+	 */
+	@Override
+	public Map<String, T> readObjects(Collection<String> keys, boolean resetExpireTime)
+	{
+		List<List<String>> groups = new ArrayList<>(shards.size());
+		for (int i = 0; i < shards.size(); i++) {
+			groups.add(null);
+		}
+		for (String key : keys) {
+			int shard = CacheKeys.shard(CacheKeys.digest(key), shards.size());
+			List<String> group = groups.get(shard);
+			if (group == null) {
+				group = new ArrayList<>();
+				groups.set(shard, group);
+			}
+			group.add(key);
+		}
+		Map<String, T> result = new HashMap<>();
+		for (int i = 0; i < groups.size(); i++) {
+			if (groups.get(i) != null) {
+				result.putAll(shards.get(i).readObjects(groups.get(i), resetExpireTime));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param dbOperator
+	 *            the dbOperator to set
+	 */
+	public void setDbOperator(CacheDBOperator<T> dbOperator)
+	{
+		this.dbOperator = dbOperator;
+	}
+
+	/**
+	 * @param deltaFieldName
+	 *            the deltaFieldName to set
+	 */
+	public void setDeltaFieldName(String deltaFieldName)
+	{
+		this.deltaFieldName = deltaFieldName;
+	}
+
+	/**
+	 * @param expireMillisecond
+	 *            the expireMillisecond to set
+	 */
+	public void setExpireMillisecond(long expireMillisecond)
+	{
+		this.expireMillisecond = expireMillisecond;
+	}
+
+	/**
+	 * @param flushBatchSize
+	 *            the flushBatchSize to set
+	 */
+	public void setFlushBatchSize(int flushBatchSize)
+	{
+		this.flushBatchSize = flushBatchSize;
+	}
+
+	/**
+	 * @param flushIntervalSecond
+	 *            the flushIntervalSecond to set
+	 */
+	public void setFlushIntervalSecond(long flushIntervalSecond)
+	{
+		this.flushIntervalSecond = flushIntervalSecond;
+	}
+
+	/**
+	 * @param loadTimeoutMillisecond
+	 *            the loadTimeoutMillisecond to set
+	 */
+	public void setLoadTimeoutMillisecond(long loadTimeoutMillisecond)
+	{
+		this.loadTimeoutMillisecond = loadTimeoutMillisecond;
+	}
+
+	/**
+	 * @param maximumSize
+	 *            the maximumSize to set
+	 */
+	public void setMaximumSize(long maximumSize)
+	{
+		this.maximumSize = maximumSize;
+	}
+
+	/**
+	 * @param maximumWeight
+	 *            the maximumWeight to set
+	 */
+	public void setMaximumWeight(long maximumWeight)
+	{
+		this.maximumWeight = maximumWeight;
+	}
+
+	/**
+	 * @param name
+	 *            the name to set
+	 */
+	public void setName(String name)
+	{
+		this.name = name;
+	}
+
+	/**
+	 * @param negativeCacheCapacity
+	 *            the negativeCacheCapacity to set
+	 */
+	public void setNegativeCacheCapacity(int negativeCacheCapacity)
+	{
+		this.negativeCacheCapacity = negativeCacheCapacity;
+	}
+
+	/**
+	 * @param negativeCacheTtlMillisecond
+	 *            the negativeCacheTtlMillisecond to set
+	 */
+	public void setNegativeCacheTtlMillisecond(long negativeCacheTtlMillisecond)
+	{
+		this.negativeCacheTtlMillisecond = negativeCacheTtlMillisecond;
+	}
+
+	/**
+	 * @param offHeapCapacity
+	 *            the offHeapCapacity to set
+	 */
+	public void setOffHeapCapacity(long offHeapCapacity)
+	{
+		this.offHeapCapacity = offHeapCapacity;
+	}
+
+	/**
+	 * @param refreshAheadQueueSize
+	 *            the refreshAheadQueueSize to set
+	 */
+	public void setRefreshAheadQueueSize(int refreshAheadQueueSize)
+	{
+		this.refreshAheadQueueSize = refreshAheadQueueSize;
+	}
+
+	/**
+	 * @param refreshAheadRatio
+	 *            the refreshAheadRatio to set
+	 */
+	public void setRefreshAheadRatio(double refreshAheadRatio)
+	{
+		this.refreshAheadRatio = refreshAheadRatio;
+	}
+
+	/**
+	 * @param refreshAheadThreads
+	 *            the refreshAheadThreads to set
+	 */
+	public void setRefreshAheadThreads(int refreshAheadThreads)
+	{
+		this.refreshAheadThreads = refreshAheadThreads;
+	}
+
+	/**
+	 * @param schedlueTimeSecond
+	 *            the schedlueTimeSecond to set
+	 */
+	public void setSchedlueTimeSecond(long schedlueTimeSecond)
+	{
+		this.schedlueTimeSecond = schedlueTimeSecond;
+	}
+
+	/**
+	 * @param shardCount
+	 *            the shardCount to set
+	 */
+	public void setShardCount(int shardCount)
+	{
+		this.shardCount = shardCount;
+	}
+
+	/**
+	 * @param shardDbOperators
+	 *            the shardDbOperators to set
+	 */
+	public void setShardDbOperators(List<CacheDBOperator<T>> shardDbOperators)
+	{
+		this.shardDbOperators = shardDbOperators;
+	}
+
+	/**
+	 * @param snapshotFile
+	 *            the snapshotFile to set
+	 */
+	public void setSnapshotFile(String snapshotFile)
+	{
+		this.snapshotFile = snapshotFile;
+	}
+
+	/**
+	 * @param snapshotIntervalSecond
+	 *            the snapshotIntervalSecond to set
+	 */
+	public void setSnapshotIntervalSecond(long snapshotIntervalSecond)
+	{
+		this.snapshotIntervalSecond = snapshotIntervalSecond;
+	}
+
+	/**
+	 * @param walDir
+	 *            the walDir to set
+	 */
+	public void setWalDir(String walDir)
+	{
+		this.walDir = walDir;
+	}
+
+	/**
+	 * @param warmUpPageSize
+	 *            the warmUpPageSize to set
+	 */
+	public void setWarmUpPageSize(int warmUpPageSize)
+	{
+		this.warmUpPageSize = warmUpPageSize;
+	}
+
+	/**
+	 * @param warmUpThreads
+	 *            the warmUpThreads to set
+	 */
+	public void setWarmUpThreads(int warmUpThreads)
+	{
+		this.warmUpThreads = warmUpThreads;
+	}
+
+	/**
+	 * @param weigher
+	 *            the weigher to set
+	 */
+	public void setWeigher(ICacheWeigher<T> weigher)
+	{
+		this.weigher = weigher;
+	}
+
+	/**
+	 * 各分片先从自己的快照恢复, 没有快照的分片由一次全量加载按key分发, 然后各自开始后台任务
+	 */
+	@PostConstruct
+	public void start()
+	{
+		List<MapBasedCacheService<T>> list = new ArrayList<>(shardCount);
+		for (int i = 0; i < shardCount; i++) {
+			MapBasedCacheService<T> shard = createShard(i);
+			shard.open();
+			list.add(shard);
+		}
+		shards = list;
+
+		boolean[] restored = new boolean[shardCount];
+		boolean loadAll = false;
+		for (int i = 0; i < shardCount; i++) {
+			restored[i] = shards.get(i).restoreSnapshot();
+			loadAll |= !restored[i];
+		}
+		if (loadAll) {
+			load(restored);
+		}
+		for (MapBasedCacheService<T> shard : shards) {
+			shard.activate();
+		}
+		if (name == null) {
+			name = dbOperator.getPersistentClass().getSimpleName();
+		}
+		stats.register("ShardedCacheService", name);
+	}
+
+	/**
+	 * 先停止所有分片的定时任务, 共用一个等待期限, 再并行写入各分片剩余的修改
+	 */
+	@PreDestroy
+	public void stop()
+	{
+		if (shards == null) {
+			return;
+		}
+		shutdownAsyncExecutor();
+		for (MapBasedCacheService<T> shard : shards) {
+			shard.cancelTasks();
+		}
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(MapBasedCacheService.STOP_TIMEOUT_SECOND);
+		for (MapBasedCacheService<T> shard : shards) {
+			shard.awaitTasks(deadline);
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(shards.size());
+		try {
+			List<Future<?>> futures = new ArrayList<>(shards.size());
+			for (final MapBasedCacheService<T> shard : shards) {
+				futures.add(pool.submit(new Runnable() {
+					@Override
+					public void run()
+					{
+						shard.close();
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				try {
+					future.get();
+				}
+				catch (ExecutionException e) {
+					logger.error("Stop shard error", e.getCause());
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			pool.shutdown();
+		}
+		stats.unregister();
+	}
+
+	/* (non-Javadoc)
+	 * @see common.cache.ICacheService#writeObject(common.cache.ICacheable)
+	 */
+	@Override
+	public String writeObject(T t)
+	{
+		return shardFor(calculateKey(t)).writeObject(t);
+	}
+
+	/* (non-Javadoc)
+	 * @see common.cache.AbstractCacheService#readIfCached(java.lang.String, boolean)
+	 */
+	@Override
+	protected T readIfCached(String key, boolean resetExpireTime)
+	{
+		return shardFor(key).readIfCached(key, resetExpireTime);
+	}
+
+	/**
+	 * 创建第i个分片, 容量类的设置平均分到各分片
+	 *
+	 * @param i
+	 * @return
+	 */
+	private MapBasedCacheService<T> createShard(int i)
+	{
+		MapBasedCacheService<T> shard = new MapBasedCacheService<T>(stats, i, shardCount) {
+			@Override
+			public String calculateKey(T t)
+			{
+				return ShardedCacheService.this.calculateKey(t);
+			}
+		};
+		shard.setDbOperator(shardDbOperators == null || shardDbOperators.isEmpty() ? dbOperator : shardDbOperators.get(i
+				% shardDbOperators.size()));
+		shard.setExpireMillisecond(expireMillisecond);
+		shard.setSchedlueTimeSecond(schedlueTimeSecond);
+		shard.setFlushIntervalSecond(flushIntervalSecond);
+		shard.setFlushBatchSize(flushBatchSize);
+		shard.setLoadTimeoutMillisecond(loadTimeoutMillisecond);
+		shard.setMaximumSize(perShard(maximumSize));
+		shard.setMaximumWeight(perShard(maximumWeight));
+		shard.setWeigher(weigher);
+		shard.setOffHeapCapacity(perShard(offHeapCapacity));
+		if (snapshotFile != null) {
+			shard.setSnapshotFile(snapshotFile + "." + i);
+		}
+		shard.setSnapshotIntervalSecond(snapshotIntervalSecond);
+		shard.setDeltaFieldName(deltaFieldName);
+		if (walDir != null) {
+			shard.setWalDir(new File(walDir, "shard-" + i).getPath());
+		}
+		shard.setRefreshAheadRatio(refreshAheadRatio);
+		shard.setRefreshAheadThreads(refreshAheadThreads);
+		shard.setRefreshAheadQueueSize(refreshAheadQueueSize);
+		shard.setNegativeCacheCapacity((int) perShard(negativeCacheCapacity));
+		shard.setNegativeCacheTtlMillisecond(negativeCacheTtlMillisecond);
+		return shard;
+	}
+
+	/**
+	 * 全量加载一次数据库, 按key分发到没有从快照恢复的分片
+	 *
+	 * @param restored
+	 */
+	private void load(final boolean[] restored)
+	{
+		CacheWarmer.Sink<T> sink = new CacheWarmer.Sink<T>() {
+			@Override
+			public boolean put(T t, long now)
+			{
+				String key = calculateKey(t);
+				int shard = CacheKeys.shard(CacheKeys.digest(key), shardCount);
+				return !restored[shard] && shards.get(shard).putLoaded(key, t, now);
+			}
+		};
+		if (warmUpPageSize > 0) {
+			new CacheWarmer<>(dbOperator, warmUpPageSize, warmUpThreads).warmUp(sink);
+			return;
+		}
+		for (T t : dbOperator.loadAllCacheable()) {
+			sink.put(t, System.currentTimeMillis());
+		}
+	}
+
+	/**
+	 * @param total
+	 * @return 每个分片的容量, <=0 表示不限制或不使用时原样返回
+	 */
+	private long perShard(long total)
+	{
+		return total <= 0 ? total : Math.max(1, (total + shardCount - 1) / shardCount);
+	}
+
+	private MapBasedCacheService<T> shardFor(long high, long low)
+	{
+		return shards.get(CacheKeys.shard(high, low, shards.size()));
+	}
+
+	private MapBasedCacheService<T> shardFor(String key)
+	{
+		byte[] digest = CacheKeys.digest(key);
+		return shardFor(CacheKeys.high(digest), CacheKeys.low(digest));
+	}
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2016 dzyh
+ * All rights reserved.
+ *
+ * $$File: $$
+ * $$DateTime: $$
+ * $$Author: $$
+ * $$Revision: $$
+ */
+
+package common.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 分段计数器, 不同线程累加到不同的缓存行上, 避免多线程竞争同一个AtomicLong(类似JDK8的LongAdder). 读取时求和
+ *
+ * @author wls
+ */
+final class StripedCounter
+{
+	static final int STRIPES = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1) << 1;
+
+	/**
+	 * 每个计数占一个缓存行(8个long)
+	 */
+	private static final int PAD = 8;
+
+	/**
+	 * @return 当前线程使用的分段
+	 */
+	static int stripe()
+	{
+		long id = Thread.currentThread().getId();
+		int h = (int) (id ^ (id >>> 32)) * 0x9e3779b9;
+		return (h ^ (h >>> 16)) & (STRIPES - 1);
+	}
+
+	private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PAD);
+
+	void add(long x)
+	{
+		cells.getAndAdd(stripe() * PAD, x);
+	}
+
+	void increment()
+	{
+		add(1);
+	}
+
+	long sum()
+	{
+		long sum = 0;
+		for (int i = 0; i < STRIPES; i++) {
+			sum += cells.get(i * PAD);
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2016 dzyh
+ * All rights reserved.
+ *
+ * $$File: $$
+ * $$DateTime: $$
+ * $$Author: $$
+ * $$Revision: $$
+ */
+
+package common.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 分层时间轮, 按过期时间把条目挂到不同精度的桶上(约1秒, 1分钟, 1小时, 1.5天, 以及溢出桶).
+ * 时间推进时只处理到期的桶, 高层桶中尚未到期的条目下沉到低层桶. 添加, 删除, 重新调度都是O(1). 非线程安全, 由调用方加锁
+ *
+ * @author wls
+ */
+final class TimerWheel<T extends ICacheable>
+{
+	private static final int[] BUCKETS = { 64, 64, 32, 8, 1 };
+
+	/**
+	 * 每层一个桶覆盖的毫秒数, 都是2的幂, 最后一个是溢出桶的跨度
+	 */
+	private static final long[] SPANS = { 1L << 10, 1L << 16, 1L << 22, 1L << 27, 1L << 30, 1L << 30 };
+
+	private static final int[] SHIFT = { 10, 16, 22, 27, 30 };
+
+	private final CacheableWrapper<T>[][] wheel;
+
+	/**
+	 * 上次推进到的时间
+	 */
+	private long time;
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	TimerWheel(long time)
+	{
+		this.time = time;
+		wheel = new CacheableWrapper[BUCKETS.length][];
+		for (int i = 0; i < BUCKETS.length; i++) {
+			wheel[i] = new CacheableWrapper[BUCKETS[i]];
+			for (int j = 0; j < BUCKETS[i]; j++) {
+				CacheableWrapper<T> sentinel = new CacheableWrapper<T>(0, 0, null, MapBasedCacheService.NON_OPERATION);
+				sentinel.prevInTimer = sentinel;
+				sentinel.nextInTimer = sentinel;
+				wheel[i][j] = sentinel;
+			}
+		}
+	}
+
+	/**
+	 * 推进时间轮到now, 返回已到期的条目(已从时间轮移除). 条目的过期时间可能在加锁失败时没有及时更新,
+	 * 所以到期前会用缓存对象的{@link ICacheable#getCachedTime()}重新计算, 没到期的重新调度
+	 *
+	 * @param now
+	 * @param expireMillisecond
+	 * @return
+	 */
+	List<CacheableWrapper<T>> advance(long now, long expireMillisecond)
+	{
+		long previousTime = time;
+		time = now;
+		List<CacheableWrapper<T>> expired = new ArrayList<>();
+		for (int i = 0; i < SHIFT.length; i++) {
+			long previousTicks = previousTime >>> SHIFT[i];
+			long currentTicks = now >>> SHIFT[i];
+			if (currentTicks - previousTicks <= 0) {
+				break;
+			}
+			expire(i, previousTicks, currentTicks - previousTicks, expireMillisecond, expired);
+		}
+		return expired;
+	}
+
+	void clear()
+	{
+		for (CacheableWrapper<T>[] buckets : wheel) {
+			for (CacheableWrapper<T> sentinel : buckets) {
+				CacheableWrapper<T> node = sentinel.nextInTimer;
+				while (node != sentinel) {
+					CacheableWrapper<T> next = node.nextInTimer;
+					node.prevInTimer = null;
+					node.nextInTimer = null;
+					node = next;
+				}
+				sentinel.prevInTimer = sentinel;
+				sentinel.nextInTimer = sentinel;
+			}
+		}
+	}
+
+	void deschedule(CacheableWrapper<T> w)
+	{
+		if (w.nextInTimer != null) {
+			unlink(w);
+		}
+	}
+
+	/**
+	 * 条目还在时间轮中时按新的过期时间重新调度
+	 *
+	 * @param w
+	 */
+	void reschedule(CacheableWrapper<T> w)
+	{
+		if (w.nextInTimer != null) {
+			unlink(w);
+			link(findBucket(w.expireTime), w);
+		}
+	}
+
+	void schedule(CacheableWrapper<T> w)
+	{
+		if (w.nextInTimer != null) {
+			unlink(w);
+		}
+		link(findBucket(w.expireTime), w);
+	}
+
+	private void expire(int index, long previousTicks, long delta, long expireMillisecond,
+			List<CacheableWrapper<T>> expired)
+	{
+		CacheableWrapper<T>[] buckets = wheel[index];
+		int mask = buckets.length - 1;
+		int steps = (int) Math.min(1 + delta, buckets.length);
+		int start = (int) (previousTicks & mask);
+		int end = start + steps;
+		for (int i = start; i < end; i++) {
+			CacheableWrapper<T> sentinel = buckets[i & mask];
+			CacheableWrapper<T> node = sentinel.nextInTimer;
+			sentinel.prevInTimer = sentinel;
+			sentinel.nextInTimer = sentinel;
+			while (node != sentinel) {
+				CacheableWrapper<T> next = node.nextInTimer;
+				node.prevInTimer = null;
+				node.nextInTimer = null;
+				node.expireTime = node.target.getCachedTime() + expireMillisecond;
+				if (node.expireTime <= time) {
+					expired.add(node);
+				}
+				else {
+					link(findBucket(node.expireTime), node);
+				}
+				node = next;
+			}
+		}
+	}
+
+	/**
+	 * 已经过期的条目放到当前时间所在的桶, 下次推进时处理. 按过期时间计算会落到已经走过的桶上, 要等时间轮转一整圈
+	 *
+	 * @param expireTime
+	 * @return
+	 */
+	private CacheableWrapper<T> findBucket(long expireTime)
+	{
+		long duration = expireTime - time;
+		if (duration <= 0) {
+			return wheel[0][(int) ((time >>> SHIFT[0]) & (wheel[0].length - 1))];
+		}
+		int length = wheel.length - 1;
+		for (int i = 0; i < length; i++) {
+			if (duration < SPANS[i + 1]) {
+				long ticks = expireTime >>> SHIFT[i];
+				return wheel[i][(int) (ticks & (wheel[i].length - 1))];
+			}
+		}
+		return wheel[length][0];
+	}
+
+	private void link(CacheableWrapper<T> sentinel, CacheableWrapper<T> w)
+	{
+		w.prevInTimer = sentinel.prevInTimer;
+		w.nextInTimer = sentinel;
+		sentinel.prevInTimer.nextInTimer = w;
+		sentinel.prevInTimer = w;
+	}
+
+	private void unlink(CacheableWrapper<T> w)
+	{
+		w.nextInTimer.prevInTimer = w.prevInTimer;
+		w.prevInTimer.nextInTimer = w.nextInTimer;
+		w.prevInTimer = null;
+		w.nextInTimer = null;
+	}
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2016 dzyh
+ * All rights reserved.
+ *
+ * $$File: $$
+ * $$DateTime: $$
+ * $$Author: $$
+ * $$Revision: $$
+ */
+
+package common.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * W-TinyLFU淘汰策略:
+ * <p>
+ * 新条目先进入容量为1%的窗口LRU, 被挤出窗口后进入主区的试用(probation)队列, 在试用队列中再次被访问则晋升到保护(protected)队列.
+ * 主区满时, 刚从窗口出来的候选条目与试用队列最久未访问的条目比较{@link FrequencySketch}中的频率, 频率低者被淘汰,
+ * 这样一次性的扫描流量不会把热点数据挤出缓存.
+ * <p>
+ * 容量可以按条目数和/或按权重限制. 非线程安全, 由调用方加锁
+ *
+ * @author wls
+ */
+final class TinyLfuPolicy<T extends ICacheable>
+{
+	private static final double WINDOW_PERCENT = 0.01d;
+
+	private static final double PROTECTED_PERCENT = 0.80d * (1 - WINDOW_PERCENT);
+
+	private static final int DEFAULT_SKETCH_CAPACITY = 1024;
+
+	private final long maximumSize;
+
+	private final long maximumWeight;
+
+	private final FrequencySketch sketch;
+
+	private long sketchCapacity;
+
+	private final AccessOrderDeque<T> window = new AccessOrderDeque<>();
+
+	private final AccessOrderDeque<T> probation = new AccessOrderDeque<>();
+
+	private final AccessOrderDeque<T> protectedDeque = new AccessOrderDeque<>();
+
+	private long size, weightedSize;
+
+	private long windowSize, windowWeight;
+
+	private long protectedSize, protectedWeight;
+
+	/**
+	 * @param maximumSize
+	 *            最大条目数, <=0表示不限制
+	 * @param maximumWeight
+	 *            最大总权重, <=0表示不限制
+	 */
+	TinyLfuPolicy(long maximumSize, long maximumWeight)
+	{
+		this.maximumSize = maximumSize;
+		this.maximumWeight = maximumWeight;
+		this.sketchCapacity = maximumSize > 0 ? maximumSize : DEFAULT_SKETCH_CAPACITY;
+		this.sketch = new FrequencySketch(sketchCapacity);
+	}
+
+	void clear()
+	{
+		window.clear();
+		probation.clear();
+		protectedDeque.clear();
+		size = weightedSize = 0;
+		windowSize = windowWeight = 0;
+		protectedSize = protectedWeight = 0;
+	}
+
+	/**
+	 * 淘汰超出容量的条目, 被淘汰的条目已经从策略中移除, 由调用方负责从缓存中删除
+	 *
+	 * @return 被淘汰的条目
+	 */
+	List<CacheableWrapper<T>> evict()
+	{
+		CacheableWrapper<T> candidate = null;
+		while (windowSize > 0 && exceeds(windowSize, windowWeight, WINDOW_PERCENT)) {
+			CacheableWrapper<T> w = window.pollFirst();
+			windowSize--;
+			windowWeight -= w.weight;
+			w.queueType = CacheableWrapper.PROBATION;
+			probation.addLast(w);
+			if (candidate == null) {
+				candidate = w;
+			}
+		}
+
+		if (!exceedsMaximum()) {
+			return Collections.emptyList();
+		}
+
+		List<CacheableWrapper<T>> victims = new ArrayList<>();
+		while (exceedsMaximum()) {
+			CacheableWrapper<T> victim = probation.peekFirst();
+			if (victim == null) {
+				victim = protectedDeque.isEmpty() ? window.peekFirst() : protectedDeque.peekFirst();
+				if (victim == null) {
+					break;
+				}
+				evictTo(victims, victim);
+			}
+			else if (candidate == null) {
+				evictTo(victims, victim);
+			}
+			else if (candidate == victim) {
+				candidate = candidate.nextInAccessOrder;
+				evictTo(victims, victim);
+			}
+			else if (sketch.frequency(candidate.hash()) > sketch.frequency(victim.hash())) {
+				evictTo(victims, victim);
+			}
+			else {
+				CacheableWrapper<T> next = candidate.nextInAccessOrder;
+				evictTo(victims, candidate);
+				candidate = next;
+			}
+		}
+		return victims;
+	}
+
+	void onAccess(CacheableWrapper<T> w)
+	{
+		sketch.increment(w.hash());
+		switch (w.queueType) {
+			case CacheableWrapper.WINDOW:
+				window.moveToBack(w);
+				break;
+			case CacheableWrapper.PROBATION:
+				probation.remove(w);
+				w.queueType = CacheableWrapper.PROTECTED;
+				protectedDeque.addLast(w);
+				protectedSize++;
+				protectedWeight += w.weight;
+				demoteFromProtected();
+				break;
+			case CacheableWrapper.PROTECTED:
+				protectedDeque.moveToBack(w);
+				break;
+			default:
+				break;
+		}
+	}
+
+	void onAdd(CacheableWrapper<T> w)
+	{
+		sketch.increment(w.hash());
+		w.queueType = CacheableWrapper.WINDOW;
+		window.addLast(w);
+		windowSize++;
+		windowWeight += w.weight;
+		size++;
+		weightedSize += w.weight;
+
+		if (size > sketchCapacity) {
+			//只按权重限制时条目数不确定, 随条目数增长扩大sketch
+			sketchCapacity = size << 1;
+			sketch.ensureCapacity(sketchCapacity);
+		}
+	}
+
+	void onRemove(CacheableWrapper<T> w)
+	{
+		switch (w.queueType) {
+			case CacheableWrapper.WINDOW:
+				window.remove(w);
+				windowSize--;
+				windowWeight -= w.weight;
+				break;
+			case CacheableWrapper.PROBATION:
+				probation.remove(w);
+				break;
+			case CacheableWrapper.PROTECTED:
+				protectedDeque.remove(w);
+				protectedSize--;
+				protectedWeight -= w.weight;
+				break;
+			default:
+				return;
+		}
+		size--;
+		weightedSize -= w.weight;
+		w.queueType = CacheableWrapper.NOT_IN_POLICY;
+	}
+
+	long size()
+	{
+		return size;
+	}
+
+	long weightedSize()
+	{
+		return weightedSize;
+	}
+
+	private void demoteFromProtected()
+	{
+		while (protectedSize > 0 && exceeds(protectedSize, protectedWeight, PROTECTED_PERCENT)) {
+			CacheableWrapper<T> w = protectedDeque.pollFirst();
+			protectedSize--;
+			protectedWeight -= w.weight;
+			w.queueType = CacheableWrapper.PROBATION;
+			probation.addLast(w);
+		}
+	}
+
+	private boolean exceeds(long count, long weight, double fraction)
+	{
+		return (maximumSize > 0 && count > Math.max(1, (long) (maximumSize * fraction)))
+				|| (maximumWeight > 0 && weight > Math.max(1, (long) (maximumWeight * fraction)));
+	}
+
+	private boolean exceedsMaximum()
+	{
+		return (maximumSize > 0 && size > maximumSize) || (maximumWeight > 0 && weightedSize > maximumWeight);
+	}
+
+	private void evictTo(List<CacheableWrapper<T>> victims, CacheableWrapper<T> w)
+	{
+		onRemove(w);
+		victims.add(w);
+	}
+}
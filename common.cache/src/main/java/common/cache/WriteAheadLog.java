@@ -0,0 +1,325 @@
+/*
+ * Copyright (C) 2016 dzyh
+ * All rights reserved.
+ *
+ * $$File: $$
+ * $$DateTime: $$
+ * $$Author: $$
+ * $$Revision: $$
+ */
+
+package common.cache;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * 写后缓存的预写日志. 修改先追加到本地日志并刷盘, 再由定时任务批量写入数据库, 进程崩溃后启动时重放日志.
+ * <p>
+ * 多个线程的追加先进入内存缓冲区, 由其中一个线程统一写入文件并{@link FileChannel#force(boolean)}, 其他线程等待这次刷盘(组提交).
+ * 日志按段存放, 每次写入数据库前切换到新段, 写入完成后删除旧段. 每条记录是[int 长度][int CRC32][long key高位][long key低位][byte 操作][对象],
+ * 操作为0表示删除. 重放时遇到不完整或校验失败的记录就停止读取这个段
+ *
+ * @author wls
+ */
+final class WriteAheadLog<T extends ICacheable>
+{
+	static final int DELETE_OPERATION = 0;
+
+	private static final String SUFFIX = ".wal";
+
+	/**
+	 * [long key高位][long key低位][byte 操作]
+	 */
+	private static final int RECORD_HEADER_SIZE = 17;
+
+	private final File dir;
+
+	private final CacheableSerializer<T> serializer;
+
+	/**
+	 * 保护{@link #buffer}, {@link #appended}和当前段
+	 */
+	private final Object appendLock = new Object();
+
+	/**
+	 * 同时只有一个线程写文件和刷盘
+	 */
+	private final Object syncLock = new Object();
+
+	private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(1 << 16);
+
+	/**
+	 * 已经追加的字节数, 作为记录的位置
+	 */
+	private long appended;
+
+	/**
+	 * 已经刷盘的位置
+	 */
+	private volatile long synced;
+
+	private long segmentId;
+
+	private FileChannel channel;
+
+	WriteAheadLog(File dir, CacheableSerializer<T> serializer)
+	{
+		this.dir = dir;
+		this.serializer = serializer;
+	}
+
+	/**
+	 * 追加一条记录, 返回后还没有刷盘, 需要再调用{@link #sync(long)}
+	 *
+	 * @param w
+	 * @param operation
+	 * @return 记录的位置
+	 * @throws IOException
+	 */
+	long append(CacheableWrapper<T> w, int operation) throws IOException
+	{
+		byte[] value = operation == DELETE_OPERATION || w.target == null ? new byte[0] : serializer.serialize(w.target);
+		ByteBuffer payload = ByteBuffer.allocate(RECORD_HEADER_SIZE + value.length);
+		payload.putLong(w.keyHigh).putLong(w.keyLow).put((byte) operation).put(value);
+		CRC32 crc = new CRC32();
+		crc.update(payload.array());
+		ByteBuffer record = ByteBuffer.allocate(8 + payload.capacity());
+		record.putInt(payload.capacity()).putInt((int) crc.getValue()).put(payload.array());
+		synchronized (appendLock) {
+			if (channel == null) {
+				throw new IOException("Write ahead log " + dir + " is closed");
+			}
+			buffer.write(record.array());
+			appended += record.capacity();
+			return appended;
+		}
+	}
+
+	void close() throws IOException
+	{
+		synchronized (syncLock) {
+			synchronized (appendLock) {
+				if (channel != null) {
+					writeBuffer(channel);
+					channel.close();
+					channel = null;
+				}
+			}
+		}
+	}
+
+	/**
+	 * 删除已经写入数据库的段
+	 *
+	 * @param segments
+	 *            {@link #rotate()}的返回值
+	 */
+	void delete(List<File> segments)
+	{
+		for (File file : segments) {
+			if (!file.delete() && file.exists()) {
+				throw new IllegalStateException("Can not delete write ahead log segment " + file);
+			}
+		}
+	}
+
+	/**
+	 * 创建新的段开始记录, 原有的段保留到下一次{@link #rotate()}之后删除
+	 *
+	 * @throws IOException
+	 */
+	void open() throws IOException
+	{
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Can not create directory " + dir);
+		}
+		File[] files = segments();
+		if (files.length > 0) {
+			segmentId = segmentId(files[files.length - 1]);
+		}
+		synchronized (appendLock) {
+			openSegment();
+		}
+	}
+
+	/**
+	 * 按顺序重放所有的段, 在{@link #open()}之前调用
+	 *
+	 * @param visitor
+	 *            删除记录的对象为null, 操作为{@link #DELETE_OPERATION}
+	 * @return 重放的记录数
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	int replay(CacheSnapshot.Visitor<T> visitor) throws IOException, ClassNotFoundException
+	{
+		int count = 0;
+		for (File file : segments()) {
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+				for (;;) {
+					byte[] payload;
+					int checksum;
+					try {
+						int length = in.readInt();
+						checksum = in.readInt();
+						if (length < RECORD_HEADER_SIZE || length > file.length()) {
+							break;
+						}
+						payload = new byte[length];
+						in.readFully(payload);
+					}
+					catch (EOFException e) {
+						break;
+					}
+					CRC32 crc = new CRC32();
+					crc.update(payload);
+					if ((int) crc.getValue() != checksum) {
+						break;
+					}
+					ByteBuffer record = ByteBuffer.wrap(payload);
+					long keyHigh = record.getLong();
+					long keyLow = record.getLong();
+					int operation = record.get();
+					T target = null;
+					if (operation != DELETE_OPERATION) {
+						target = serializer.deserialize(Arrays.copyOfRange(payload, RECORD_HEADER_SIZE, payload.length));
+					}
+					visitor.visit(keyHigh, keyLow, target, operation);
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * 把缓冲区写入当前段并切换到新段, 在开始写入数据库之前调用. 新段创建失败时继续使用当前段
+	 *
+	 * @return 切换之前的所有段, 其中的记录写入数据库之后可以删除
+	 * @throws IOException
+	 */
+	List<File> rotate() throws IOException
+	{
+		synchronized (syncLock) {
+			synchronized (appendLock) {
+				if (channel == null) {
+					throw new IOException("Write ahead log " + dir + " is closed");
+				}
+				writeBuffer(channel);
+				FileChannel old = channel;
+				openSegment();
+				old.close();
+			}
+		}
+		List<File> list = new ArrayList<>();
+		for (File file : segments()) {
+			if (segmentId(file) < segmentId) {
+				list.add(file);
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * 等待position之前的记录刷盘. 已经有线程在刷盘时等它完成, 再由一个线程把这期间追加的记录一起刷盘
+	 *
+	 * @param position
+	 *            {@link #append(CacheableWrapper, int)}的返回值
+	 * @throws IOException
+	 */
+	void sync(long position) throws IOException
+	{
+		if (synced >= position) {
+			return;
+		}
+		synchronized (syncLock) {
+			if (synced >= position) {
+				return;
+			}
+			byte[] bytes;
+			FileChannel ch;
+			long upTo;
+			synchronized (appendLock) {
+				bytes = buffer.toByteArray();
+				buffer.reset();
+				ch = channel;
+				upTo = appended;
+			}
+			if (ch == null) {
+				throw new IOException("Write ahead log " + dir + " is closed");
+			}
+			write(ch, bytes);
+			ch.force(false);
+			synced = upTo;
+		}
+	}
+
+	/**
+	 * 创建成功后才切换{@link #channel}和{@link #segmentId}, 调用方持有{@link #appendLock}
+	 */
+	private void openSegment() throws IOException
+	{
+		File file = new File(dir, String.format("%016x", segmentId + 1) + SUFFIX);
+		channel = new FileOutputStream(file, true).getChannel();
+		segmentId++;
+	}
+
+	private long segmentId(File file)
+	{
+		String name = file.getName();
+		return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()), 16);
+	}
+
+	/**
+	 * @return 按编号排序的所有段
+	 */
+	private File[] segments()
+	{
+		File[] files = dir.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File d, String name)
+			{
+				return name.endsWith(SUFFIX) && name.length() == 16 + SUFFIX.length();
+			}
+		});
+		if (files == null) {
+			return new File[0];
+		}
+		//编号是定长十六进制, 按文件名排序即按编号排序
+		Arrays.sort(files);
+		return files;
+	}
+
+	private void write(FileChannel ch, byte[] bytes) throws IOException
+	{
+		ByteBuffer buf = ByteBuffer.wrap(bytes);
+		while (buf.hasRemaining()) {
+			ch.write(buf);
+		}
+	}
+
+	/**
+	 * 调用方持有两个锁
+	 */
+	private void writeBuffer(FileChannel ch) throws IOException
+	{
+		write(ch, buffer.toByteArray());
+		buffer.reset();
+		ch.force(false);
+		synced = appended;
+	}
+}
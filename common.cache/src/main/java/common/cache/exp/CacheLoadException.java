@@ -0,0 +1,23 @@
+package common.cache.exp;
+
+/**
+ * 从数据库加载缓存对象失败或者等待加载超时
+ *
+ * @author wls
+ */
+public class CacheLoadException extends RuntimeException
+{
+
+	private static final long serialVersionUID = 1L;
+
+	public CacheLoadException(String message)
+	{
+		super(message);
+	}
+
+	public CacheLoadException(String message, Throwable cause)
+	{
+		super(message, cause);
+	}
+
+}
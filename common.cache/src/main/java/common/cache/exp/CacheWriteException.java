@@ -0,0 +1,23 @@
+package common.cache.exp;
+
+/**
+ * 写入预写日志失败, 修改已经放入缓存但崩溃后可能丢失
+ *
+ * @author wls
+ */
+public class CacheWriteException extends RuntimeException
+{
+
+	private static final long serialVersionUID = 1L;
+
+	public CacheWriteException(String message)
+	{
+		super(message);
+	}
+
+	public CacheWriteException(String message, Throwable cause)
+	{
+		super(message, cause);
+	}
+
+}
@@ -0,0 +1,502 @@
+/*
+ * Copyright (C) 2016 dzyh
+ * All rights reserved.
+ *
+ * $$File: $$
+ * $$DateTime: $$
+ * $$Author: $$
+ * $$Revision: $$
+ */
+
+package common.cache.offheap;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 堆外存储, 数据保存在直接内存(direct ByteBuffer)的slab中, 堆上只保留128位key到地址的索引(开放寻址, 每个条目24字节).
+ * <p>
+ * 每个slab固定大小, 第一次使用时分配给一个块大小级别(按1.25倍递增), 切成等长的块放入该级别的空闲链表. 容量用完后在同一级别内按CLOCK算法淘汰.
+ * 块的格式: [int 值长度, -1表示空闲][byte 访问标记][long key高位][long key低位][值]
+ *
+ * @author wls
+ */
+public class OffHeapStore
+{
+	/**
+	 * 基于long数组的栈, 避免装箱
+	 */
+	private static final class LongStack
+	{
+		private long[] elements = new long[16];
+
+		private int size;
+
+		boolean isEmpty()
+		{
+			return size == 0;
+		}
+
+		long pop()
+		{
+			return elements[--size];
+		}
+
+		void push(long e)
+		{
+			if (size == elements.length) {
+				long[] grown = new long[size << 1];
+				System.arraycopy(elements, 0, grown, 0, size);
+				elements = grown;
+			}
+			elements[size++] = e;
+		}
+	}
+
+	public static final int DEFAULT_SLAB_SIZE = 1 << 20;
+
+	private static final int MIN_BLOCK_SIZE = 64;
+
+	private static final double GROWTH_FACTOR = 1.25d;
+
+	private static final int HEADER_SIZE = 21;
+
+	private static final int FREE = -1;
+
+	private static final int INITIAL_INDEX_CAPACITY = 1024;
+
+	private final long capacity;
+
+	private final int slabSize;
+
+	private final int maxSlabs;
+
+	private final int[] blockSizes;
+
+	private final List<ByteBuffer> slabs = new ArrayList<>();
+
+	/**
+	 * 每个slab所属的块大小级别
+	 */
+	private final List<Integer> slabClasses = new ArrayList<>();
+
+	/**
+	 * 每个级别拥有的slab
+	 */
+	private final List<List<Integer>> classSlabs = new ArrayList<>();
+
+	private final LongStack[] freeLists;
+
+	private final long[] clockHands;
+
+	//索引: key和地址, 地址高32位是slab序号, 低32位是块在slab中的偏移, -1表示空槽
+	private long[] indexHighs;
+
+	private long[] indexLows;
+
+	private long[] indexAddresses;
+
+	private int indexSize;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private long usedBytes;
+
+	private long evictionCount;
+
+	/**
+	 * @param capacity
+	 *            最多使用的直接内存字节数
+	 */
+	public OffHeapStore(long capacity)
+	{
+		this(capacity, DEFAULT_SLAB_SIZE);
+	}
+
+	/**
+	 * @param capacity
+	 *            最多使用的直接内存字节数
+	 * @param slabSize
+	 *            每个slab的字节数, 也是能保存的最大条目
+	 */
+	public OffHeapStore(long capacity, int slabSize)
+	{
+		if (slabSize < MIN_BLOCK_SIZE || capacity < slabSize) {
+			throw new IllegalArgumentException("capacity: " + capacity + ", slabSize: " + slabSize);
+		}
+		this.capacity = capacity;
+		this.slabSize = slabSize;
+		this.maxSlabs = (int) Math.min(capacity / slabSize, Integer.MAX_VALUE);
+
+		List<Integer> sizes = new ArrayList<>();
+		int size = MIN_BLOCK_SIZE;
+		while (size < slabSize) {
+			sizes.add(size);
+			size = Math.max(size + 8, ((int) (size * GROWTH_FACTOR) + 7) & ~7);
+		}
+		sizes.add(slabSize);
+		blockSizes = new int[sizes.size()];
+		freeLists = new LongStack[sizes.size()];
+		clockHands = new long[sizes.size()];
+		for (int i = 0; i < blockSizes.length; i++) {
+			blockSizes[i] = sizes.get(i);
+			freeLists[i] = new LongStack();
+			classSlabs.add(new ArrayList<Integer>());
+		}
+		clearIndex(INITIAL_INDEX_CAPACITY);
+	}
+
+	/**
+	 * 清空所有条目并释放slab
+	 */
+	public void clear()
+	{
+		lock.writeLock().lock();
+		try {
+			clearIndex(INITIAL_INDEX_CAPACITY);
+			slabs.clear();
+			slabClasses.clear();
+			for (int i = 0; i < blockSizes.length; i++) {
+				classSlabs.get(i).clear();
+				freeLists[i] = new LongStack();
+				clockHands[i] = 0;
+			}
+			usedBytes = 0;
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public byte[] get(long keyHigh, long keyLow)
+	{
+		lock.readLock().lock();
+		try {
+			long address = indexGet(keyHigh, keyLow);
+			if (address < 0) {
+				return null;
+			}
+			ByteBuffer slab = slabs.get(slabIndex(address));
+			int offset = offset(address);
+			slab.put(offset + 4, (byte) 1);
+			return readValue(slab, offset);
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return 已经分配的直接内存字节数
+	 */
+	public long getAllocatedBytes()
+	{
+		lock.readLock().lock();
+		try {
+			return (long) slabs.size() * slabSize;
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public long getCapacity()
+	{
+		return capacity;
+	}
+
+	public long getEvictionCount()
+	{
+		lock.readLock().lock();
+		try {
+			return evictionCount;
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return 已经被条目占用的块的字节数
+	 */
+	public long getUsedBytes()
+	{
+		lock.readLock().lock();
+		try {
+			return usedBytes;
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * 保存条目, 已经存在的key会被覆盖
+	 *
+	 * @param keyHigh
+	 * @param keyLow
+	 * @param value
+	 * @return false表示条目太大或者没有可用的块
+	 */
+	public boolean put(long keyHigh, long keyLow, byte[] value)
+	{
+		int cls = sizeClassOf(HEADER_SIZE + value.length);
+		if (cls < 0) {
+			return false;
+		}
+
+		lock.writeLock().lock();
+		try {
+			long old = indexRemove(keyHigh, keyLow);
+			if (old >= 0) {
+				free(old);
+			}
+			long address = allocate(cls);
+			if (address < 0) {
+				return false;
+			}
+			ByteBuffer block = slabs.get(slabIndex(address)).duplicate();
+			block.position(offset(address));
+			block.putInt(value.length);
+			block.put((byte) 0);
+			block.putLong(keyHigh);
+			block.putLong(keyLow);
+			block.put(value);
+			indexPut(keyHigh, keyLow, address);
+			usedBytes += blockSizes[cls];
+			return true;
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * 删除条目
+	 *
+	 * @param keyHigh
+	 * @param keyLow
+	 * @return 删除的值, 不存在返回null
+	 */
+	public byte[] remove(long keyHigh, long keyLow)
+	{
+		lock.writeLock().lock();
+		try {
+			long address = indexRemove(keyHigh, keyLow);
+			if (address < 0) {
+				return null;
+			}
+			byte[] value = readValue(slabs.get(slabIndex(address)), offset(address));
+			free(address);
+			return value;
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public int size()
+	{
+		lock.readLock().lock();
+		try {
+			return indexSize;
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private void addSlab(int cls)
+	{
+		int slabIndex = slabs.size();
+		slabs.add(ByteBuffer.allocateDirect(slabSize));
+		slabClasses.add(cls);
+		classSlabs.get(cls).add(slabIndex);
+		int blockSize = blockSizes[cls];
+		ByteBuffer slab = slabs.get(slabIndex);
+		//倒序放入, 使得先分配低地址的块
+		for (int offset = (slabSize / blockSize - 1) * blockSize; offset >= 0; offset -= blockSize) {
+			slab.putInt(offset, FREE);
+			freeLists[cls].push(address(slabIndex, offset));
+		}
+	}
+
+	private long address(int slabIndex, int offset)
+	{
+		return ((long) slabIndex << 32) | (offset & 0xffffffffL);
+	}
+
+	private long allocate(int cls)
+	{
+		LongStack free = freeLists[cls];
+		if (free.isEmpty() && slabs.size() < maxSlabs) {
+			addSlab(cls);
+		}
+		if (free.isEmpty()) {
+			evict(cls);
+		}
+		return free.isEmpty() ? -1 : free.pop();
+	}
+
+	private void clearIndex(int capacity)
+	{
+		indexHighs = new long[capacity];
+		indexLows = new long[capacity];
+		indexAddresses = new long[capacity];
+		Arrays.fill(indexAddresses, -1);
+		indexSize = 0;
+	}
+
+	/**
+	 * CLOCK淘汰: 转动该级别的指针, 跳过最近被访问过的块(清除其访问标记), 淘汰第一个未被访问的块
+	 *
+	 * @param cls
+	 */
+	private void evict(int cls)
+	{
+		List<Integer> owned = classSlabs.get(cls);
+		if (owned.isEmpty()) {
+			return;
+		}
+		int blockSize = blockSizes[cls];
+		int blocksPerSlab = slabSize / blockSize;
+		long total = (long) owned.size() * blocksPerSlab;
+		for (long scanned = 0; scanned < 2 * total; scanned++) {
+			long hand = clockHands[cls]++ % total;
+			int slabIndex = owned.get((int) (hand / blocksPerSlab));
+			int offset = (int) (hand % blocksPerSlab) * blockSize;
+			ByteBuffer slab = slabs.get(slabIndex);
+			if (slab.getInt(offset) == FREE) {
+				continue;
+			}
+			if (slab.get(offset + 4) != 0) {
+				slab.put(offset + 4, (byte) 0);
+				continue;
+			}
+			indexRemove(slab.getLong(offset + 5), slab.getLong(offset + 13));
+			free(address(slabIndex, offset));
+			evictionCount++;
+			return;
+		}
+	}
+
+	private void free(long address)
+	{
+		int slabIndex = slabIndex(address);
+		int cls = slabClasses.get(slabIndex);
+		slabs.get(slabIndex).putInt(offset(address), FREE);
+		freeLists[cls].push(address);
+		usedBytes -= blockSizes[cls];
+	}
+
+	private int indexHome(long keyHigh, long keyLow, int mask)
+	{
+		long h = (keyHigh ^ (keyLow * 0x9e3779b97f4a7c15L)) * 0xbf58476d1ce4e5b9L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+
+	private long indexGet(long keyHigh, long keyLow)
+	{
+		int slot = indexSlot(keyHigh, keyLow);
+		return slot < 0 ? -1 : indexAddresses[slot];
+	}
+
+	private void indexPut(long keyHigh, long keyLow, long address)
+	{
+		if ((indexSize + 1) * 3 > indexAddresses.length * 2) {
+			long[] highs = indexHighs;
+			long[] lows = indexLows;
+			long[] addresses = indexAddresses;
+			clearIndex(addresses.length << 1);
+			for (int i = 0; i < addresses.length; i++) {
+				if (addresses[i] >= 0) {
+					indexPut(highs[i], lows[i], addresses[i]);
+				}
+			}
+		}
+		int mask = indexAddresses.length - 1;
+		int i = indexHome(keyHigh, keyLow, mask);
+		while (indexAddresses[i] >= 0) {
+			i = (i + 1) & mask;
+		}
+		indexHighs[i] = keyHigh;
+		indexLows[i] = keyLow;
+		indexAddresses[i] = address;
+		indexSize++;
+	}
+
+	/**
+	 * 删除后把同一探测链后面的条目前移填补空位
+	 *
+	 * @return 删除的地址, 不存在返回-1
+	 */
+	private long indexRemove(long keyHigh, long keyLow)
+	{
+		int slot = indexSlot(keyHigh, keyLow);
+		if (slot < 0) {
+			return -1;
+		}
+		long address = indexAddresses[slot];
+		int mask = indexAddresses.length - 1;
+		int hole = slot;
+		for (int j = (slot + 1) & mask; indexAddresses[j] >= 0; j = (j + 1) & mask) {
+			int home = indexHome(indexHighs[j], indexLows[j], mask);
+			if (((j - home) & mask) >= ((j - hole) & mask)) {
+				indexHighs[hole] = indexHighs[j];
+				indexLows[hole] = indexLows[j];
+				indexAddresses[hole] = indexAddresses[j];
+				hole = j;
+			}
+		}
+		indexAddresses[hole] = -1;
+		indexSize--;
+		return address;
+	}
+
+	private int indexSlot(long keyHigh, long keyLow)
+	{
+		int mask = indexAddresses.length - 1;
+		for (int i = indexHome(keyHigh, keyLow, mask);; i = (i + 1) & mask) {
+			if (indexAddresses[i] < 0) {
+				return -1;
+			}
+			if (indexHighs[i] == keyHigh && indexLows[i] == keyLow) {
+				return i;
+			}
+		}
+	}
+
+	private int offset(long address)
+	{
+		return (int) address;
+	}
+
+	private byte[] readValue(ByteBuffer slab, int offset)
+	{
+		ByteBuffer block = slab.duplicate();
+		block.position(offset);
+		byte[] value = new byte[block.getInt()];
+		block.position(offset + HEADER_SIZE);
+		block.get(value);
+		return value;
+	}
+
+	private int sizeClassOf(int length)
+	{
+		for (int i = 0; i < blockSizes.length; i++) {
+			if (length <= blockSizes[i]) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private int slabIndex(long address)
+	{
+		return (int) (address >>> 32);
+	}
+}
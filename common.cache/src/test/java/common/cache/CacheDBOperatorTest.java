@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2016 dzyh
+ * All rights reserved.
+ *
+ * $$File: $$
+ * $$DateTime: $$
+ * $$Author: $$
+ * $$Revision: $$
+ */
+
+package common.cache;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author wls
+ */
+public class CacheDBOperatorTest
+{
+	private TestCacheDBOperator dbOperator;
+
+	@Before
+	public void setUp()
+	{
+		dbOperator = new TestCacheDBOperator();
+	}
+
+	@After
+	public void tearDown()
+	{
+		dbOperator.shutdown();
+	}
+
+	/**
+	 * 写入后补id的查询在主库上执行, 从库延迟时也能取到id
+	 */
+	@Test
+	public void testCreateFillsIdsFromPrimary()
+	{
+		dbOperator.useEmptyReplica();
+		TestEntity a = entity("a");
+		dbOperator.createCacheable(a);
+		assertTrue(a.getId() > 0);
+
+		TestEntity b = entity("b");
+		TestEntity c = entity("c");
+		dbOperator.createCacheables(Arrays.asList(b, c));
+		assertTrue(b.getId() > 0);
+		assertTrue(c.getId() > 0);
+	}
+
+	private TestEntity entity(String name)
+	{
+		TestEntity t = new TestEntity(name, "v");
+		t.setCacheKey("key-" + name);
+		t.setCachedTime(System.currentTimeMillis());
+		return t;
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2016 dzyh
+ * All rights reserved.
+ *
+ * $$File: $$
+ * $$DateTime: $$
+ * $$Author: $$
+ * $$Revision: $$
+ */
+
+package common.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * @author wls
+ */
+public class CacheKeysTest
+{
+	/**
+	 * 自定义key用UTF-8编码计算MD5, 和平台默认编码无关
+	 */
+	@Test
+	public void testCustomKey() throws Exception
+	{
+		String key = "用户:42";
+		assertArrayEquals(utf8Md5(key), CacheKeys.digest(key));
+	}
+
+	/**
+	 * 默认格式的key直接解析, 可以转换回原来的字符串
+	 */
+	@Test
+	public void testHexKey()
+	{
+		byte[] digest = CacheKeys.md5("gene");
+		String key = CacheKeys.toHex(digest);
+		assertArrayEquals(digest, CacheKeys.digest(key));
+		assertEquals(key, CacheKeys.toHex(CacheKeys.high(digest), CacheKeys.low(digest)));
+	}
+
+	/**
+	 * 小写的十六进制按自定义key处理, 和大写的key不会落到同一个位置
+	 */
+	@Test
+	public void testLowerCaseHexKey() throws Exception
+	{
+		String upper = CacheKeys.toHex(CacheKeys.md5("gene"));
+		String lower = upper.toLowerCase();
+		assertFalse(Arrays.equals(CacheKeys.digest(upper), CacheKeys.digest(lower)));
+		assertArrayEquals(utf8Md5(lower), CacheKeys.digest(lower));
+	}
+
+	private byte[] utf8Md5(String key) throws Exception
+	{
+		return MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+	}
+}
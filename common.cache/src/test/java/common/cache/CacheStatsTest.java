@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2016 dzyh
+ * All rights reserved.
+ *
+ * $$File: $$
+ * $$DateTime: $$
+ * $$Author: $$
+ * $$Revision: $$
+ */
+
+package common.cache;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+/**
+ * @author wls
+ */
+public class CacheStatsTest
+{
+	/**
+	 * 名字中有ObjectName的特殊字符时也能注册
+	 */
+	@Test
+	public void testRegisterQuotedName() throws Exception
+	{
+		String name = "user,shard=1:\"a\"";
+		ObjectName on = new ObjectName("common.cache:type=Test,name=" + ObjectName.quote(name));
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		CacheStats stats = new CacheStats();
+		stats.register("Test", name);
+		try {
+			assertTrue(server.isRegistered(on));
+		}
+		finally {
+			stats.unregister();
+		}
+		assertFalse(server.isRegistered(on));
+	}
+}
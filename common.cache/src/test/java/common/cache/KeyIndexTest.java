@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2016 dzyh
+ * All rights reserved.
+ *
+ * $$File: $$
+ * $$DateTime: $$
+ * $$Author: $$
+ * $$Revision: $$
+ */
+
+package common.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * @author wls
+ */
+public class KeyIndexTest
+{
+	/**
+	 * 段的初始容量
+	 */
+	private static final int CAPACITY = 16;
+
+	private final KeyIndex<ICacheable> index = new KeyIndex<>();
+
+	/**
+	 * 删除探测链中间和开头的条目后, 后面的条目(包括回绕到表头的和home在链中的)仍然能找到
+	 */
+	@Test
+	public void testRemoveBackwardShift()
+	{
+		List<CacheableWrapper<ICacheable>> entries = new ArrayList<>();
+		//home为14的链回绕到0, 之后是home为15, 0, 3, 2的条目
+		int[] homes = { 14, 14, 14, 15, 0, 3, 2 };
+		for (int i = 0; i < homes.length; i++) {
+			CacheableWrapper<ICacheable> w = entry(homes[i], i);
+			entries.add(w);
+			assertNull(index.put(w));
+		}
+
+		assertSame(entries.get(1), index.remove(entries.get(1).keyHigh, entries.get(1).keyLow));
+		assertSame(entries.get(0), index.remove(entries.get(0).keyHigh, entries.get(0).keyLow));
+		assertNull(index.get(entries.get(0).keyHigh, entries.get(0).keyLow));
+		assertNull(index.get(entries.get(1).keyHigh, entries.get(1).keyLow));
+		for (CacheableWrapper<ICacheable> w : entries.subList(2, entries.size())) {
+			assertSame(w, index.get(w.keyHigh, w.keyLow));
+		}
+		assertEquals(homes.length - 2, index.size());
+
+		//key相同但不是同一个条目时不删除
+		CacheableWrapper<ICacheable> last = entries.get(entries.size() - 1);
+		assertFalse(index.remove(new CacheableWrapper<ICacheable>(last.keyHigh, last.keyLow, null,
+				MapBasedCacheService.NON_OPERATION)));
+		assertTrue(index.remove(last));
+		for (CacheableWrapper<ICacheable> w : entries.subList(2, entries.size() - 1)) {
+			assertSame(w, index.get(w.keyHigh, w.keyLow));
+		}
+		assertEquals(homes.length - 3, index.size());
+	}
+
+	/**
+	 * 同一个段多次扩容后所有条目都能找到, 删除后其余条目不受影响
+	 */
+	@Test
+	public void testResize()
+	{
+		List<CacheableWrapper<ICacheable>> entries = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			CacheableWrapper<ICacheable> w = entry(i % CAPACITY, i);
+			entries.add(w);
+			assertNull(index.put(w));
+		}
+		assertEquals(200, index.size());
+		assertEquals(200, index.values().size());
+		for (CacheableWrapper<ICacheable> w : entries) {
+			assertSame(w, index.get(w.keyHigh, w.keyLow));
+		}
+
+		for (int i = 0; i < entries.size(); i += 2) {
+			assertTrue(index.remove(entries.get(i)));
+		}
+		assertEquals(100, index.size());
+		for (int i = 0; i < entries.size(); i++) {
+			CacheableWrapper<ICacheable> w = entries.get(i);
+			assertSame(i % 2 == 0 ? null : w, index.get(w.keyHigh, w.keyLow));
+		}
+	}
+
+	/**
+	 * @return 属于第一个段, 在初始容量的表中home为slot的条目
+	 */
+	private CacheableWrapper<ICacheable> entry(int slot, long low)
+	{
+		for (long high = 0;; high++) {
+			int hash = CacheKeys.hash(high, low);
+			if (hash >>> 27 == 0 && (hash & (CAPACITY - 1)) == slot) {
+				return new CacheableWrapper<>(high, low, null, MapBasedCacheService.NON_OPERATION);
+			}
+		}
+	}
+}
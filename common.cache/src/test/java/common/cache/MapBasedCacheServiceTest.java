@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2016 dzyh
+ * All rights reserved.
+ *
+ * $$File: $$
+ * $$DateTime: $$
+ * $$Author: $$
+ * $$Revision: $$
+ */
+
+package common.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import common.cache.exp.CacheWriteException;
+
+/**
+ * @author wls
+ */
+public class MapBasedCacheServiceTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private TestCacheDBOperator dbOperator;
+
+	private MapBasedCacheService<TestEntity> service;
+
+	@Before
+	public void setUp()
+	{
+		dbOperator = new TestCacheDBOperator();
+		service = configure(new MapBasedCacheService<TestEntity>());
+	}
+
+	@After
+	public void tearDown()
+	{
+		dbOperator.setFailWrites(false);
+		service.stop();
+		dbOperator.shutdown();
+	}
+
+	/**
+	 * 因容量淘汰的条目写入数据库失败后留在缓存, 数据库恢复后的下一次写入再淘汰
+	 */
+	@Test
+	public void testEvictFlushFailure() throws Exception
+	{
+		service.setMaximumSize(10);
+		service.start();
+		dbOperator.setFailWrites(true);
+		for (int i = 0; i < 20; i++) {
+			service.writeObject(new TestEntity("e" + i, "v"));
+		}
+		service.flushDirtyEntries();
+		assertEquals(20, service.getSize());
+
+		dbOperator.setFailWrites(false);
+		service.flushDirtyEntries();
+		assertEquals(10, service.getSize());
+		assertEquals(20, dbOperator.countAll());
+	}
+
+	/**
+	 * 因容量淘汰的脏条目不在写入线程上访问数据库, 写入数据库之前仍然可以读取
+	 */
+	@Test
+	public void testEvictWriteBehind() throws Exception
+	{
+		service.setMaximumSize(10);
+		service.start();
+		List<String> keys = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			keys.add(service.writeObject(new TestEntity("e" + i, "v" + i)));
+		}
+		assertEquals(0, dbOperator.countAll());
+		assertEquals(20, service.getSize());
+		for (int i = 0; i < 20; i++) {
+			assertEquals("v" + i, service.readObject(keys.get(i), false).getPayload());
+		}
+
+		service.flushDirtyEntries();
+		assertEquals(20, dbOperator.countAll());
+		assertEquals(10, service.getSize());
+	}
+
+	/**
+	 * 过期的条目写入数据库失败后留在缓存, 退避后再次到期时写入并删除
+	 */
+	@Test
+	public void testExpireFlushFailure() throws Exception
+	{
+		service.setExpireMillisecond(1000);
+		service.start();
+		dbOperator.setFailWrites(true);
+		String key = service.writeObject(new TestEntity("a", "v"));
+		//时间轮最低一层的桶跨度约1秒
+		Thread.sleep(2100);
+		service.expireEntries();
+		assertTrue(service.isCached(key));
+
+		dbOperator.setFailWrites(false);
+		Thread.sleep(2100);
+		service.expireEntries();
+		assertFalse(service.isCached(key));
+		assertNotNull(dbOperator.getByCachedKey(key));
+	}
+
+	/**
+	 * 覆盖了calculateKey的key不能从128位还原, 提前刷新时仍然用原始的key查询数据库
+	 */
+	@Test
+	public void testRefreshCustomKey() throws Exception
+	{
+		service = configure(new MapBasedCacheService<TestEntity>() {
+			@Override
+			public String calculateKey(TestEntity t)
+			{
+				return "custom:" + t.getKeyGene();
+			}
+		});
+		service.setExpireMillisecond(10000);
+		service.setRefreshAheadRatio(0.9);
+		service.start();
+		String key = service.writeObject(new TestEntity("a", "v1"));
+		service.flushDirtyEntries();
+		TestEntity row = dbOperator.getByCachedKey(key);
+		row.setPayload("v2");
+		dbOperator.updateCacheable(row);
+
+		Thread.sleep(1100);
+		assertEquals("v1", service.readObject(key, false).getPayload());
+		for (int i = 0; i < 50 && service.getStats().getRefreshCount() == 0; i++) {
+			Thread.sleep(100);
+		}
+		assertEquals("v2", service.readObject(key, false).getPayload());
+		//刷新得到的就是数据库中的数据, 不需要写回
+		assertEquals(0, service.getDirtySize());
+	}
+
+	/**
+	 * 重放日志时已经写入数据库的新建按更新处理, 其他的仍然新建
+	 */
+	@Test
+	public void testReplayWal() throws Exception
+	{
+		String walDir = folder.newFolder("wal").getPath();
+		service.setWalDir(walDir);
+		service.start();
+		String a = service.writeObject(new TestEntity("a", "v1"));
+		String b = service.writeObject(new TestEntity("b", "v1"));
+		//模拟崩溃前只有a写入了数据库
+		TestEntity row = new TestEntity("a", "v0");
+		row.setCacheKey(a);
+		row.setCachedTime(System.currentTimeMillis());
+		dbOperator.createCacheable(row);
+		service.cancelTasks();
+
+		service = configure(new MapBasedCacheService<TestEntity>());
+		service.setWalDir(walDir);
+		service.start();
+		assertEquals(2, service.getDirtySize());
+		service.flushDirtyEntries();
+		assertEquals(2, dbOperator.countAll());
+		assertEquals("v1", dbOperator.getByCachedKey(a).getPayload());
+		assertEquals("v1", dbOperator.getByCachedKey(b).getPayload());
+	}
+
+	/**
+	 * 快照之后数据库中更新的记录替换快照中未写入的旧修改, 旧修改不再写入数据库
+	 */
+	@Test
+	public void testRestoreSnapshotNewerRow() throws Exception
+	{
+		String snapshotFile = new File(folder.getRoot(), "cache.snapshot").getPath();
+		service.setSnapshotFile(snapshotFile);
+		service.start();
+		dbOperator.setFailWrites(true);
+		String key = service.writeObject(new TestEntity("a", "old"));
+		service.stop();
+
+		dbOperator.setFailWrites(false);
+		TestEntity row = new TestEntity("a", "new");
+		row.setCacheKey(key);
+		row.setCachedTime(System.currentTimeMillis() + 1000);
+		dbOperator.createCacheable(row);
+
+		service = configure(new MapBasedCacheService<TestEntity>());
+		service.setSnapshotFile(snapshotFile);
+		service.start();
+		service.flushDirtyEntries();
+		assertEquals("new", service.readObject(key, false).getPayload());
+		assertEquals("new", dbOperator.getByCachedKey(key).getPayload());
+	}
+
+	/**
+	 * 预写日志失败的写入被撤销, 缓存恢复原来的对象, 也不会写入数据库
+	 */
+	@Test
+	public void testWriteLogFailure() throws Exception
+	{
+		service.setWalDir(folder.newFolder("wal").getPath());
+		service.start();
+		String key = service.writeObject(new TestEntity("a", "v1"));
+		service.flushDirtyEntries();
+		//关闭日志使之后的追加失败
+		service.close();
+
+		try {
+			service.writeObject(new TestEntity("a", "v2"));
+			fail();
+		}
+		catch (CacheWriteException e) {
+		}
+		assertEquals("v1", service.readObject(key, false).getPayload());
+		service.flushDirtyEntries();
+		assertEquals("v1", dbOperator.getByCachedKey(key).getPayload());
+
+		try {
+			service.writeObject(new TestEntity("b", "v1"));
+			fail();
+		}
+		catch (CacheWriteException e) {
+		}
+		assertEquals(1, service.getSize());
+	}
+
+	private MapBasedCacheService<TestEntity> configure(MapBasedCacheService<TestEntity> s)
+	{
+		s.setDbOperator(dbOperator);
+		//定时任务由测试手动触发
+		s.setSchedlueTimeSecond(3600);
+		s.setFlushIntervalSecond(3600);
+		return s;
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2016 dzyh
+ * All rights reserved.
+ *
+ * $$File: $$
+ * $$DateTime: $$
+ * $$Author: $$
+ * $$Revision: $$
+ */
+
+package common.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * @author wls
+ */
+public class NegativeCacheTest
+{
+	/**
+	 * 超过ttl后不再命中, 并从LRU中删除
+	 */
+	@Test
+	public void testExpire() throws Exception
+	{
+		NegativeCache cache = new NegativeCache(100, 100);
+		cache.add(1, 1);
+		assertTrue(cache.contains(1, 1));
+		assertFalse(cache.contains(1, 2));
+
+		Thread.sleep(200);
+		assertFalse(cache.contains(1, 1));
+		assertEquals(0, cache.size());
+	}
+
+	/**
+	 * 过滤器轮换后, 上一代中还没有过期的key仍然命中, 过期后不再命中
+	 */
+	@Test
+	public void testGenerationRotation() throws Exception
+	{
+		NegativeCache cache = new NegativeCache(100, 600);
+		Thread.sleep(400);
+		cache.add(1, 1);
+		Thread.sleep(300);
+		//新一代已经存在超过ttl, 这次添加使(1, 1)只留在上一代的过滤器中
+		cache.add(2, 2);
+		assertTrue(cache.contains(1, 1));
+		assertTrue(cache.contains(2, 2));
+
+		Thread.sleep(450);
+		assertFalse(cache.contains(1, 1));
+		assertTrue(cache.contains(2, 2));
+	}
+
+	/**
+	 * 超过容量时淘汰最久没有访问的key
+	 */
+	@Test
+	public void testLru()
+	{
+		NegativeCache cache = new NegativeCache(2, 60000);
+		cache.add(1, 1);
+		cache.add(2, 2);
+		assertTrue(cache.contains(1, 1));
+		cache.add(3, 3);
+
+		assertEquals(2, cache.size());
+		assertTrue(cache.contains(1, 1));
+		assertFalse(cache.contains(2, 2));
+		assertTrue(cache.contains(3, 3));
+	}
+
+	/**
+	 * 删除后不再命中, 其他key不受影响
+	 */
+	@Test
+	public void testRemove()
+	{
+		NegativeCache cache = new NegativeCache(100, 60000);
+		cache.add(1, 1);
+		cache.add(2, 2);
+		cache.remove(1, 1);
+
+		assertFalse(cache.contains(1, 1));
+		assertTrue(cache.contains(2, 2));
+		assertEquals(1, cache.size());
+	}
+}
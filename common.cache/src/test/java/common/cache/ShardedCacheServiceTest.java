@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2016 dzyh
+ * All rights reserved.
+ *
+ * $$File: $$
+ * $$DateTime: $$
+ * $$Author: $$
+ * $$Revision: $$
+ */
+
+package common.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author wls
+ */
+public class ShardedCacheServiceTest
+{
+	private TestCacheDBOperator dbOperator;
+
+	private ShardedCacheService<TestEntity> service;
+
+	@Before
+	public void setUp()
+	{
+		dbOperator = new TestCacheDBOperator();
+		service = new ShardedCacheService<>();
+		service.setDbOperator(dbOperator);
+		service.setShardCount(4);
+		//定时任务由测试手动触发
+		service.setSchedlueTimeSecond(3600);
+		service.setFlushIntervalSecond(3600);
+	}
+
+	@After
+	public void tearDown()
+	{
+		dbOperator.shutdown();
+	}
+
+	/**
+	 * 没有正在执行的定时任务时立即停止, 各分片剩余的修改都写入数据库
+	 */
+	@Test
+	public void testStop() throws Exception
+	{
+		service.start();
+		for (int i = 0; i < 20; i++) {
+			service.writeObject(new TestEntity("e" + i, "v"));
+		}
+		long start = System.nanoTime();
+		service.stop();
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(MapBasedCacheService.STOP_TIMEOUT_SECOND));
+		assertEquals(20, dbOperator.countAll());
+	}
+}
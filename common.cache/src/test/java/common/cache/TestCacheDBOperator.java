@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2016 dzyh
+ * All rights reserved.
+ *
+ * $$File: $$
+ * $$DateTime: $$
+ * $$Author: $$
+ * $$Revision: $$
+ */
+
+package common.cache;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import common.rds.dbutils.DbunitsDsOperator;
+import common.rds.dbutils.JdbcOperator;
+import common.rds.dbutils.ReplicaRoutingOperator;
+import common.rds.exp.SQLRuntimeException;
+import common.rds.sql.H2SQLProvider;
+
+/**
+ * 测试使用的数据库访问, 每个实例一个MySQL兼容模式的H2内存库. {@link #setFailWrites(boolean)}之后写入数据库都抛出异常
+ *
+ * @author wls
+ */
+public class TestCacheDBOperator extends CacheDBOperator<TestEntity>
+{
+	private static final AtomicInteger DATABASE_SEQUENCE = new AtomicInteger();
+
+	private final JdbcDataSource ds;
+
+	private JdbcDataSource replicaDs;
+
+	private volatile boolean failWrites;
+
+	public TestCacheDBOperator()
+	{
+		super("id");
+		sqlProvider = new H2SQLProvider("id", persistentClass);
+		ds = createDatabase();
+		jdbcTemplate = new JdbcTemplate(ds);
+		jdbcReader = new DbunitsDsOperator(ds);
+	}
+
+	@Override
+	public void createCacheable(TestEntity t)
+	{
+		checkWrite();
+		super.createCacheable(t);
+	}
+
+	@Override
+	public void createCacheables(List<TestEntity> list)
+	{
+		checkWrite();
+		super.createCacheables(list);
+	}
+
+	public void setFailWrites(boolean failWrites)
+	{
+		this.failWrites = failWrites;
+	}
+
+	/**
+	 * 删除内存库
+	 */
+	public void shutdown()
+	{
+		execute(ds, "shutdown");
+		if (replicaDs != null) {
+			execute(replicaDs, "shutdown");
+		}
+	}
+
+	@Override
+	public void updateCacheable(TestEntity t)
+	{
+		checkWrite();
+		super.updateCacheable(t);
+	}
+
+	@Override
+	public void updateCacheables(List<TestEntity> list)
+	{
+		checkWrite();
+		super.updateCacheables(list);
+	}
+
+	private void checkWrite()
+	{
+		if (failWrites) {
+			throw new SQLRuntimeException(new SQLException("Injected write failure"));
+		}
+	}
+
+	/**
+	 * 查询改为读写分离, 从库是一个始终为空的库, 相当于还没有同步任何写入
+	 */
+	public void useEmptyReplica()
+	{
+		replicaDs = createDatabase();
+		jdbcReader = new ReplicaRoutingOperator(new DbunitsDsOperator(ds),
+				Collections.<JdbcOperator, Integer> singletonMap(new DbunitsDsOperator(replicaDs), 1),
+				ReplicaRoutingOperator.Balance.WEIGHTED);
+	}
+
+	private JdbcDataSource createDatabase()
+	{
+		JdbcDataSource db = new JdbcDataSource();
+		db.setURL("jdbc:h2:mem:cache_test_" + DATABASE_SEQUENCE.incrementAndGet() + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+		execute(db, "create table test_entity (id bigint auto_increment primary key, name varchar(64) not null,"
+				+ " cache_key varchar(64), cached_time bigint not null, payload varchar(1024))");
+		execute(db, "create unique index test_entity_cache_key on test_entity(cache_key)");
+		return db;
+	}
+
+	private void execute(JdbcDataSource db, String sql)
+	{
+		try (Connection con = db.getConnection(); Statement st = con.createStatement()) {
+			st.execute(sql);
+		}
+		catch (SQLException e) {
+			throw new SQLRuntimeException(e);
+		}
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2016 dzyh
+ * All rights reserved.
+ *
+ * $$File: $$
+ * $$DateTime: $$
+ * $$Author: $$
+ * $$Revision: $$
+ */
+
+package common.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * @author wls
+ */
+public class TimerWheelTest
+{
+	private static final long EXPIRE = 60000;
+
+	/**
+	 * 调度时已经过期的条目在下一次推进时到期, 不用等时间轮转一圈
+	 */
+	@Test
+	public void testScheduleExpired()
+	{
+		long now = 100000000L;
+		TimerWheel<TestEntity> timer = new TimerWheel<>(now);
+		CacheableWrapper<TestEntity> w = wrap("a", now - EXPIRE - 5000);
+		w.expireTime = w.target.getCachedTime() + EXPIRE;
+		timer.schedule(w);
+
+		assertEquals(Arrays.asList(w), timer.advance(now + 1024, EXPIRE));
+	}
+
+	/**
+	 * 没到期的条目推进后仍在时间轮中
+	 */
+	@Test
+	public void testScheduleNotExpired()
+	{
+		long now = 100000000L;
+		TimerWheel<TestEntity> timer = new TimerWheel<>(now);
+		CacheableWrapper<TestEntity> w = wrap("a", now);
+		w.expireTime = now + EXPIRE;
+		timer.schedule(w);
+
+		assertTrue(timer.advance(now + 1024, EXPIRE).isEmpty());
+		assertEquals(Arrays.asList(w), timer.advance(now + EXPIRE + 2048, EXPIRE));
+	}
+
+	private CacheableWrapper<TestEntity> wrap(String name, long cachedTime)
+	{
+		TestEntity t = new TestEntity(name, name);
+		t.setCachedTime(cachedTime);
+		return new CacheableWrapper<>(name, t, MapBasedCacheService.NON_OPERATION);
+	}
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2016 dzyh
+ * All rights reserved.
+ *
+ * $$File: $$
+ * $$DateTime: $$
+ * $$Author: $$
+ * $$Revision: $$
+ */
+
+package common.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author wls
+ */
+public class WriteAheadLogTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final CacheableSerializer<TestEntity> serializer = new CacheableSerializer<>(TestEntity.class);
+
+	private File dir;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		dir = folder.newFolder("wal");
+	}
+
+	/**
+	 * 校验失败的记录和它之后的记录都不重放, 后面的段不受影响
+	 */
+	@Test
+	public void testReplayCrcMismatch() throws Exception
+	{
+		WriteAheadLog<TestEntity> wal = open();
+		append(wal, "a", MapBasedCacheService.CREATE_OPERATION);
+		append(wal, "b", MapBasedCacheService.CREATE_OPERATION);
+		append(wal, "c", MapBasedCacheService.CREATE_OPERATION);
+		File first = wal.rotate().get(0);
+		append(wal, "d", MapBasedCacheService.CREATE_OPERATION);
+		wal.close();
+
+		//修改第二条记录的最后一个字节
+		long[] ends = recordEnds(first);
+		try (RandomAccessFile file = new RandomAccessFile(first, "rw")) {
+			file.seek(ends[1] - 1);
+			int b = file.read();
+			file.seek(ends[1] - 1);
+			file.write(b ^ 0xff);
+		}
+		assertEquals(Arrays.asList("a:1", "d:1"), replay());
+	}
+
+	/**
+	 * 按顺序重放所有段中的新建, 更新和删除
+	 */
+	@Test
+	public void testReplayOperations() throws Exception
+	{
+		WriteAheadLog<TestEntity> wal = open();
+		append(wal, "a", MapBasedCacheService.CREATE_OPERATION);
+		append(wal, "b", MapBasedCacheService.UPDATE_OPERATION);
+		wal.rotate();
+		append(wal, "a", WriteAheadLog.DELETE_OPERATION);
+		wal.close();
+
+		assertEquals(Arrays.asList("a:1", "b:2", "a:0"), replay());
+	}
+
+	/**
+	 * 进程崩溃时写了一半的记录被忽略, 包括长度和内容不完整两种情况
+	 */
+	@Test
+	public void testReplayTornRecord() throws Exception
+	{
+		WriteAheadLog<TestEntity> wal = open();
+		append(wal, "a", MapBasedCacheService.CREATE_OPERATION);
+		append(wal, "b", MapBasedCacheService.CREATE_OPERATION);
+		wal.close();
+
+		File segment = dir.listFiles()[0];
+		long[] ends = recordEnds(segment);
+		for (long length : new long[] { ends[1] - 1, ends[0] + 6 }) {
+			try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+				file.setLength(length);
+			}
+			assertEquals(Arrays.asList("a:1"), replay());
+		}
+	}
+
+	/**
+	 * 新段创建失败时继续使用当前段, 下一次切换成功后旧段正常返回
+	 */
+	@Test
+	public void testRotateOpenFailure() throws Exception
+	{
+		WriteAheadLog<TestEntity> wal = open();
+		append(wal, "a", MapBasedCacheService.CREATE_OPERATION);
+		//和下一个段同名的目录使创建失败
+		File blocker = new File(dir, String.format("%016x", 2) + ".wal");
+		assertTrue(blocker.mkdir());
+		try {
+			wal.rotate();
+			fail();
+		}
+		catch (IOException e) {
+		}
+		append(wal, "b", MapBasedCacheService.CREATE_OPERATION);
+
+		assertTrue(blocker.delete());
+		List<File> rotated = wal.rotate();
+		assertEquals(1, rotated.size());
+		append(wal, "c", MapBasedCacheService.CREATE_OPERATION);
+		wal.close();
+		assertEquals(Arrays.asList("a:1", "b:1", "c:1"), replay());
+
+		wal.delete(rotated);
+		assertEquals(Arrays.asList("c:1"), replay());
+	}
+
+	private void append(WriteAheadLog<TestEntity> wal, String name, int operation) throws IOException
+	{
+		TestEntity t = new TestEntity(name, name);
+		wal.sync(wal.append(new CacheableWrapper<>(name, t, operation), operation));
+	}
+
+	private WriteAheadLog<TestEntity> open() throws IOException
+	{
+		WriteAheadLog<TestEntity> wal = new WriteAheadLog<>(dir, serializer);
+		wal.open();
+		return wal;
+	}
+
+	/**
+	 * @return 段中每条记录结束的位置, 记录是[int 长度][int CRC32][长度个字节]
+	 */
+	private long[] recordEnds(File segment) throws IOException
+	{
+		List<Long> ends = new ArrayList<>();
+		try (RandomAccessFile file = new RandomAccessFile(segment, "r")) {
+			long position = 0;
+			while (position < file.length()) {
+				file.seek(position);
+				position += 8 + file.readInt();
+				ends.add(position);
+			}
+		}
+		long[] result = new long[ends.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = ends.get(i);
+		}
+		return result;
+	}
+
+	/**
+	 * @return 按重放顺序的"名称:操作", 删除记录的名称从key还原
+	 */
+	private List<String> replay() throws Exception
+	{
+		final List<String> records = new ArrayList<>();
+		new WriteAheadLog<>(dir, serializer).replay(new CacheSnapshot.Visitor<TestEntity>() {
+			@Override
+			public void visit(long keyHigh, long keyLow, TestEntity target, int operation)
+			{
+				String name = target != null ? target.getName() : nameOf(keyHigh, keyLow);
+				records.add(name + ":" + operation);
+			}
+		});
+		return records;
+	}
+
+	private String nameOf(long keyHigh, long keyLow)
+	{
+		for (String name : new String[] { "a", "b", "c", "d" }) {
+			byte[] digest = CacheKeys.digest(name);
+			if (CacheKeys.high(digest) == keyHigh && CacheKeys.low(digest) == keyLow) {
+				return name;
+			}
+		}
+		return null;
+	}
+}
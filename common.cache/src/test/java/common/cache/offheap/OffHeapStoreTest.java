@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2016 dzyh
+ * All rights reserved.
+ *
+ * $$File: $$
+ * $$DateTime: $$
+ * $$Author: $$
+ * $$Revision: $$
+ */
+
+package common.cache.offheap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * @author wls
+ */
+public class OffHeapStoreTest
+{
+	private static final int SLAB_SIZE = 1024;
+
+	/**
+	 * 小条目所在级别的块大小, 一个slab有16块
+	 */
+	private static final int SMALL_BLOCK = 64;
+
+	/**
+	 * 超过容量后同一级别内按CLOCK淘汰, 跳过最近访问过的块; 其他级别没有slab可用时放不下, 超过slab大小的条目也放不下
+	 */
+	@Test
+	public void testOverflow()
+	{
+		OffHeapStore store = new OffHeapStore(2 * SLAB_SIZE, SLAB_SIZE);
+		assertFalse(put(store, 0, new byte[SLAB_SIZE]));
+		assertEquals(0, store.getAllocatedBytes());
+
+		for (int i = 0; i < 32; i++) {
+			assertTrue(put(store, i, value(i, 10)));
+		}
+		assertEquals(2 * SLAB_SIZE, store.getAllocatedBytes());
+		assertNotNull(get(store, 0));
+		assertTrue(put(store, 32, value(32, 10)));
+		assertEquals(1, store.getEvictionCount());
+		assertEquals(32, store.size());
+		assertNull(get(store, 1));
+		assertArrayEquals(value(0, 10), get(store, 0));
+		assertArrayEquals(value(32, 10), get(store, 32));
+
+		assertFalse(put(store, 33, value(33, 100)));
+		assertEquals(1, store.getEvictionCount());
+		assertEquals(32, store.size());
+
+		store.clear();
+		assertEquals(0, store.getAllocatedBytes());
+		assertTrue(put(store, 33, value(33, 100)));
+	}
+
+	/**
+	 * 删除和覆盖释放的块被同一级别重用, 不分配新的slab
+	 */
+	@Test
+	public void testSlabReuse()
+	{
+		OffHeapStore store = new OffHeapStore(2 * SLAB_SIZE, SLAB_SIZE);
+		for (int i = 0; i < 16; i++) {
+			assertTrue(put(store, i, value(i, 10)));
+		}
+		assertEquals(SLAB_SIZE, store.getAllocatedBytes());
+		assertEquals(16 * SMALL_BLOCK, store.getUsedBytes());
+
+		for (int i = 0; i < 8; i++) {
+			assertArrayEquals(value(i, 10), remove(store, i));
+		}
+		assertNull(remove(store, 0));
+		assertEquals(8 * SMALL_BLOCK, store.getUsedBytes());
+
+		for (int i = 16; i < 24; i++) {
+			assertTrue(put(store, i, value(i, 10)));
+		}
+		assertTrue(put(store, 20, value(-20, 12)));
+		assertEquals(SLAB_SIZE, store.getAllocatedBytes());
+		assertEquals(16 * SMALL_BLOCK, store.getUsedBytes());
+		assertEquals(0, store.getEvictionCount());
+		assertEquals(16, store.size());
+		for (int i = 8; i < 24; i++) {
+			assertArrayEquals(i == 20 ? value(-20, 12) : value(i, 10), get(store, i));
+		}
+	}
+
+	private byte[] get(OffHeapStore store, int key)
+	{
+		return store.get(key, key);
+	}
+
+	private boolean put(OffHeapStore store, int key, byte[] value)
+	{
+		return store.put(key, key, value);
+	}
+
+	private byte[] remove(OffHeapStore store, int key)
+	{
+		return store.remove(key, key);
+	}
+
+	private byte[] value(int seed, int length)
+	{
+		byte[] value = new byte[length];
+		Arrays.fill(value, (byte) seed);
+		return value;
+	}
+}
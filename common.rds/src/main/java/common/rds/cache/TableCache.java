@@ -24,10 +24,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.EmptyResultDataAccessException;
-import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 
 import common.rds.annotation.PrimaryKey;
+import common.rds.dbutils.EntityRowMapper;
 import common.rds.sql.AbstractSQLProvider;
 
 /**
@@ -50,6 +50,8 @@ public class TableCache<T>
 
 	private Field primaryKey;
 
+	private EntityRowMapper<T> rowMapper;
+
 	private final static Logger logger = LoggerFactory.getLogger(TableCache.class);
 
 	@Autowired
@@ -79,7 +81,7 @@ public class TableCache<T>
 		T t = null;
 		try {
 			t = jdbcTemplate.queryForObject("select * from " + tableName + " where " + primaryKey.getName() + "=" + key,
-					new BeanPropertyRowMapper<T>(cls));
+					rowMapper);
 		}
 		catch (EmptyResultDataAccessException e) {
 			return null;
@@ -115,6 +117,7 @@ public class TableCache<T>
 		}
 
 		primaryKey.setAccessible(true);
+		rowMapper = new EntityRowMapper<>(cls, primaryKey);
 		refresh();
 	}
 
@@ -122,7 +125,7 @@ public class TableCache<T>
 	{
 		if (refreshLock.tryLock()) {
 			try {
-				List<T> list = jdbcTemplate.query("select * from " + tableName, new BeanPropertyRowMapper<T>(cls));
+				List<T> list = jdbcTemplate.query("select * from " + tableName, rowMapper);
 				cache.clear();
 				if (list.size() > 0) {
 					for (T tt : list) {
@@ -140,7 +143,7 @@ public class TableCache<T>
 	public void refresh(Object key)
 	{
 		T t = jdbcTemplate.queryForObject("select * from " + tableName + " where " + primaryKey.getName() + "=" + key,
-				new BeanPropertyRowMapper<T>(cls));
+				rowMapper);
 		if (t != null) {
 			cache.put(key, t);
 		}
@@ -7,10 +7,17 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,23 +27,55 @@ import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
-import common.rds.exp.BugError;
+import common.rds.dbutils.CloseableIterator;
+import common.rds.dbutils.EntityRowMapper;
+import common.rds.dbutils.ReplicaRoutingOperator;
+import common.rds.exp.SQLRuntimeException;
 import common.rds.sql.AbstractSQLProvider;
+import common.rds.sql.FieldAccessor;
 import common.rds.sql.ISQLProvider;
 import common.rds.sql.MySQLProvider;
 import common.rds.sql.SQLFieldCondition;
 import common.rds.sql.SQLFieldRangeCondition;
 import common.rds.sql.SQLLimit;
 import common.rds.sql.SQLOrder;
+import common.rds.sql.SQLSeek;
 
 public abstract class GenericDao<T> extends AbstractDao
 {
+	/**
+	 * 批量操作默认每批的记录数
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+
+	/**
+	 * in查询每次最多的参数个数, 不足时补齐到2的幂, 每个字段最多只有几种SQL
+	 */
+	protected static final int IN_CHUNK_SIZE = 512;
+
 	protected static final Logger logger = LoggerFactory.getLogger(GenericDao.class);
 
 	protected ISQLProvider sqlProvider;
 
 	protected Class<T> persistentClass;
 
+	/**
+	 * 第一次查询时创建, 子类可能在构造函数中替换{@link #sqlProvider}
+	 */
+	private volatile EntityRowMapper<T> rowMapper;
+
+	private int batchSize = DEFAULT_BATCH_SIZE;
+
+	/**
+	 * 批量插入时是否把每批拼成一条多行insert语句
+	 */
+	private boolean multiValuesInsert;
+
+	/**
+	 * 不为null时in查询的多个批次并行执行
+	 */
+	private ExecutorService queryExecutor;
+
 	/**
 	 * 指定对应主键名字
 	 *
@@ -50,62 +89,93 @@ public abstract class GenericDao<T> extends AbstractDao
 	}
 
 	/**
-	 * 批量插入新纪录，如果autoIncrememntId为true，则id必须是<0的值，否则会认为该对象数据已经存在，无法做insert
+	 * 按id批量删除, 每{@link #getBatchSize()}个id一条in语句, 参数个数和{@link #getByFieldIn(String, Collection)}一样补齐
+	 *
+	 * @param ids
+	 * @return 每批删除的行数
+	 */
+	public int[] batchDelete(Collection<Long> ids)
+	{
+		List<Long> idList = new ArrayList<>(ids);
+		int size = batchSize;
+		int[] counts = new int[chunkCount(idList.size(), size)];
+		for (int from = 0; from < idList.size(); from += size) {
+			Object[] args = padInArgs(idList.subList(from, Math.min(from + size, idList.size())));
+			String sql = sqlProvider.provideDeleteByFieldInSQL(sqlProvider.getUnderscoreIdName(), args.length);
+			logger.debug(sql);
+			counts[from / size] = jdbcTemplate.update(sql, args);
+		}
+		return counts;
+	}
+
+	/**
+	 * 批量插入新纪录，如果autoIncrememntId为true，则id必须是<0的值，否则会认为该对象数据已经存在，无法做insert.
+	 * id自增时插入后会把生成的id设置回对象. 每{@link #getBatchSize()}条记录执行一次, 设置了{@link #setMultiValuesInsert(boolean)}
+	 * 时每批拼成一条多行insert语句, 否则MySQL连接需要设置rewriteBatchedStatements=true才会合并
 	 *
 	 * @param objs
 	 * @param autoIncrememntId
 	 *            id是否自增值
+	 * @return 每批插入的行数, 驱动没有返回行数时为{@link Statement#SUCCESS_NO_INFO}
 	 */
-	public void batchInsert(List<T> objs, boolean autoIncrememntId)
+	public int[] batchInsert(List<T> objs, boolean autoIncrememntId)
 	{
-		List<Object[]> params = new ArrayList<>();
-		String sql = null;
-		for (T obj : objs) {
-			Assert.notNull(obj);
-			Object idVal = null;
-			try {
-				idVal = sqlProvider.getIdField().get(obj);
-			}
-			catch (IllegalArgumentException | IllegalAccessException e2) {
-				throw new BugError();
-			}
-			Object[] args = null;
-			int i = 0;
-			if (autoIncrememntId) {
-				//id是自增类型
-				if (idVal != null) {
-					if (idVal instanceof Number) {
-						Number idNum = (Number) idVal;
-						if (idNum.longValue() > 0) {
-							throw new IllegalStateException("对于id自增对象,做insert时候id必须小于等于0");
-						}
-					}
-				}
-				args = new Object[sqlProvider.getFieldMap().size()];
-				if (sql == null) {
-					sql = MessageFormat.format(sqlProvider.provideInsertSQL(), "", "");
-				}
-			}
-			else {
-				args = new Object[sqlProvider.getFieldMap().size() + 1];
-				args[i++] = idVal;
-				if (sql == null) {
-					sql = MessageFormat.format(sqlProvider.provideInsertSQL(), sqlProvider.getUnderscoreIdName() + ",", "?,");
-				}
-			}
+		return doBatchInsert(objs, autoIncrememntId, false);
+	}
 
-			for (Map.Entry<Field, String> entry : sqlProvider.getFieldMap().entrySet()) {
-				try {
-					args[i++] = entry.getKey().get(obj);
-				}
-				catch (IllegalArgumentException | IllegalAccessException e) {
-					throw new BugError();
-				}
+	/**
+	 * 批量的{@link #insertIgnore(Object, boolean)}, 分批方式和{@link #batchInsert(List, boolean)}一样. 有记录被忽略时,
+	 * 这一批的自增id无法和对象对应, 不设置回对象
+	 *
+	 * @param objs
+	 * @param autoIncrememntId
+	 * @return 每批插入的行数
+	 */
+	public int[] batchInsertIgnore(List<T> objs, boolean autoIncrememntId)
+	{
+		return doBatchInsert(objs, autoIncrememntId, true);
+	}
+
+	/**
+	 * 批量更新, 和{@link #update(Object)}一样按id更新, 每{@link #getBatchSize()}条记录一次JDBC批量执行
+	 *
+	 * @param objs
+	 * @return 每批更新的行数, 驱动没有返回行数时为{@link Statement#SUCCESS_NO_INFO}
+	 */
+	public int[] batchUpdate(List<T> objs)
+	{
+		String sql = sqlProvider.provideUpdateSQL();
+		int size = batchSize;
+		int[] counts = new int[chunkCount(objs.size(), size)];
+		for (int from = 0; from < objs.size(); from += size) {
+			List<T> chunk = objs.subList(from, Math.min(from + size, objs.size()));
+			List<Object[]> params = new ArrayList<>(chunk.size());
+			for (T obj : chunk) {
+				params.add(toUpdateArgs(obj));
 			}
-			params.add(args);
+			counts[from / size] = affectedRows(jdbcTemplate.batchUpdate(sql, params));
 		}
+		return counts;
+	}
 
-		jdbcTemplate.batchUpdate(sql, params);
+	/**
+	 * 批量版本的{@link #upsert(Object, String)}, 一次JDBC批量执行, 不设置新记录的id
+	 *
+	 * @param objs
+	 * @param keyFieldName
+	 *            唯一索引对应的字段名
+	 * @return 每条语句影响的行数, 含义由数据库决定
+	 */
+	public int[] batchUpsert(List<T> objs, String keyFieldName)
+	{
+		if (objs.isEmpty()) {
+			return new int[0];
+		}
+		List<Object[]> params = new ArrayList<>(objs.size());
+		for (T obj : objs) {
+			params.add(toUpsertArgs(obj));
+		}
+		return jdbcTemplate.batchUpdate(sqlProvider.provideUpsertSQL(keyFieldName), params);
 	}
 
 	/**
@@ -186,7 +256,7 @@ public abstract class GenericDao<T> extends AbstractDao
 				AbstractSQLProvider.underscoreName(fieldConditionName), fieldConditionValue), SQLFieldRangeCondition.create(
 						AbstractSQLProvider.underscoreName(rangeFieldName), rangeValueMin, rangeValueMax, includeMin, includeMax));
 		logger.debug(sql);
-		return jdbcReader.columnQuerySingle(sql, fieldConditionValue, rangeValueMin, rangeValueMax);
+		return jdbcReader.columnQuerySingle(sql, rangeArgs(fieldConditionValue, rangeValueMin, rangeValueMax));
 	}
 
 	/**
@@ -205,7 +275,7 @@ public abstract class GenericDao<T> extends AbstractDao
 
 	public List<T> executeQuery(String sql, Object... params)
 	{
-		return jdbcReader.executeQuery(sql, persistentClass, params);
+		return jdbcReader.query(sql, getRowMapper(), params);
 	}
 
 	public <K> K executeQueryObject(String sql, Class<K> type, Object... params)
@@ -234,7 +304,8 @@ public abstract class GenericDao<T> extends AbstractDao
 	{
 		String sql = sqlProvider.provideQueryByIdSQL();
 		logger.debug(sql);
-		return jdbcReader.executeQueryObject(sql, persistentClass, id);
+		List<T> list = jdbcReader.query(sql, getRowMapper(), id);
+		return list.isEmpty() ? null : list.get(0);
 	}
 
 	/**
@@ -254,7 +325,12 @@ public abstract class GenericDao<T> extends AbstractDao
 				orderType);
 		String sql = sqlProvider.provideQueryAllSQL(order);
 		logger.debug(sql);
-		return jdbcReader.executeQuery(sql, persistentClass);
+		return jdbcReader.query(sql, getRowMapper());
+	}
+
+	public int getBatchSize()
+	{
+		return batchSize;
 	}
 
 	/**
@@ -311,7 +387,19 @@ public abstract class GenericDao<T> extends AbstractDao
 
 		String sql = sqlProvider.provideQueryByFieldSQL(fieldCondition, sqlLimit, sqlOrder);
 		logger.debug(sql);
-		return jdbcReader.executeQuery(sql, persistentClass, value);
+		return jdbcReader.query(sql, getRowMapper(), limitArgs(new Object[] { value }, sqlLimit));
+	}
+
+	/**
+	 * 按字段的多个值查询, 每{@link #IN_CHUNK_SIZE}个值一条in语句, 重复的值只查一次
+	 *
+	 * @param filedName
+	 * @param values
+	 * @return 顺序不确定
+	 */
+	public List<T> getByFieldIn(String filedName, Collection<?> values)
+	{
+		return queryIn(AbstractSQLProvider.underscoreName(filedName), values);
 	}
 
 	/**
@@ -445,33 +533,72 @@ public abstract class GenericDao<T> extends AbstractDao
 			boolean includeMax, String fieldConditionName, Object fieldConditionVal, int start, int limit, String orderField,
 			String orderType)
 			{
-		String ocn = fieldConditionName;
-		Object ocv = fieldConditionVal;
-		if (StringUtils.isEmpty(ocn)) {
-			ocn = "1";
-			ocv = 1;
-		}
-		else {
-			ocn = AbstractSQLProvider.underscoreName(fieldConditionName);
-		}
-
-		SQLFieldCondition fieldCondition = SQLFieldCondition.create(ocn, ocv);
-		SQLFieldRangeCondition rangeCondition = SQLFieldRangeCondition.create(AbstractSQLProvider.underscoreName(rangeFieldName),
-				rangeValueMin, rangeValueMax, includeMin, includeMax);
-
 		SQLLimit sqlLimit = null;
 		if (start >= 0 && limit > 0) {
 			sqlLimit = SQLLimit.createSQLLimit(start, limit);
 		}
+		String sql = provideFieldRangeSQL(rangeFieldName, rangeValueMin, rangeValueMax, includeMin, includeMax,
+				fieldConditionName, sqlLimit, orderField, orderType);
+		logger.debug(sql);
+		Object ocv = StringUtils.isEmpty(fieldConditionName) ? 1 : fieldConditionVal;
+		return jdbcReader.query(sql, getRowMapper(), limitArgs(rangeArgs(ocv, rangeValueMin, rangeValueMax), sqlLimit));
+			}
 
-		SQLOrder order = null;
-		if (!StringUtils.isEmpty(orderField)) {
-			order = SQLOrder.createOrder(orderField, orderType);
+	/**
+	 * 按id批量查询, 分批方式和{@link #getByFieldIn(String, Collection)}一样
+	 *
+	 * @param ids
+	 * @return <id, 对象>, 不存在的id不在结果中
+	 */
+	public Map<Long, T> getByIds(Collection<? extends Number> ids)
+	{
+		List<Long> values = new ArrayList<>(ids.size());
+		for (Number id : ids) {
+			values.add(id.longValue());
+		}
+		List<T> list = queryIn(sqlProvider.getUnderscoreIdName(), values);
+		Map<Long, T> result = new HashMap<>(list.size() * 4 / 3 + 1);
+		FieldAccessor accessor = sqlProvider.getAccessor();
+		for (T t : list) {
+			result.put(((Number) accessor.getId(t)).longValue(), t);
 		}
-		String sql = sqlProvider.provideQueryByFieldRangeSQL(fieldCondition, rangeCondition, sqlLimit, order);
+		return result;
+	}
+
+	/**
+	 * 查询id的范围
+	 *
+	 * @return [最小id, 最大id], 表为空时返回null
+	 */
+	public long[] getIdRange()
+	{
+		String idName = sqlProvider.getUnderscoreIdName();
+		String sql = "select min(" + idName + ") as min_id, max(" + idName + ") as max_id from " + sqlProvider.getTableName();
 		logger.debug(sql);
-		return jdbcReader.executeQuery(sql, persistentClass, ocv, rangeValueMin, rangeValueMax);
-			}
+		Map<String, Object> row = jdbcReader.executeQueryRow(sql);
+		if (row == null || row.get("min_id") == null) {
+			return null;
+		}
+		return new long[] { ((Number) row.get("min_id")).longValue(), ((Number) row.get("max_id")).longValue() };
+	}
+
+	public Class<T> getPersistentClass()
+	{
+		return persistentClass;
+	}
+
+	/**
+	 * @return 查询结果到实体对象的映射
+	 */
+	public EntityRowMapper<T> getRowMapper()
+	{
+		EntityRowMapper<T> mapper = rowMapper;
+		if (mapper == null) {
+			mapper = new EntityRowMapper<>(persistentClass, sqlProvider);
+			rowMapper = mapper;
+		}
+		return mapper;
+	}
 
 	public ISQLProvider getSqlProvider()
 	{
@@ -487,7 +614,7 @@ public abstract class GenericDao<T> extends AbstractDao
 	 */
 	public Long insert(T obj, boolean autoIncrememntId)
 	{
-		return doInsert(obj, autoIncrememntId, sqlProvider.provideInsertSQL());
+		return doInsert(obj, autoIncrememntId, false);
 	}
 
 	/**
@@ -499,14 +626,148 @@ public abstract class GenericDao<T> extends AbstractDao
 	 */
 	public Long insertIgnore(T obj, boolean autoIncrememntId)
 	{
-		return doInsert(obj, autoIncrememntId, sqlProvider.provideInsertSQL().replace("insert into", "insert ignore into"));
+		return doInsert(obj, autoIncrememntId, true);
 	}
 
 	public List<T> queryBySQL(String sql, Object... args)
 	{
-		return jdbcReader.executeQuery(sql, persistentClass, args);
+		return jdbcReader.query(sql, getRowMapper(), args);
+	}
+
+	/**
+	 * keyset分页的{@link #getByField(String, Object, int, int, String, String)}, 每页的查询代价和页数无关
+	 *
+	 * @param filedName
+	 * @param value
+	 * @param orderField
+	 *            排序字段, null时按id排序. 排序字段不能有null值
+	 * @param orderType
+	 * @param after
+	 *            上一页的{@link SeekPage#getNext()}, 第一页为null
+	 * @param limit
+	 *            每页记录数
+	 * @return
+	 */
+	public SeekPage<T> seekByField(String filedName, Object value, String orderField, String orderType, SeekPage.Token after,
+			int limit)
+	{
+		SQLFieldCondition fieldCondition = SQLFieldCondition.create(AbstractSQLProvider.underscoreName(filedName), value);
+		return seek(fieldCondition, null, new Object[] { value }, orderField, orderType, after, limit);
+	}
+
+	/**
+	 * keyset分页的{@link #getByFieldRange(String, Object, Object, boolean, boolean, String, Object, int, int, String, String)}
+	 *
+	 * @param rangeFieldName
+	 * @param rangeValueMin
+	 * @param rangeValueMax
+	 * @param includeMin
+	 * @param includeMax
+	 * @param fieldConditionName
+	 *            其他条件的字段名, 可以为null
+	 * @param fieldConditionVal
+	 * @param orderField
+	 *            排序字段, null时按id排序. 排序字段不能有null值
+	 * @param orderType
+	 * @param after
+	 *            上一页的{@link SeekPage#getNext()}, 第一页为null
+	 * @param limit
+	 *            每页记录数
+	 * @return
+	 */
+	public SeekPage<T> seekByFieldRange(String rangeFieldName, Object rangeValueMin, Object rangeValueMax, boolean includeMin,
+			boolean includeMax, String fieldConditionName, Object fieldConditionVal, String orderField, String orderType,
+			SeekPage.Token after, int limit)
+			{
+		String ocn = StringUtils.isEmpty(fieldConditionName) ? "1" : AbstractSQLProvider.underscoreName(fieldConditionName);
+		Object ocv = StringUtils.isEmpty(fieldConditionName) ? 1 : fieldConditionVal;
+		SQLFieldRangeCondition rangeCondition = SQLFieldRangeCondition.create(AbstractSQLProvider.underscoreName(rangeFieldName),
+				rangeValueMin, rangeValueMax, includeMin, includeMax);
+		return seek(SQLFieldCondition.create(ocn, ocv), rangeCondition, rangeArgs(ocv, rangeValueMin, rangeValueMax),
+				orderField, orderType, after, limit);
+			}
+
+	/**
+	 * @param batchSize
+	 *            批量插入, 更新, 删除时每批的记录数
+	 */
+	public void setBatchSize(int batchSize)
+	{
+		Assert.isTrue(batchSize > 0);
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @param multiValuesInsert
+	 *            批量插入时是否把每批拼成一条insert ... values (...),(...)语句, 不依赖驱动的rewriteBatchedStatements
+	 */
+	public void setMultiValuesInsert(boolean multiValuesInsert)
+	{
+		this.multiValuesInsert = multiValuesInsert;
+	}
+
+	/**
+	 * @param queryExecutor
+	 *            in查询超过一批时用来并行执行, null表示在当前线程依次执行. 查询不使用当前事务的连接.
+	 *            当前线程固定使用主库时(见{@link ReplicaRoutingOperator#isPrimaryPinned()})仍然依次执行, 因为其他线程读不到这个状态
+	 */
+	public void setQueryExecutor(ExecutorService queryExecutor)
+	{
+		this.queryExecutor = queryExecutor;
+	}
+
+	/**
+	 * @see #streamAll(String, String)
+	 */
+	public CloseableIterator<T> streamAll()
+	{
+		return streamAll(null, null);
+	}
+
+	/**
+	 * 流式读取所有记录, 用于导出等结果很大的场合, 返回的迭代器没有读完时必须关闭
+	 *
+	 * @param orderField
+	 *            可以为null
+	 * @param orderType
+	 * @return
+	 */
+	public CloseableIterator<T> streamAll(String orderField, String orderType)
+	{
+		SQLOrder order = orderField == null ? null : SQLOrder.createOrder(AbstractSQLProvider.underscoreName(orderField),
+				orderType);
+		String sql = sqlProvider.provideQueryAllSQL(order);
+		logger.debug(sql);
+		return jdbcReader.stream(sql, getRowMapper());
 	}
 
+	/**
+	 * 流式的{@link #getByFieldRange(String, Object, Object, boolean, boolean, String, Object, int, int, String, String)},
+	 * 不分页, 返回的迭代器没有读完时必须关闭
+	 *
+	 * @param rangeFieldName
+	 * @param rangeValueMin
+	 * @param rangeValueMax
+	 * @param includeMin
+	 * @param includeMax
+	 * @param fieldConditionName
+	 *            其他条件的字段名, 可以为null
+	 * @param fieldConditionVal
+	 * @param orderField
+	 * @param orderType
+	 * @return
+	 */
+	public CloseableIterator<T> streamByFieldRange(String rangeFieldName, Object rangeValueMin, Object rangeValueMax,
+			boolean includeMin, boolean includeMax, String fieldConditionName, Object fieldConditionVal, String orderField,
+			String orderType)
+			{
+		String sql = provideFieldRangeSQL(rangeFieldName, rangeValueMin, rangeValueMax, includeMin, includeMax,
+				fieldConditionName, null, orderField, orderType);
+		logger.debug(sql);
+		Object ocv = StringUtils.isEmpty(fieldConditionName) ? 1 : fieldConditionVal;
+		return jdbcReader.stream(sql, getRowMapper(), rangeArgs(ocv, rangeValueMin, rangeValueMax));
+			}
+
 	/**
 	 * 更新obj对象
 	 *
@@ -514,69 +775,111 @@ public abstract class GenericDao<T> extends AbstractDao
 	 */
 	public void update(T obj)
 	{
-		Object[] args = new Object[sqlProvider.getFieldMap().size() + 1];
-		int i = 0;
-		try {
-			for (Map.Entry<Field, String> entry : sqlProvider.getFieldMap().entrySet()) {
-				args[i++] = entry.getKey().get(obj);
-			}
-			args[i++] = sqlProvider.getIdField().get(obj);
-		}
-		catch (IllegalArgumentException | IllegalAccessException e) {
-			throw new BugError();
-		}
-
-		jdbcTemplate.update(sqlProvider.provideUpdateSQL(), args);
+		jdbcTemplate.update(sqlProvider.provideUpdateSQL(), toUpdateArgs(obj));
 	}
 
 	/**
-	 * 插入一条新纪录，如果autoIncrememntId为true，则id必须是<0的值，否则会认为该对象数据已经存在，无法做insert
+	 * 按唯一键插入或更新, 只执行一条语句, 不使用obj的id. 数据库返回了id时(新插入的记录, 或MySQL更新已有的记录)设置到obj
 	 *
 	 * @param obj
-	 * @param autoIncrememntId
-	 *            id是否自增值
+	 * @param keyFieldName
+	 *            唯一索引对应的字段名
+	 * @return 数据库返回的id, 没有返回时为-1
 	 */
-	private Long doInsert(T obj, boolean autoIncrememntId, String insertSQL)
+	public long upsert(T obj, String keyFieldName)
 	{
 		Assert.notNull(obj);
-		Object idVal = null;
-		try {
-			idVal = sqlProvider.getIdField().get(obj);
-		}
-		catch (IllegalArgumentException | IllegalAccessException e2) {
-			throw new BugError();
-		}
-		String sql = null;
-		Object[] args = null;
-		int i = 0;
-		if (autoIncrememntId) {
-			//id是自增类型
-			if (idVal != null) {
-				if (idVal instanceof Number) {
-					Number idNum = (Number) idVal;
-					if (idNum.longValue() > 0) {
-						throw new IllegalStateException("对于id自增对象,做insert时候id必须小于等于0");
+		final String sql = sqlProvider.provideUpsertSQL(keyFieldName);
+		final ArgumentPreparedStatementSetter pss = new ArgumentPreparedStatementSetter(toUpsertArgs(obj));
+		logger.debug(sql);
+		Long newId = jdbcTemplate.execute(new ConnectionCallback<Long>() {
+
+			@Override
+			public Long doInConnection(Connection con) throws SQLException, DataAccessException
+			{
+				PreparedStatement ps = con.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+				try {
+					pss.setValues(ps);
+					ps.executeUpdate();
+					ResultSet rs = ps.getGeneratedKeys();
+					try {
+						return rs.next() ? rs.getLong(1) : -1L;
+					}
+					finally {
+						rs.close();
 					}
 				}
+				finally {
+					ps.close();
+				}
 			}
-			args = new Object[sqlProvider.getFieldMap().size()];
-			sql = MessageFormat.format(/*sqlProvider.provideInsertSQL()*/insertSQL, "", "");
-		}
-		else {
-			args = new Object[sqlProvider.getFieldMap().size() + 1];
-			args[i++] = idVal;
-			sql = MessageFormat.format(/*sqlProvider.provideInsertSQL()*/insertSQL, sqlProvider.getUnderscoreIdName() + ",",
-					"?,");
+		});
+		if (newId > 0) {
+			setGeneratedId(obj, newId);
 		}
+		return newId;
+	}
 
-		for (Map.Entry<Field, String> entry : sqlProvider.getFieldMap().entrySet()) {
-			try {
-				args[i++] = entry.getKey().get(obj);
-			}
-			catch (IllegalArgumentException | IllegalAccessException e) {
-				throw new BugError();
+	/**
+	 * 一批JDBC批量执行或一条多行语句的影响行数
+	 *
+	 * @param counts
+	 * @return 有一条没有返回行数时为{@link Statement#SUCCESS_NO_INFO}
+	 */
+	/**
+	 * in语句的参数个数补齐到2的幂, 用最后一个值填充, 每个字段只有少数几种SQL
+	 *
+	 * @param values
+	 *            不能为空
+	 * @return
+	 */
+	protected static Object[] padInArgs(List<?> values)
+	{
+		int count = values.size() == 1 ? 1 : Integer.highestOneBit(values.size() - 1) << 1;
+		Object[] args = Arrays.copyOf(values.toArray(), count);
+		Arrays.fill(args, values.size(), count, values.get(values.size() - 1));
+		return args;
+	}
+
+	private int affectedRows(int[] counts)
+	{
+		int sum = 0;
+		for (int count : counts) {
+			if (count < 0) {
+				return Statement.SUCCESS_NO_INFO;
 			}
+			sum += count;
+		}
+		return sum;
+	}
+
+	private int chunkCount(int total, int size)
+	{
+		return (total + size - 1) / size;
+	}
+
+	private int[] doBatchInsert(List<T> objs, boolean autoIncrememntId, boolean ignore)
+	{
+		int size = batchSize;
+		int[] counts = new int[chunkCount(objs.size(), size)];
+		for (int from = 0; from < objs.size(); from += size) {
+			counts[from / size] = insertChunk(objs.subList(from, Math.min(from + size, objs.size())), autoIncrememntId, ignore);
 		}
+		return counts;
+	}
+
+	/**
+	 * 插入一条新纪录，如果autoIncrememntId为true，则id必须是<0的值，否则会认为该对象数据已经存在，无法做insert
+	 *
+	 * @param obj
+	 * @param autoIncrememntId
+	 *            id是否自增值
+	 */
+	private Long doInsert(T obj, boolean autoIncrememntId, boolean ignore)
+	{
+		Assert.notNull(obj);
+		Object[] args = toInsertArgs(obj, autoIncrememntId);
+		String sql = sqlProvider.provideInsertSQL(autoIncrememntId, ignore);
 		logger.debug(sql);
 		if (autoIncrememntId) {
 			final String usql = sql;
@@ -598,26 +901,312 @@ public abstract class GenericDao<T> extends AbstractDao
 			});
 
 			if (newId > 0) {
-				sqlProvider.getIdField().setAccessible(true);
+				setGeneratedId(obj, newId);
+			}
+
+			return newId;
+		}
+		else {
+			jdbcTemplate.update(sql, args);
+			return (Long) args[0];
+		}
+	}
+
+	/**
+	 * 多行insert语句的参数, 依次是每一行的值
+	 */
+	private Object[] flatten(List<Object[]> params)
+	{
+		List<Object> args = new ArrayList<>(params.size() * (params.isEmpty() ? 0 : params.get(0).length));
+		for (Object[] row : params) {
+			args.addAll(Arrays.asList(row));
+		}
+		return args.toArray();
+	}
+
+	/**
+	 * 插入一批记录, id自增时按顺序把生成的id设置回对象
+	 *
+	 * @return 插入的行数
+	 */
+	private int insertChunk(final List<T> chunk, boolean autoIncrememntId, boolean ignore)
+	{
+		final boolean multiValues = multiValuesInsert;
+		final List<Object[]> params = new ArrayList<>(chunk.size());
+		for (T obj : chunk) {
+			Assert.notNull(obj);
+			params.add(toInsertArgs(obj, autoIncrememntId));
+		}
+		final String sql = multiValues ? sqlProvider.provideInsertSQL(autoIncrememntId, ignore, chunk.size()) : sqlProvider
+				.provideInsertSQL(autoIncrememntId, ignore);
+		logger.debug(sql);
+
+		if (!autoIncrememntId) {
+			return multiValues ? jdbcTemplate.update(sql, flatten(params)) : affectedRows(jdbcTemplate.batchUpdate(sql, params));
+		}
+
+		return jdbcTemplate.execute(new ConnectionCallback<Integer>() {
+
+			@Override
+			public Integer doInConnection(Connection con) throws SQLException, DataAccessException
+			{
+				PreparedStatement ps = con.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
 				try {
-					if (sqlProvider.getIdField().getType() == int.class || sqlProvider.getIdField().getType() == Integer.class) {
-						sqlProvider.getIdField().set(obj, newId.intValue());
+					int count;
+					if (multiValues) {
+						new ArgumentPreparedStatementSetter(flatten(params)).setValues(ps);
+						count = ps.executeUpdate();
 					}
 					else {
-						sqlProvider.getIdField().set(obj, newId);
+						for (Object[] args : params) {
+							new ArgumentPreparedStatementSetter(args).setValues(ps);
+							ps.addBatch();
+						}
+						count = affectedRows(ps.executeBatch());
+					}
+					List<Long> ids = new ArrayList<>(chunk.size());
+					ResultSet rs = ps.getGeneratedKeys();
+					try {
+						while (rs.next()) {
+							ids.add(rs.getLong(1));
+						}
+					}
+					finally {
+						rs.close();
 					}
+					//insert ignore忽略了记录时, 生成的id和对象对应不上
+					if (ids.size() == chunk.size()) {
+						for (int i = 0; i < ids.size(); i++) {
+							setGeneratedId(chunk.get(i), ids.get(i));
+						}
+					}
+					return count;
 				}
-				catch (IllegalArgumentException | IllegalAccessException e) {
-					logger.error("", e);
+				finally {
+					ps.close();
 				}
 			}
+		});
+	}
 
-			return newId;
+	/**
+	 * 有分页时在参数最后加上start和limit
+	 *
+	 * @param args
+	 * @param sqlLimit
+	 * @return
+	 */
+	private Object[] limitArgs(Object[] args, SQLLimit sqlLimit)
+	{
+		if (sqlLimit == null) {
+			return args;
 		}
-		else {
-			jdbcTemplate.update(sql, args);
-			return (Long) idVal;
+		Object[] result = Arrays.copyOf(args, args.length + 2);
+		result[args.length] = sqlLimit.getStart();
+		result[args.length + 1] = sqlLimit.getLimit();
+		return result;
+	}
+
+	/**
+	 * @param orderField
+	 * @return 排序字段在{@link ISQLProvider#getFieldMap()}中的下标, 按id排序时为-1
+	 */
+	private int orderFieldIndex(String orderField)
+	{
+		if (orderField == null || orderField.equals(sqlProvider.getIdField().getName())) {
+			return -1;
+		}
+		int index = 0;
+		for (Field field : sqlProvider.getFieldMap().keySet()) {
+			if (field.getName().equals(orderField)) {
+				return index;
+			}
+			index++;
+		}
+		throw new IllegalArgumentException("Unknown order field: " + orderField);
+	}
+
+	/**
+	 * 区间查询的SQL, 没有其他条件时用1 = 1代替, 对应的参数是1
+	 */
+	private String provideFieldRangeSQL(String rangeFieldName, Object rangeValueMin, Object rangeValueMax,
+			boolean includeMin, boolean includeMax, String fieldConditionName, SQLLimit sqlLimit, String orderField,
+			String orderType)
+	{
+		String ocn = StringUtils.isEmpty(fieldConditionName) ? "1" : AbstractSQLProvider.underscoreName(fieldConditionName);
+		SQLFieldCondition fieldCondition = SQLFieldCondition.create(ocn, null);
+		SQLFieldRangeCondition rangeCondition = SQLFieldRangeCondition.create(AbstractSQLProvider.underscoreName(rangeFieldName),
+				rangeValueMin, rangeValueMax, includeMin, includeMax);
+
+		SQLOrder order = null;
+		if (!StringUtils.isEmpty(orderField)) {
+			order = SQLOrder.createOrder(orderField, orderType);
+		}
+		return sqlProvider.provideQueryByFieldRangeSQL(fieldCondition, rangeCondition, sqlLimit, order);
+	}
+
+	/**
+	 * 去掉重复的值, 分批执行in查询
+	 *
+	 * @param column
+	 * @param values
+	 * @return
+	 */
+	private List<T> queryIn(final String column, Collection<?> values)
+	{
+		List<Object> distinct = new ArrayList<Object>(new LinkedHashSet<Object>(values));
+		List<T> result = new ArrayList<>(distinct.size());
+		ExecutorService executor = queryExecutor;
+		if (executor == null || distinct.size() <= IN_CHUNK_SIZE || ReplicaRoutingOperator.isPrimaryPinned()) {
+			for (int from = 0; from < distinct.size(); from += IN_CHUNK_SIZE) {
+				result.addAll(queryInChunk(column, distinct.subList(from, Math.min(from + IN_CHUNK_SIZE, distinct.size()))));
+			}
+			return result;
+		}
+
+		List<Callable<List<T>>> tasks = new ArrayList<>();
+		for (int from = 0; from < distinct.size(); from += IN_CHUNK_SIZE) {
+			final List<Object> chunk = distinct.subList(from, Math.min(from + IN_CHUNK_SIZE, distinct.size()));
+			tasks.add(new Callable<List<T>>() {
+
+				@Override
+				public List<T> call()
+				{
+					return queryInChunk(column, chunk);
+				}
+			});
+		}
+		try {
+			for (Future<List<T>> future : executor.invokeAll(tasks)) {
+				result.addAll(future.get());
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLRuntimeException(e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new SQLRuntimeException(e.getCause());
+		}
+		return result;
+	}
+
+	private List<T> queryInChunk(String column, List<Object> chunk)
+	{
+		Object[] args = padInArgs(chunk);
+		String sql = sqlProvider.provideQueryByFieldInSQL(column, args.length);
+		logger.debug(sql);
+		return jdbcReader.query(sql, getRowMapper(), args);
+	}
+
+	/**
+	 * 区间查询的参数, 为null的边界不生成条件, 也不绑定参数
+	 *
+	 * @param conditionValue
+	 * @param rangeValueMin
+	 * @param rangeValueMax
+	 * @return
+	 */
+	private Object[] rangeArgs(Object conditionValue, Object rangeValueMin, Object rangeValueMax)
+	{
+		List<Object> args = new ArrayList<>(3);
+		args.add(conditionValue);
+		if (rangeValueMin != null) {
+			args.add(rangeValueMin);
+		}
+		if (rangeValueMax != null) {
+			args.add(rangeValueMax);
+		}
+		return args.toArray();
+	}
+
+	/**
+	 * 查询一页, 取满一页时用最后一条记录生成下一页的位置
+	 */
+	private SeekPage<T> seek(SQLFieldCondition fieldCondition, SQLFieldRangeCondition rangeCondition, Object[] conditionArgs,
+			String orderField, String orderType, SeekPage.Token after, int limit)
+	{
+		Assert.isTrue(limit > 0);
+		int orderIndex = orderFieldIndex(orderField);
+		String orderColumn = orderIndex < 0 ? null : AbstractSQLProvider.underscoreName(orderField);
+		SQLSeek seek = SQLSeek.create(orderColumn, SQLOrder.DESC_TYPE.equals(orderType), after != null, limit);
+		String sql = sqlProvider.provideQueryBySeekSQL(fieldCondition, rangeCondition, seek);
+		logger.debug(sql);
+
+		List<Object> args = new ArrayList<>(conditionArgs.length + 3);
+		args.addAll(Arrays.asList(conditionArgs));
+		if (after != null) {
+			if (orderColumn != null) {
+				args.add(after.getOrderValue());
+			}
+			args.add(after.getId());
+		}
+		args.add(limit);
+		List<T> rows = jdbcReader.query(sql, getRowMapper(), args.toArray());
+
+		SeekPage.Token next = null;
+		if (rows.size() == limit) {
+			Object[] values = sqlProvider.getAccessor().getValues(rows.get(limit - 1));
+			next = new SeekPage.Token(orderIndex < 0 ? null : values[orderIndex], values[values.length - 1]);
+		}
+		return new SeekPage<T>(rows, next);
+	}
+
+	private void setGeneratedId(T obj, long newId)
+	{
+		Class<?> idType = sqlProvider.getIdField().getType();
+		sqlProvider.getAccessor().setId(obj, idType == int.class || idType == Integer.class ? (Object) (int) newId : newId);
+	}
+
+	/**
+	 * insert语句的参数, 不是自增id时第一个是id, 之后是各字段的值
+	 *
+	 * @param obj
+	 * @param autoIncrememntId
+	 * @return
+	 */
+	private Object[] toInsertArgs(T obj, boolean autoIncrememntId)
+	{
+		Object[] values = sqlProvider.getAccessor().getValues(obj);
+		int fieldNum = values.length - 1;
+		Object idVal = values[fieldNum];
+		if (!autoIncrememntId) {
+			Object[] args = new Object[values.length];
+			args[0] = idVal;
+			System.arraycopy(values, 0, args, 1, fieldNum);
+			return args;
+		}
+		//id是自增类型
+		if (idVal instanceof Number && ((Number) idVal).longValue() > 0) {
+			throw new IllegalStateException("对于id自增对象,做insert时候id必须小于等于0");
 		}
+		return Arrays.copyOf(values, fieldNum);
+	}
+
+	/**
+	 * update语句的参数, 依次是各字段的值和id
+	 *
+	 * @param obj
+	 * @return
+	 */
+	private Object[] toUpdateArgs(T obj)
+	{
+		return sqlProvider.getAccessor().getValues(obj);
+	}
+
+	/**
+	 * upsert语句的参数, 各字段的值, 不含id
+	 *
+	 * @param obj
+	 * @return
+	 */
+	private Object[] toUpsertArgs(T obj)
+	{
+		Object[] values = sqlProvider.getAccessor().getValues(obj);
+		return Arrays.copyOf(values, values.length - 1);
 	}
 
 }
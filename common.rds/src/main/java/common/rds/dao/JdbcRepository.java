@@ -2,6 +2,7 @@ package common.rds.dao;
 
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import javax.annotation.PostConstruct;
@@ -11,13 +12,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.Assert;
 
 import common.rds.dbutils.DbunitsDsOperator;
 import common.rds.dbutils.JdbcOperator;
+import common.rds.dbutils.ReplicaRoutingOperator;
 import common.spring.SpringContext;
 
 /**
- * 数据基本组件获取, 如果需要获取支持事务的组件请使用{@link #getJdbcTemplate(String)}, 否则可以使用 {@link #getOperator(String)}
+ * 数据基本组件获取, 如果需要获取支持事务的组件请使用{@link #getJdbcTemplate(String)}, 否则可以使用 {@link #getOperator(String)}.
+ * 声明了{@link ReplicaGroup}时, 主库的{@link #getOperator(String)}把只读查询分配到从库
  *
  * @author wls
  */
@@ -84,6 +88,24 @@ public class JdbcRepository
 			JdbcTemplate jt = new JdbcTemplate(dsBean, false);
 			jdbcTemplateMap.put(dsBeanName, jt);
 		}
+		for (ReplicaGroup group : context.getBeansOfType(ReplicaGroup.class).values()) {
+			registerReplicaGroup(group);
+		}
 		instance = this;
 	}
+
+	private void registerReplicaGroup(ReplicaGroup group)
+	{
+		JdbcOperator primary = dbutilsMap.get(group.getPrimary());
+		Assert.notNull(primary, "No primary DataSource " + group.getPrimary());
+		Map<JdbcOperator, Integer> replicas = new LinkedHashMap<>();
+		for (Map.Entry<String, Integer> entry : group.getReplicas().entrySet()) {
+			JdbcOperator replica = dbutilsMap.get(entry.getKey());
+			Assert.notNull(replica, "No replica DataSource " + entry.getKey());
+			replicas.put(replica, entry.getValue());
+		}
+		dbutilsMap.put(group.getPrimary(), new ReplicaRoutingOperator(primary, replicas, group.getBalance()));
+		logger.info("Route reads of DataSource {} to replicas {} by {}", group.getPrimary(), group.getReplicas(),
+				group.getBalance());
+	}
 }
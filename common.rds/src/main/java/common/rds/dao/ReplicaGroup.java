@@ -0,0 +1,54 @@
+package common.rds.dao;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import common.rds.dbutils.ReplicaRoutingOperator.Balance;
+
+/**
+ * 一个主库和它的从库, 声明为Spring bean后由{@link JdbcRepository}生效: 主库名字对应的JdbcOperator改为读写分离的版本,
+ * JdbcTemplate仍然是主库. 库都用DataSource bean的名字表示
+ *
+ * @author wls
+ */
+public class ReplicaGroup
+{
+	private String primary;
+
+	/**
+	 * <从库, 权重>
+	 */
+	private Map<String, Integer> replicas = new LinkedHashMap<>();
+
+	private Balance balance = Balance.LEAST_OUTSTANDING;
+
+	public Balance getBalance()
+	{
+		return balance;
+	}
+
+	public String getPrimary()
+	{
+		return primary;
+	}
+
+	public Map<String, Integer> getReplicas()
+	{
+		return replicas;
+	}
+
+	public void setBalance(Balance balance)
+	{
+		this.balance = balance;
+	}
+
+	public void setPrimary(String primary)
+	{
+		this.primary = primary;
+	}
+
+	public void setReplicas(Map<String, Integer> replicas)
+	{
+		this.replicas = replicas;
+	}
+}
@@ -0,0 +1,77 @@
+package common.rds.dao;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * keyset分页的一页记录, 以及取下一页用的位置
+ *
+ * @author wls
+ */
+public class SeekPage<T>
+{
+	/**
+	 * 一页最后一条记录的排序值和id, 传给下一次查询
+	 */
+	public static final class Token implements Serializable
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final Object orderValue;
+
+		private final Object id;
+
+		public Token(Object orderValue, Object id)
+		{
+			this.orderValue = orderValue;
+			this.id = id;
+		}
+
+		public Object getId()
+		{
+			return id;
+		}
+
+		/**
+		 * @return 只按id排序时为null
+		 */
+		public Object getOrderValue()
+		{
+			return orderValue;
+		}
+
+		@Override
+		public String toString()
+		{
+			return orderValue == null ? String.valueOf(id) : orderValue + "," + id;
+		}
+	}
+
+	private final List<T> rows;
+
+	private final Token next;
+
+	public SeekPage(List<T> rows, Token next)
+	{
+		this.rows = rows;
+		this.next = next;
+	}
+
+	/**
+	 * @return 下一页的位置, 这一页不满时为null. 记录数正好是整页时, 下一页可能是空的
+	 */
+	public Token getNext()
+	{
+		return next;
+	}
+
+	public List<T> getRows()
+	{
+		return rows;
+	}
+
+	public boolean hasNext()
+	{
+		return next != null;
+	}
+}
@@ -0,0 +1,18 @@
+package common.rds.dbutils;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * 逐行读取的查询结果, 占用一个数据库连接. 读完最后一行时自动关闭, 提前结束时必须调用{@link #close()}, 可以用在try-with-resources中
+ *
+ * @author wls
+ */
+public interface CloseableIterator<T> extends Iterator<T>, Closeable
+{
+	/**
+	 * 释放结果集, 语句和连接, 可以重复调用
+	 */
+	@Override
+	void close();
+}
@@ -0,0 +1,228 @@
+package common.rds.dbutils;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * 按字段类型选择ResultSet的取值方法. 基本类型的字段遇到NULL时取0, 包装类型取null
+ *
+ * @author wls
+ */
+enum ColumnReader
+{
+	LONG {
+		@Override
+		Object read(ResultSet rs, int column) throws SQLException
+		{
+			return rs.getLong(column);
+		}
+	},
+	NULLABLE_LONG {
+		@Override
+		Object read(ResultSet rs, int column) throws SQLException
+		{
+			long value = rs.getLong(column);
+			return rs.wasNull() ? null : value;
+		}
+	},
+	INT {
+		@Override
+		Object read(ResultSet rs, int column) throws SQLException
+		{
+			return rs.getInt(column);
+		}
+	},
+	NULLABLE_INT {
+		@Override
+		Object read(ResultSet rs, int column) throws SQLException
+		{
+			int value = rs.getInt(column);
+			return rs.wasNull() ? null : value;
+		}
+	},
+	SHORT {
+		@Override
+		Object read(ResultSet rs, int column) throws SQLException
+		{
+			return rs.getShort(column);
+		}
+	},
+	NULLABLE_SHORT {
+		@Override
+		Object read(ResultSet rs, int column) throws SQLException
+		{
+			short value = rs.getShort(column);
+			return rs.wasNull() ? null : value;
+		}
+	},
+	BYTE {
+		@Override
+		Object read(ResultSet rs, int column) throws SQLException
+		{
+			return rs.getByte(column);
+		}
+	},
+	NULLABLE_BYTE {
+		@Override
+		Object read(ResultSet rs, int column) throws SQLException
+		{
+			byte value = rs.getByte(column);
+			return rs.wasNull() ? null : value;
+		}
+	},
+	BOOLEAN {
+		@Override
+		Object read(ResultSet rs, int column) throws SQLException
+		{
+			return rs.getBoolean(column);
+		}
+	},
+	NULLABLE_BOOLEAN {
+		@Override
+		Object read(ResultSet rs, int column) throws SQLException
+		{
+			boolean value = rs.getBoolean(column);
+			return rs.wasNull() ? null : value;
+		}
+	},
+	DOUBLE {
+		@Override
+		Object read(ResultSet rs, int column) throws SQLException
+		{
+			return rs.getDouble(column);
+		}
+	},
+	NULLABLE_DOUBLE {
+		@Override
+		Object read(ResultSet rs, int column) throws SQLException
+		{
+			double value = rs.getDouble(column);
+			return rs.wasNull() ? null : value;
+		}
+	},
+	FLOAT {
+		@Override
+		Object read(ResultSet rs, int column) throws SQLException
+		{
+			return rs.getFloat(column);
+		}
+	},
+	NULLABLE_FLOAT {
+		@Override
+		Object read(ResultSet rs, int column) throws SQLException
+		{
+			float value = rs.getFloat(column);
+			return rs.wasNull() ? null : value;
+		}
+	},
+	STRING {
+		@Override
+		Object read(ResultSet rs, int column) throws SQLException
+		{
+			return rs.getString(column);
+		}
+	},
+	BIG_DECIMAL {
+		@Override
+		Object read(ResultSet rs, int column) throws SQLException
+		{
+			return rs.getBigDecimal(column);
+		}
+	},
+	/**
+	 * java.util.Date和java.sql.Timestamp
+	 */
+	TIMESTAMP {
+		@Override
+		Object read(ResultSet rs, int column) throws SQLException
+		{
+			return rs.getTimestamp(column);
+		}
+	},
+	SQL_DATE {
+		@Override
+		Object read(ResultSet rs, int column) throws SQLException
+		{
+			return rs.getDate(column);
+		}
+	},
+	BYTES {
+		@Override
+		Object read(ResultSet rs, int column) throws SQLException
+		{
+			return rs.getBytes(column);
+		}
+	},
+	OBJECT {
+		@Override
+		Object read(ResultSet rs, int column) throws SQLException
+		{
+			return rs.getObject(column);
+		}
+	};
+
+	static ColumnReader of(Class<?> type)
+	{
+		if (type == long.class) {
+			return LONG;
+		}
+		if (type == Long.class) {
+			return NULLABLE_LONG;
+		}
+		if (type == int.class) {
+			return INT;
+		}
+		if (type == Integer.class) {
+			return NULLABLE_INT;
+		}
+		if (type == short.class) {
+			return SHORT;
+		}
+		if (type == Short.class) {
+			return NULLABLE_SHORT;
+		}
+		if (type == byte.class) {
+			return BYTE;
+		}
+		if (type == Byte.class) {
+			return NULLABLE_BYTE;
+		}
+		if (type == boolean.class) {
+			return BOOLEAN;
+		}
+		if (type == Boolean.class) {
+			return NULLABLE_BOOLEAN;
+		}
+		if (type == double.class) {
+			return DOUBLE;
+		}
+		if (type == Double.class) {
+			return NULLABLE_DOUBLE;
+		}
+		if (type == float.class) {
+			return FLOAT;
+		}
+		if (type == Float.class) {
+			return NULLABLE_FLOAT;
+		}
+		if (type == String.class) {
+			return STRING;
+		}
+		if (type == BigDecimal.class) {
+			return BIG_DECIMAL;
+		}
+		if (type == java.util.Date.class || type == java.sql.Timestamp.class) {
+			return TIMESTAMP;
+		}
+		if (type == java.sql.Date.class) {
+			return SQL_DATE;
+		}
+		if (type == byte[].class) {
+			return BYTES;
+		}
+		return OBJECT;
+	}
+
+	abstract Object read(ResultSet rs, int column) throws SQLException;
+}
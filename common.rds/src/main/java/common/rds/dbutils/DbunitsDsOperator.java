@@ -1,5 +1,8 @@
 package common.rds.dbutils;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Collections;
 import java.util.LinkedList;
@@ -9,6 +12,7 @@ import java.util.Queue;
 
 import javax.sql.DataSource;
 
+import org.apache.commons.dbutils.DbUtils;
 import org.apache.commons.dbutils.QueryRunner;
 import org.apache.commons.dbutils.ResultSetHandler;
 import org.apache.commons.dbutils.handlers.BeanHandler;
@@ -18,6 +22,7 @@ import org.apache.commons.dbutils.handlers.MapHandler;
 import org.apache.commons.dbutils.handlers.MapListHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.RowMapper;
 
 import common.rds.exp.SQLRuntimeException;
 
@@ -33,11 +38,27 @@ public class DbunitsDsOperator implements JdbcOperator
 
 	private QueryRunner qr;
 
+	/**
+	 * 非MySQL数据库流式查询默认的fetchSize
+	 */
+	private static final int DEFAULT_FETCH_SIZE = 1000;
+
+	/**
+	 * 流式查询的fetchSize, 0表示按连接的数据库决定: MySQL使用Integer.MIN_VALUE(驱动逐行读取的方式), 其他数据库使用
+	 * {@link #DEFAULT_FETCH_SIZE}, 因为它们大多不接受负数. MySQL连接使用useCursorFetch=true时可以设为正数
+	 */
+	private int fetchSize;
+
 	public void setDataSource(DataSource dataSource)
 	{
 		this.qr = new QueryRunner(dataSource);
 	}
 
+	public void setFetchSize(int fetchSize)
+	{
+		this.fetchSize = fetchSize;
+	}
+
 	public DbunitsDsOperator()
 	{
 		super();
@@ -201,6 +222,32 @@ public class DbunitsDsOperator implements JdbcOperator
 		return result;
 	}
 
+	@Override
+	public <T> CloseableIterator<T> stream(String sql, RowMapper<T> mapper, Object... params)
+	{
+		Connection conn = null;
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			conn = qr.getDataSource().getConnection();
+			ps = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			ps.setFetchSize(fetchSize != 0 ? fetchSize : defaultFetchSize(conn));
+			qr.fillStatement(ps, params);
+			rs = ps.executeQuery();
+			return new ResultSetIterator<T>(conn, ps, rs, mapper);
+		}
+		catch (SQLException e) {
+			DbUtils.closeQuietly(conn, ps, rs);
+			logger.error("SQL Error:", e);
+			throw new SQLRuntimeException(e);
+		}
+	}
+
+	private int defaultFetchSize(Connection conn) throws SQLException
+	{
+		return "MySQL".equalsIgnoreCase(conn.getMetaData().getDatabaseProductName()) ? Integer.MIN_VALUE : DEFAULT_FETCH_SIZE;
+	}
+
 	//	public long insertAndReturnAutoGeneratedID(String sql, Object... params)
 	//	{
 	//		PreparedStatement ps = null;
@@ -0,0 +1,244 @@
+package common.rds.dbutils;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.dbutils.ResultSetHandler;
+import org.apache.commons.dbutils.handlers.BeanListHandler;
+import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.RowMapper;
+
+import common.rds.annotation.ExcludeDBField;
+import common.rds.sql.AbstractSQLProvider;
+import common.rds.sql.FieldAccessor;
+import common.rds.sql.ISQLProvider;
+
+/**
+ * 把查询结果映射为实体对象, 代替BeanListHandler和BeanPropertyRowMapper. 每个实体类创建一次.
+ * <p>
+ * 每种列布局(列名顺序)第一次出现时按列名匹配字段(字段名或下划线形式, 不区分大小写), 之后按列序号和字段类型取值, 通过{@link FieldAccessor}一次设置一行的所有字段.
+ * 有列匹配不到实体类自己声明的持久化字段时, 这个布局使用原来的BeanListHandler/BeanPropertyRowMapper
+ *
+ * @author wls
+ */
+public class EntityRowMapper<T> implements ResultSetHandler<List<T>>, RowMapper<T>
+{
+	/**
+	 * 一种列布局的映射
+	 */
+	private static final class Layout
+	{
+		/**
+		 * 每一列对应的字段下标
+		 */
+		final int[] properties;
+
+		final ColumnReader[] readers;
+
+		/**
+		 * 是否覆盖了所有字段, 否则先取新对象的初始值, 保留没有查询的字段
+		 */
+		final boolean complete;
+
+		Layout(int[] properties, ColumnReader[] readers, boolean complete)
+		{
+			this.properties = properties;
+			this.readers = readers;
+			this.complete = complete;
+		}
+	}
+
+	/**
+	 * 列布局匹配不到字段
+	 */
+	private static final Layout UNMAPPED = new Layout(null, null, false);
+
+	private final Class<T> clz;
+
+	private final FieldAccessor accessor;
+
+	private final Field[] fields;
+
+	/**
+	 * <小写的字段名或下划线名, 字段下标>
+	 */
+	private final Map<String, Integer> propertyIndexes = new HashMap<>();
+
+	/**
+	 * <逗号分隔的列名, 映射>
+	 */
+	private final ConcurrentHashMap<String, Layout> layouts = new ConcurrentHashMap<>();
+
+	private volatile BeanPropertyRowMapper<T> fallbackRowMapper;
+
+	/**
+	 * @return 普通字段, 不含id
+	 */
+	private static List<Field> persistentFields(Class<?> clz, Field idField)
+	{
+		List<Field> list = new ArrayList<>();
+		for (Field f : clz.getDeclaredFields()) {
+			if (!Modifier.isStatic(f.getModifiers()) && !f.equals(idField) && f.getAnnotation(ExcludeDBField.class) == null) {
+				list.add(f);
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * 没有{@link ISQLProvider}时使用, 映射除了{@link ExcludeDBField}以外的非静态字段
+	 *
+	 * @param clz
+	 * @param idField
+	 */
+	public EntityRowMapper(Class<T> clz, Field idField)
+	{
+		this(clz, persistentFields(clz, idField), idField);
+	}
+
+	/**
+	 * 使用SQL提供者的字段和{@link FieldAccessor}, 和插入, 更新语句映射相同的字段
+	 *
+	 * @param clz
+	 * @param sqlProvider
+	 */
+	public EntityRowMapper(Class<T> clz, ISQLProvider sqlProvider)
+	{
+		this(clz, sqlProvider.getAccessor(), new ArrayList<>(sqlProvider.getFieldMap().keySet()),
+				sqlProvider.getIdField());
+	}
+
+	private EntityRowMapper(Class<T> clz, FieldAccessor accessor, List<Field> list, Field idField)
+	{
+		this.clz = clz;
+		this.accessor = accessor;
+		fields = list.toArray(new Field[list.size() + 1]);
+		fields[list.size()] = idField;
+		for (int i = 0; i < fields.length; i++) {
+			propertyIndexes.put(fields[i].getName().toLowerCase(), i);
+			propertyIndexes.put(AbstractSQLProvider.underscoreName(fields[i].getName()), i);
+		}
+	}
+
+	private EntityRowMapper(Class<T> clz, List<Field> list, Field idField)
+	{
+		this(clz, FieldAccessor.create(clz, list, idField), list, idField);
+	}
+
+	/**
+	 * 绑定一个结果集的列布局, 逐行映射时不用每行检查
+	 *
+	 * @param rs
+	 * @return 只能用于这个结果集
+	 * @throws SQLException
+	 */
+	public RowMapper<T> bind(ResultSet rs) throws SQLException
+	{
+		final Layout layout = layout(rs);
+		if (layout == UNMAPPED) {
+			return this;
+		}
+		return new RowMapper<T>() {
+
+			@Override
+			public T mapRow(ResultSet rs, int rowNum) throws SQLException
+			{
+				return map(rs, layout);
+			}
+		};
+	}
+
+	@Override
+	public List<T> handle(ResultSet rs) throws SQLException
+	{
+		Layout layout = layout(rs);
+		if (layout == UNMAPPED) {
+			return new BeanListHandler<T>(clz).handle(rs);
+		}
+		List<T> list = new ArrayList<>();
+		while (rs.next()) {
+			list.add(map(rs, layout));
+		}
+		return list;
+	}
+
+	/**
+	 * 单独映射一行时每次都要检查列布局, 多行的结果用{@link #handle(ResultSet)}
+	 */
+	@Override
+	public T mapRow(ResultSet rs, int rowNum) throws SQLException
+	{
+		Layout layout = layout(rs);
+		if (layout == UNMAPPED) {
+			if (fallbackRowMapper == null) {
+				fallbackRowMapper = new BeanPropertyRowMapper<T>(clz);
+			}
+			return fallbackRowMapper.mapRow(rs, rowNum);
+		}
+		return map(rs, layout);
+	}
+
+	private Layout layout(ResultSet rs) throws SQLException
+	{
+		ResultSetMetaData meta = rs.getMetaData();
+		int columns = meta.getColumnCount();
+		String[] labels = new String[columns];
+		StringBuilder key = new StringBuilder();
+		for (int i = 0; i < columns; i++) {
+			labels[i] = meta.getColumnLabel(i + 1).toLowerCase();
+			key.append(labels[i]).append(',');
+		}
+		Layout layout = layouts.get(key.toString());
+		if (layout != null) {
+			return layout;
+		}
+
+		int[] properties = new int[columns];
+		ColumnReader[] readers = new ColumnReader[columns];
+		boolean[] covered = new boolean[fields.length];
+		int coveredCount = 0;
+		layout = UNMAPPED;
+		for (int i = 0; i < columns; i++) {
+			Integer index = propertyIndexes.get(labels[i]);
+			if (index == null) {
+				break;
+			}
+			properties[i] = index;
+			readers[i] = ColumnReader.of(fields[index].getType());
+			if (!covered[index]) {
+				covered[index] = true;
+				coveredCount++;
+			}
+			if (i == columns - 1) {
+				layout = new Layout(properties, readers, coveredCount == fields.length);
+			}
+		}
+		layouts.putIfAbsent(key.toString(), layout);
+		return layout;
+	}
+
+	private T map(ResultSet rs, Layout layout) throws SQLException
+	{
+		T t;
+		try {
+			t = clz.newInstance();
+		}
+		catch (InstantiationException | IllegalAccessException e) {
+			throw new SQLException("Cannot create " + clz.getName() + ": " + e.getMessage(), e);
+		}
+		Object[] values = layout.complete ? new Object[fields.length] : accessor.getValues(t);
+		for (int i = 0; i < layout.readers.length; i++) {
+			values[layout.properties[i]] = layout.readers[i].read(rs, i + 1);
+		}
+		accessor.setValues(t, values);
+		return t;
+	}
+}
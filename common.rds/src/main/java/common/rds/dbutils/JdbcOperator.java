@@ -5,6 +5,7 @@ import java.util.Map;
 import java.util.Queue;
 
 import org.apache.commons.dbutils.ResultSetHandler;
+import org.springframework.jdbc.core.RowMapper;
 
 /**
  * @author wls
@@ -49,4 +50,17 @@ public interface JdbcOperator
 	public <T> Queue<T> columnQuery2Queue(String sql, Object... params);
 
 	public <T> T query(String sql, ResultSetHandler<T> rsh, Object... params);
+
+	/**
+	 * 流式查询, 结果逐行读取和映射, 内存占用和结果集大小无关. 返回的迭代器占用一个连接, 没有读完时必须关闭
+	 * 
+	 * @param sql
+	 *            SQL查询语句
+	 * @param mapper
+	 *            每行的映射
+	 * @param params
+	 *            SQL参数
+	 * @return
+	 */
+	public <T> CloseableIterator<T> stream(String sql, RowMapper<T> mapper, Object... params);
 }
\ No newline at end of file
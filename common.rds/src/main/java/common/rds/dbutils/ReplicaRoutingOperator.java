@@ -0,0 +1,338 @@
+package common.rds.dbutils;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.dbutils.ResultSetHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+
+/**
+ * 读写分离: 只读查询分配到从库, 以下情况使用主库:
+ * <ul>
+ * <li>当前线程在读写事务中</li>
+ * <li>当前线程在{@link #usePrimary()}的范围内, 用于刚写入后需要读到自己写的数据</li>
+ * <li>没有从库</li>
+ * </ul>
+ * 写操作不经过JdbcOperator, 仍然使用主库的JdbcTemplate
+ *
+ * @author wls
+ */
+public class ReplicaRoutingOperator implements JdbcOperator
+{
+	/**
+	 * 从库的选择方式
+	 */
+	public enum Balance
+	{
+		/**
+		 * 按权重随机
+		 */
+		WEIGHTED,
+
+		/**
+		 * 正在执行的查询数/权重最小的
+		 */
+		LEAST_OUTSTANDING
+	}
+
+	/**
+	 * {@link ReplicaRoutingOperator#usePrimary()}的范围, 关闭后恢复, 必须在同一个线程关闭
+	 */
+	public static final class PrimaryScope implements Closeable
+	{
+		private boolean closed;
+
+		private PrimaryScope()
+		{
+		}
+
+		@Override
+		public void close()
+		{
+			if (!closed) {
+				closed = true;
+				primaryDepth.get()[0]--;
+			}
+		}
+	}
+
+	private static final class Target
+	{
+		final JdbcOperator operator;
+
+		final int weight;
+
+		/**
+		 * 正在执行的查询数
+		 */
+		final AtomicInteger outstanding = new AtomicInteger();
+
+		Target(JdbcOperator operator, int weight)
+		{
+			this.operator = operator;
+			this.weight = weight;
+		}
+	}
+
+	/**
+	 * 当前线程嵌套的{@link #usePrimary()}层数
+	 */
+	private static final ThreadLocal<int[]> primaryDepth = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue()
+		{
+			return new int[1];
+		}
+	};
+
+	/**
+	 * @return 当前线程的查询是否固定使用主库: 在读写事务中或者在{@link #usePrimary()}的范围内
+	 */
+	public static boolean isPrimaryPinned()
+	{
+		return primaryDepth.get()[0] > 0 || TransactionSynchronizationManager.isActualTransactionActive()
+				&& !TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+	}
+
+	/**
+	 * 当前线程之后的查询使用主库, 直到返回的范围关闭, 可以嵌套. 用法:
+	 *
+	 * <pre>
+	 * try (PrimaryScope scope = ReplicaRoutingOperator.usePrimary()) {
+	 * 	dao.get(id);
+	 * }
+	 * </pre>
+	 *
+	 * @return
+	 */
+	public static PrimaryScope usePrimary()
+	{
+		primaryDepth.get()[0]++;
+		return new PrimaryScope();
+	}
+
+	private final Target primary;
+
+	private final Target[] replicas;
+
+	private final int totalWeight;
+
+	private final Balance balance;
+
+	/**
+	 * @param primary
+	 * @param replicas
+	 *            <从库, 权重>, 权重必须大于0
+	 * @param balance
+	 */
+	public ReplicaRoutingOperator(JdbcOperator primary, Map<JdbcOperator, Integer> replicas, Balance balance)
+	{
+		Assert.notNull(primary);
+		Assert.notNull(balance);
+		this.primary = new Target(primary, 1);
+		this.balance = balance;
+		List<Target> list = new ArrayList<>(replicas.size());
+		int total = 0;
+		for (Map.Entry<JdbcOperator, Integer> entry : replicas.entrySet()) {
+			Assert.isTrue(entry.getValue() > 0, "Replica weight must be positive");
+			list.add(new Target(entry.getKey(), entry.getValue()));
+			total += entry.getValue();
+		}
+		this.replicas = list.toArray(new Target[list.size()]);
+		totalWeight = total;
+	}
+
+	@Override
+	public <T> List<T> columnQuery(String sql, Object... params)
+	{
+		Target target = acquire();
+		try {
+			return target.operator.columnQuery(sql, params);
+		}
+		finally {
+			target.outstanding.decrementAndGet();
+		}
+	}
+
+	@Override
+	public <T> Queue<T> columnQuery2Queue(String sql)
+	{
+		Target target = acquire();
+		try {
+			return target.operator.columnQuery2Queue(sql);
+		}
+		finally {
+			target.outstanding.decrementAndGet();
+		}
+	}
+
+	@Override
+	public <T> Queue<T> columnQuery2Queue(String sql, Object... params)
+	{
+		Target target = acquire();
+		try {
+			return target.operator.columnQuery2Queue(sql, params);
+		}
+		finally {
+			target.outstanding.decrementAndGet();
+		}
+	}
+
+	@Override
+	public <T> T columnQuerySingle(String sql, Object... params)
+	{
+		Target target = acquire();
+		try {
+			return target.operator.columnQuerySingle(sql, params);
+		}
+		finally {
+			target.outstanding.decrementAndGet();
+		}
+	}
+
+	@Override
+	public <T> List<T> executeQuery(String sql, Class<T> clazz)
+	{
+		Target target = acquire();
+		try {
+			return target.operator.executeQuery(sql, clazz);
+		}
+		finally {
+			target.outstanding.decrementAndGet();
+		}
+	}
+
+	@Override
+	public <T> List<T> executeQuery(String sql, Class<T> clazz, Object... params)
+	{
+		Target target = acquire();
+		try {
+			return target.operator.executeQuery(sql, clazz, params);
+		}
+		finally {
+			target.outstanding.decrementAndGet();
+		}
+	}
+
+	@Override
+	public List<Map<String, Object>> executeQuery(String sql, Object... params)
+	{
+		Target target = acquire();
+		try {
+			return target.operator.executeQuery(sql, params);
+		}
+		finally {
+			target.outstanding.decrementAndGet();
+		}
+	}
+
+	@Override
+	public <T> T executeQueryObject(String sql, Class<T> clazz, Object... params)
+	{
+		Target target = acquire();
+		try {
+			return target.operator.executeQueryObject(sql, clazz, params);
+		}
+		finally {
+			target.outstanding.decrementAndGet();
+		}
+	}
+
+	@Override
+	public Map<String, Object> executeQueryRow(String sql, Object... params)
+	{
+		Target target = acquire();
+		try {
+			return target.operator.executeQueryRow(sql, params);
+		}
+		finally {
+			target.outstanding.decrementAndGet();
+		}
+	}
+
+	/**
+	 * @return 主库的JdbcOperator
+	 */
+	public JdbcOperator getPrimary()
+	{
+		return primary.operator;
+	}
+
+	@Override
+	public <T> T query(String sql, ResultSetHandler<T> rsh, Object... params)
+	{
+		Target target = acquire();
+		try {
+			return target.operator.query(sql, rsh, params);
+		}
+		finally {
+			target.outstanding.decrementAndGet();
+		}
+	}
+
+	/**
+	 * 流式查询只在打开时计入正在执行的查询数
+	 */
+	@Override
+	public <T> CloseableIterator<T> stream(String sql, RowMapper<T> mapper, Object... params)
+	{
+		Target target = acquire();
+		try {
+			return target.operator.stream(sql, mapper, params);
+		}
+		finally {
+			target.outstanding.decrementAndGet();
+		}
+	}
+
+	/**
+	 * 选择执行查询的库, 并计入正在执行的查询数
+	 */
+	private Target acquire()
+	{
+		Target target = route();
+		target.outstanding.incrementAndGet();
+		return target;
+	}
+
+	private Target route()
+	{
+		if (replicas.length == 0 || isPrimaryPinned()) {
+			return primary;
+		}
+		if (replicas.length == 1) {
+			return replicas[0];
+		}
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		if (balance == Balance.WEIGHTED) {
+			int r = random.nextInt(totalWeight);
+			for (Target replica : replicas) {
+				r -= replica.weight;
+				if (r < 0) {
+					return replica;
+				}
+			}
+			return replicas[replicas.length - 1];
+		}
+		//从随机位置开始比较, 负载相同时分散到不同的从库
+		int start = random.nextInt(replicas.length);
+		Target best = replicas[start];
+		long bestLoad = best.outstanding.get();
+		for (int i = 1; i < replicas.length; i++) {
+			Target replica = replicas[(start + i) % replicas.length];
+			long load = replica.outstanding.get();
+			if (load * best.weight < bestLoad * replica.weight) {
+				best = replica;
+				bestLoad = load;
+			}
+		}
+		return best;
+	}
+}
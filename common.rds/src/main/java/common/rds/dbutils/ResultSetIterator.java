@@ -0,0 +1,104 @@
+package common.rds.dbutils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.dbutils.DbUtils;
+import org.springframework.jdbc.core.RowMapper;
+
+import common.rds.exp.SQLRuntimeException;
+
+/**
+ * 在打开的结果集上逐行映射, 每次只持有一行
+ *
+ * @author wls
+ */
+class ResultSetIterator<T> implements CloseableIterator<T>
+{
+	private Connection conn;
+
+	private PreparedStatement ps;
+
+	private ResultSet rs;
+
+	private final RowMapper<T> mapper;
+
+	private int rowNum;
+
+	private T next;
+
+	/**
+	 * next是否已读取还没有返回
+	 */
+	private boolean pending;
+
+	private boolean closed;
+
+	ResultSetIterator(Connection conn, PreparedStatement ps, ResultSet rs, RowMapper<T> mapper) throws SQLException
+	{
+		this.conn = conn;
+		this.ps = ps;
+		this.rs = rs;
+		this.mapper = mapper instanceof EntityRowMapper ? ((EntityRowMapper<T>) mapper).bind(rs) : mapper;
+	}
+
+	@Override
+	public void close()
+	{
+		if (closed) {
+			return;
+		}
+		closed = true;
+		pending = false;
+		next = null;
+		DbUtils.closeQuietly(conn, ps, rs);
+		conn = null;
+		ps = null;
+		rs = null;
+	}
+
+	@Override
+	public boolean hasNext()
+	{
+		if (pending) {
+			return true;
+		}
+		if (closed) {
+			return false;
+		}
+		try {
+			if (!rs.next()) {
+				close();
+				return false;
+			}
+			next = mapper.mapRow(rs, rowNum++);
+			pending = true;
+			return true;
+		}
+		catch (SQLException e) {
+			close();
+			throw new SQLRuntimeException(e);
+		}
+	}
+
+	@Override
+	public T next()
+	{
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		T t = next;
+		next = null;
+		pending = false;
+		return t;
+	}
+
+	@Override
+	public void remove()
+	{
+		throw new UnsupportedOperationException();
+	}
+}
@@ -3,8 +3,10 @@ package common.rds.sql;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -115,6 +117,8 @@ abstract public class AbstractSQLProvider implements ISQLProvider
 
 	private Field idField;
 
+	private final FieldAccessor accessor;
+
 	protected final String tableName;
 
 	//SQL
@@ -153,6 +157,11 @@ abstract public class AbstractSQLProvider implements ISQLProvider
 
 	protected final String updateSQL;
 
+	/**
+	 * <形状, SQL>, 形状由操作, 条件字段, 范围边界, 排序和是否分页组成. 同一形状只拼接一次, 相同的SQL字符串也便于驱动缓存预编译语句
+	 */
+	private final ConcurrentHashMap<String, String> shapes = new ConcurrentHashMap<>();
+
 	protected final String deleteByIdSQL;
 
 	public AbstractSQLProvider(String idName, Class<?> persistentClass)
@@ -163,6 +172,7 @@ abstract public class AbstractSQLProvider implements ISQLProvider
 
 		prepareFields(idName);
 		Assert.notNull(idField);
+		accessor = FieldAccessor.create(persistentClass, new ArrayList<>(fieldMap.keySet()), idField);
 
 		//Prepare SQL
 		queryAllSQL = prepareQueryAllSQL();
@@ -192,6 +202,12 @@ abstract public class AbstractSQLProvider implements ISQLProvider
 		deleteByIdSQL = prepareDeleteByIdSQL();
 	}
 
+	@Override
+	public FieldAccessor getAccessor()
+	{
+		return accessor;
+	}
+
 	@Override
 	public Map<Field, String> getFieldMap()
 	{
@@ -204,6 +220,12 @@ abstract public class AbstractSQLProvider implements ISQLProvider
 		return idField;
 	}
 
+	@Override
+	public String getTableName()
+	{
+		return tableName;
+	}
+
 	@Override
 	public String getUnderscoreIdName()
 	{
@@ -225,8 +247,14 @@ abstract public class AbstractSQLProvider implements ISQLProvider
 	@Override
 	public String provideCountByFieldRangeSQL(SQLFieldCondition fieldCondition, SQLFieldRangeCondition fieldRangeCondition)
 	{
-		return MessageFormat.format(countByFieldRangeSQL, fieldCondition.getFieldCondition(),
-				fieldRangeCondition.getFieldRangeCondition());
+		String shape = "countByFieldRange|" + fieldCondition.getFieldCondition() + "|"
+				+ fieldRangeCondition.getFieldRangeCondition();
+		String sql = cachedSQL(shape);
+		if (sql == null) {
+			sql = cacheSQL(shape, MessageFormat.format(countByFieldRangeSQL, fieldCondition.getFieldCondition(),
+					fieldRangeCondition.getFieldRangeCondition()));
+		}
+		return sql;
 	}
 
 	/* (non-Javadoc)
@@ -235,7 +263,24 @@ abstract public class AbstractSQLProvider implements ISQLProvider
 	@Override
 	public String provideCountByFieldSQL(SQLFieldCondition fieldCondition)
 	{
-		return MessageFormat.format(countByFieldSQL, fieldCondition.getFieldCondition());
+		String shape = "countByField|" + fieldCondition.getFieldCondition();
+		String sql = cachedSQL(shape);
+		if (sql == null) {
+			sql = cacheSQL(shape, MessageFormat.format(countByFieldSQL, fieldCondition.getFieldCondition()));
+		}
+		return sql;
+	}
+
+	@Override
+	public String provideDeleteByFieldInSQL(String fieldName, int count)
+	{
+		String shape = "deleteByFieldIn|" + fieldName + "|" + count;
+		String sql = cachedSQL(shape);
+		if (sql == null) {
+			StringBuilder sb = new StringBuilder("delete from ").append(tableName).append(" where ");
+			sql = cacheSQL(shape, appendInCondition(sb, fieldName, count).toString());
+		}
+		return sql;
 	}
 
 	/*
@@ -253,13 +298,62 @@ abstract public class AbstractSQLProvider implements ISQLProvider
 		return insertSQL;
 	}
 
+	@Override
+	public String provideInsertSQL(boolean autoIncrementId, boolean ignore)
+	{
+		String shape = "insert|" + autoIncrementId + "|" + ignore;
+		String sql = cachedSQL(shape);
+		if (sql == null) {
+			sql = autoIncrementId ? MessageFormat.format(insertSQL, "", "") : MessageFormat.format(insertSQL,
+					underscoreIdName + ",", "?,");
+			if (ignore) {
+				sql = sql.replace("insert into", "insert ignore into");
+			}
+			sql = cacheSQL(shape, sql);
+		}
+		return sql;
+	}
+
+	@Override
+	public String provideInsertSQL(boolean autoIncrementId, boolean ignore, int rows)
+	{
+		String sql = provideInsertSQL(autoIncrementId, ignore);
+		if (rows <= 1) {
+			return sql;
+		}
+		String values = sql.substring(sql.lastIndexOf(" values ") + " values ".length());
+		StringBuilder sb = new StringBuilder(sql.length() + (values.length() + 1) * (rows - 1)).append(sql);
+		for (int i = 1; i < rows; i++) {
+			sb.append(',').append(values);
+		}
+		return sb.toString();
+	}
+
 	/* (non-Javadoc)
 	 * @see com.huishi.sz.common.rds.sql.ISQLProvider#provideQueryAllSQL()
 	 */
 	@Override
 	public String provideQueryAllSQL(SQLOrder order)
 	{
-		return MessageFormat.format(queryAllSQL, order == null ? "" : order.getOrderClause());
+		String orderClause = order == null ? "" : order.getOrderClause();
+		String shape = "queryAll|" + orderClause;
+		String sql = cachedSQL(shape);
+		if (sql == null) {
+			sql = cacheSQL(shape, MessageFormat.format(queryAllSQL, orderClause));
+		}
+		return sql;
+	}
+
+	@Override
+	public String provideQueryByFieldInSQL(String fieldName, int count)
+	{
+		String shape = "queryByFieldIn|" + fieldName + "|" + count;
+		String sql = cachedSQL(shape);
+		if (sql == null) {
+			StringBuilder sb = new StringBuilder(MessageFormat.format(queryAllSQL, ""));
+			sql = cacheSQL(shape, appendInCondition(sb.append("where "), fieldName, count).toString());
+		}
+		return sql;
 	}
 
 	@Override
@@ -268,12 +362,82 @@ abstract public class AbstractSQLProvider implements ISQLProvider
 		return queryByIdSQL;
 	}
 
+	@Override
+	public String provideQueryColumnsByFieldInSQL(String columns, String fieldName, int count)
+	{
+		String shape = "queryColumnsByFieldIn|" + columns + "|" + fieldName + "|" + count;
+		String sql = cachedSQL(shape);
+		if (sql == null) {
+			StringBuilder sb = new StringBuilder("select ").append(columns).append(" from ").append(tableName);
+			sql = cacheSQL(shape, appendInCondition(sb.append(" where "), fieldName, count).toString());
+		}
+		return sql;
+	}
+
 	@Override
 	public String provideUpdateSQL()
 	{
 		return updateSQL;
 	}
 
+	@Override
+	public String provideUpsertSQL(String keyFieldName)
+	{
+		String shape = "upsert|" + keyFieldName;
+		String sql = cachedSQL(shape);
+		if (sql == null) {
+			sql = cacheSQL(shape, prepareUpsertSQL(underscoreName(keyFieldName)));
+		}
+		return sql;
+	}
+
+	/**
+	 * 缓存一个形状的SQL, 并发生成时以先放入的为准
+	 *
+	 * @param shape
+	 * @param sql
+	 * @return 缓存中的SQL
+	 */
+	protected String cacheSQL(String shape, String sql)
+	{
+		String old = shapes.putIfAbsent(shape, sql);
+		if (old != null) {
+			return old;
+		}
+		logger.info("cache {} sql: {}", shape, sql);
+		return sql;
+	}
+
+	/**
+	 * @param shape
+	 * @return 已生成的SQL, 没有时为null
+	 */
+	protected String cachedSQL(String shape)
+	{
+		return shapes.get(shape);
+	}
+
+	/**
+	 * 各数据库的upsert语法不同, 由子类生成
+	 *
+	 * @param keyColumn
+	 *            唯一索引的列名
+	 * @return
+	 */
+	protected abstract String prepareUpsertSQL(String keyColumn);
+
+	/**
+	 * 追加field in (?,?,...)
+	 */
+	private StringBuilder appendInCondition(StringBuilder sb, String fieldName, int count)
+	{
+		sb.append(fieldName).append(" in (");
+		for (int i = 0; i < count; i++) {
+			sb.append(i == 0 ? "?" : ",?");
+		}
+		return sb.append(")");
+	}
+
 	private String prepareCountAllSQL()
 	{
 		StringBuffer sb = new StringBuffer();
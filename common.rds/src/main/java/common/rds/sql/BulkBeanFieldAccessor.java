@@ -0,0 +1,50 @@
+package common.rds.sql;
+
+import net.sf.cglib.beans.BulkBean;
+
+/**
+ * 通过cglib生成的BulkBean调用getter/setter, 读写一行只有一次非反射的调用
+ *
+ * @author wls
+ */
+class BulkBeanFieldAccessor extends FieldAccessor
+{
+	private final BulkBean all;
+
+	private final BulkBean id;
+
+	/**
+	 * 各数组的最后一个是id
+	 */
+	BulkBeanFieldAccessor(Class<?> clz, String[] getters, String[] setters, Class<?>[] types)
+	{
+		int last = getters.length - 1;
+		all = BulkBean.create(clz, getters, setters, types);
+		id = BulkBean.create(clz, new String[] { getters[last] }, new String[] { setters[last] },
+				new Class<?>[] { types[last] });
+	}
+
+	@Override
+	public Object getId(Object obj)
+	{
+		return id.getPropertyValues(obj)[0];
+	}
+
+	@Override
+	public Object[] getValues(Object obj)
+	{
+		return all.getPropertyValues(obj);
+	}
+
+	@Override
+	public void setId(Object obj, Object value)
+	{
+		id.setPropertyValues(obj, new Object[] { value });
+	}
+
+	@Override
+	public void setValues(Object obj, Object[] values)
+	{
+		all.setPropertyValues(obj, values);
+	}
+}
@@ -0,0 +1,96 @@
+package common.rds.sql;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 一个实体类的字段读写, 每个实体类创建一次. 字段顺序是[普通字段..., id], 即update语句的参数顺序.
+ * <p>
+ * 所有字段都有public的getter/setter时用cglib的BulkBean生成访问类, 一次调用读写一行的所有字段; 否则使用反射
+ *
+ * @author wls
+ */
+public abstract class FieldAccessor
+{
+	private static final Logger logger = LoggerFactory.getLogger(FieldAccessor.class);
+
+	/**
+	 * @param clz
+	 * @param fields
+	 *            普通字段
+	 * @param idField
+	 * @return
+	 */
+	public static FieldAccessor create(Class<?> clz, List<Field> fields, Field idField)
+	{
+		Field[] all = fields.toArray(new Field[fields.size() + 1]);
+		all[fields.size()] = idField;
+		String[] getters = new String[all.length];
+		String[] setters = new String[all.length];
+		Class<?>[] types = new Class<?>[all.length];
+		for (int i = 0; i < all.length; i++) {
+			types[i] = all[i].getType();
+			getters[i] = accessorName(clz, all[i], types[i] == boolean.class ? "is" : "get", null);
+			if (getters[i] == null && types[i] == boolean.class) {
+				getters[i] = accessorName(clz, all[i], "get", null);
+			}
+			setters[i] = accessorName(clz, all[i], "set", types[i]);
+			if (getters[i] == null || setters[i] == null) {
+				logger.info("No public accessor for field {}.{}, use reflection", clz.getSimpleName(), all[i].getName());
+				return new ReflectionFieldAccessor(all);
+			}
+		}
+		try {
+			return new BulkBeanFieldAccessor(clz, getters, setters, types);
+		}
+		catch (RuntimeException e) {
+			logger.warn("Generate accessor of " + clz.getName() + " error, use reflection", e);
+			return new ReflectionFieldAccessor(all);
+		}
+	}
+
+	/**
+	 * @return getter或setter的方法名, 不存在或者类型不一致时返回null
+	 */
+	private static String accessorName(Class<?> clz, Field field, String prefix, Class<?> parameterType)
+	{
+		String name = prefix + Character.toUpperCase(field.getName().charAt(0)) + field.getName().substring(1);
+		try {
+			Method method = parameterType == null ? clz.getMethod(name) : clz.getMethod(name, parameterType);
+			return parameterType != null || method.getReturnType() == field.getType() ? name : null;
+		}
+		catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @param obj
+	 * @return id的值
+	 */
+	public abstract Object getId(Object obj);
+
+	/**
+	 * @param obj
+	 * @return 所有字段的值, 最后一个是id
+	 */
+	public abstract Object[] getValues(Object obj);
+
+	/**
+	 * @param obj
+	 * @param id
+	 *            类型和id字段一致
+	 */
+	public abstract void setId(Object obj, Object id);
+
+	/**
+	 * @param obj
+	 * @param values
+	 *            所有字段的值, 最后一个是id. 用于新创建的对象, 基本类型的字段为null时保持0
+	 */
+	public abstract void setValues(Object obj, Object[] values);
+}
@@ -0,0 +1,38 @@
+package common.rds.sql;
+
+/**
+ * H2数据库(MySQL兼容模式), 用于测试. 只有upsert使用H2自己的merge语法
+ *
+ * @author wls
+ */
+public class H2SQLProvider extends MySQLProvider
+{
+
+	/**
+	 * @param idName
+	 */
+	public H2SQLProvider(String idName, Class<?> clz)
+	{
+		super(idName, clz);
+	}
+
+	/**
+	 * merge into tableName(fields) key(keyColumn) values(...)
+	 */
+	@Override
+	protected String prepareUpsertSQL(String keyColumn)
+	{
+		StringBuilder columns = new StringBuilder();
+		StringBuilder values = new StringBuilder();
+		for (String column : getFieldMap().values()) {
+			if (columns.length() > 0) {
+				columns.append(",");
+				values.append(",");
+			}
+			columns.append(column);
+			values.append("?");
+		}
+		return "merge into " + tableName + "(" + columns + ") key(" + keyColumn + ") values (" + values + ")";
+	}
+
+}
@@ -9,6 +9,11 @@ import java.util.Map;
 public interface ISQLProvider
 {
 
+	/**
+	 * @return 实体类的字段读写, 字段顺序和{@link #getFieldMap()}一致, 最后是id
+	 */
+	FieldAccessor getAccessor();
+
 	/**
 	 * @return
 	 */
@@ -19,6 +24,11 @@ public interface ISQLProvider
 	 */
 	Field getIdField();
 
+	/**
+	 * @return
+	 */
+	String getTableName();
+
 	/**
 	 * @return
 	 */
@@ -55,6 +65,17 @@ public interface ISQLProvider
 	 */
 	String provideCountByFieldSQL(SQLFieldCondition fieldCondition);
 
+	/**
+	 * delete from tableName where field in (?,?,...)
+	 *
+	 * @param fieldName
+	 *            列名
+	 * @param count
+	 *            in的参数个数, 同{@link #provideQueryByFieldInSQL(String, int)}
+	 * @return
+	 */
+	String provideDeleteByFieldInSQL(String fieldName, int count);
+
 	/**
 	 * delete from tableName where id = ?
 	 *
@@ -67,6 +88,30 @@ public interface ISQLProvider
 	 */
 	String provideInsertSQL();
 
+	/**
+	 * 完整的insert语句, 同一组参数只生成一次
+	 *
+	 * @param autoIncrementId
+	 *            true时不含id列
+	 * @param ignore
+	 *            是否insert ignore
+	 * @return
+	 */
+	String provideInsertSQL(boolean autoIncrementId, boolean ignore);
+
+	/**
+	 * 一次插入多行的insert语句, 类似insert into tableName(...) values (?,?),(?,?), 参数依次是每一行的值. 行数较多, 不缓存
+	 *
+	 * @param autoIncrementId
+	 *            true时不含id列
+	 * @param ignore
+	 *            是否insert ignore
+	 * @param rows
+	 *            行数
+	 * @return
+	 */
+	String provideInsertSQL(boolean autoIncrementId, boolean ignore, int rows);
+
 	/**
 	 * 提供查询所有记录的SQL,类似:
 	 * <p>
@@ -78,7 +123,9 @@ public interface ISQLProvider
 	String provideQueryAllSQL(SQLOrder order);
 
 	/**
-	 * select * from tableName where field = value and fieldRangeCondition [order by orderField limit start,num]
+	 * select * from tableName where field = value and fieldRangeCondition [order by orderField limit ?,?]
+	 * <p>
+	 * 有limit时最后两个参数是start和num
 	 *
 	 * @param fieldCondition
 	 * @param fieldRangeCondition
@@ -92,13 +139,42 @@ public interface ISQLProvider
 	/**
 	 * 根据field条件查询的SQL,类似：
 	 * <p>
-	 * select * from tableName where field = value [order by orderField limit start,num]
+	 * select * from tableName where field = value [order by orderField limit ?,?]
+	 * <p>
+	 * 有limit时最后两个参数是start和num
 	 *
 	 * @param fieldCondition
 	 * @return
 	 */
 	String provideQueryByFieldSQL(SQLFieldCondition fieldCondition, SQLLimit limit, SQLOrder order);
 
+	/**
+	 * select * from tableName where field in (?,?,...)
+	 *
+	 * @param fieldName
+	 *            列名
+	 * @param count
+	 *            in的参数个数, 为了复用SQL, 调用方应把个数补齐到少数几种(如2的幂)
+	 * @return
+	 */
+	String provideQueryByFieldInSQL(String fieldName, int count);
+
+	/**
+	 * keyset分页查询, 类似:
+	 * <p>
+	 * select * from tableName where field = value [and fieldRangeCondition] [and (orderField, id) > (?, ?)] order by
+	 * orderField, id limit ?
+	 * <p>
+	 * 参数依次是条件的值, 有上一页时上一页最后一条的排序值(按id排序时没有)和id, 最后是limit
+	 *
+	 * @param fieldCondition
+	 * @param fieldRangeCondition
+	 *            可以为null
+	 * @param seek
+	 * @return
+	 */
+	String provideQueryBySeekSQL(SQLFieldCondition fieldCondition, SQLFieldRangeCondition fieldRangeCondition, SQLSeek seek);
+
 	/**
 	 * select * from tableName where id = idValue
 	 *
@@ -106,9 +182,31 @@ public interface ISQLProvider
 	 */
 	String provideQueryByIdSQL();
 
+	/**
+	 * select columns from tableName where field in (?,?,...), 只查询部分列
+	 *
+	 * @param columns
+	 *            逗号分隔的列名
+	 * @param fieldName
+	 *            列名
+	 * @param count
+	 *            in的参数个数, 同{@link #provideQueryByFieldInSQL(String, int)}
+	 * @return
+	 */
+	String provideQueryColumnsByFieldInSQL(String columns, String fieldName, int count);
+
 	/**
 	 * @return
 	 */
 	String provideUpdateSQL();
 
+	/**
+	 * 按唯一键插入或更新的单条语句, 不含id列, 参数依次是{@link #getFieldMap()}中各字段的值. 唯一键冲突时更新其他字段, 保留原有的id
+	 *
+	 * @param keyFieldName
+	 *            唯一索引对应的字段名
+	 * @return
+	 */
+	String provideUpsertSQL(String keyFieldName);
+
 }
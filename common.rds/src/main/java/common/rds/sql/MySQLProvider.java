@@ -25,9 +25,15 @@ public class MySQLProvider extends AbstractSQLProvider
 	public String provideQueryByFieldRangeSQL(SQLFieldCondition fieldCondition, SQLFieldRangeCondition fieldRangeCondition,
 			SQLLimit limit, SQLOrder order)
 	{
-		return MessageFormat.format(queryByFieldRangeSQL, fieldCondition.getFieldCondition(), fieldRangeCondition
-				.getFieldRangeCondition(), order == null ? "" : order.getOrderClause(),
-				limit == null ? "" : limit.getMySqlLimitClause());
+		String orderClause = order == null ? "" : order.getOrderClause();
+		String shape = "queryByFieldRange|" + fieldCondition.getFieldCondition() + "|"
+				+ fieldRangeCondition.getFieldRangeCondition() + "|" + orderClause + "|" + (limit != null);
+		String sql = cachedSQL(shape);
+		if (sql == null) {
+			sql = cacheSQL(shape, MessageFormat.format(queryByFieldRangeSQL, fieldCondition.getFieldCondition(),
+					fieldRangeCondition.getFieldRangeCondition(), orderClause, limit == null ? "" : limit.getMySqlLimitClause()));
+		}
+		return sql;
 	}
 
 	/* (non-Javadoc)
@@ -37,8 +43,66 @@ public class MySQLProvider extends AbstractSQLProvider
 	public String provideQueryByFieldSQL(SQLFieldCondition fieldCondition, SQLLimit limit, SQLOrder order)
 	{
 		Assert.notNull(fieldCondition);
-		return MessageFormat.format(queryByFieldSQL, fieldCondition.getFieldCondition(),
-				order == null ? "" : order.getOrderClause(), limit == null ? "" : limit.getMySqlLimitClause());
+		String orderClause = order == null ? "" : order.getOrderClause();
+		String shape = "queryByField|" + fieldCondition.getFieldCondition() + "|" + orderClause + "|" + (limit != null);
+		String sql = cachedSQL(shape);
+		if (sql == null) {
+			sql = cacheSQL(shape, MessageFormat.format(queryByFieldSQL, fieldCondition.getFieldCondition(), orderClause,
+					limit == null ? "" : limit.getMySqlLimitClause()));
+		}
+		return sql;
+	}
+
+	@Override
+	public String provideQueryBySeekSQL(SQLFieldCondition fieldCondition, SQLFieldRangeCondition fieldRangeCondition,
+			SQLSeek seek)
+	{
+		String rangeCondition = fieldRangeCondition == null ? null : fieldRangeCondition.getFieldRangeCondition();
+		String shape = "queryBySeek|" + fieldCondition.getFieldCondition() + "|" + rangeCondition + "|" + seek.getOrderField()
+				+ "|" + seek.isDesc() + "|" + seek.isAfter();
+		String sql = cachedSQL(shape);
+		if (sql != null) {
+			return sql;
+		}
+		String direction = seek.isDesc() ? " desc" : "";
+		StringBuilder sb = new StringBuilder(MessageFormat.format(queryAllSQL, ""));
+		sb.append("where ").append(fieldCondition.getFieldCondition());
+		if (rangeCondition != null) {
+			sb.append(" and ").append(rangeCondition);
+		}
+		if (seek.isAfter()) {
+			String op = seek.isDesc() ? " < " : " > ";
+			if (seek.getOrderField() == null) {
+				sb.append(" and ").append(underscoreIdName).append(op).append("?");
+			}
+			else {
+				sb.append(" and (").append(seek.getOrderField()).append(", ").append(underscoreIdName).append(")").append(op)
+						.append("(?, ?)");
+			}
+		}
+		sb.append(" order by ");
+		if (seek.getOrderField() != null) {
+			sb.append(seek.getOrderField()).append(direction).append(", ");
+		}
+		sb.append(underscoreIdName).append(direction).append(" limit ?");
+		return cacheSQL(shape, sb.toString());
+	}
+
+	/**
+	 * insert ... on duplicate key update, 更新时把原有的id作为last_insert_id, 单条执行时可以从生成的key中取得
+	 */
+	@Override
+	protected String prepareUpsertSQL(String keyColumn)
+	{
+		StringBuilder sb = new StringBuilder(provideInsertSQL(true, false));
+		sb.append(" on duplicate key update ").append(underscoreIdName).append(" = last_insert_id(").append(underscoreIdName)
+				.append(")");
+		for (String column : getFieldMap().values()) {
+			if (!column.equals(keyColumn)) {
+				sb.append(", ").append(column).append(" = values(").append(column).append(")");
+			}
+		}
+		return sb.toString();
 	}
 
 }
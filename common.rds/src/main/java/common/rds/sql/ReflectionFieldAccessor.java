@@ -0,0 +1,84 @@
+package common.rds.sql;
+
+import java.lang.reflect.Field;
+
+import common.rds.exp.BugError;
+
+/**
+ * 用反射读写字段, 实体类没有完整的getter/setter时使用
+ *
+ * @author wls
+ */
+class ReflectionFieldAccessor extends FieldAccessor
+{
+	private final Field[] fields;
+
+	private final Field idField;
+
+	/**
+	 * @param fields
+	 *            最后一个是id
+	 */
+	ReflectionFieldAccessor(Field[] fields)
+	{
+		this.fields = fields;
+		this.idField = fields[fields.length - 1];
+		for (Field f : fields) {
+			f.setAccessible(true);
+		}
+	}
+
+	@Override
+	public Object getId(Object obj)
+	{
+		try {
+			return idField.get(obj);
+		}
+		catch (IllegalArgumentException | IllegalAccessException e) {
+			throw new BugError(e);
+		}
+	}
+
+	@Override
+	public Object[] getValues(Object obj)
+	{
+		Object[] values = new Object[fields.length];
+		try {
+			for (int i = 0; i < fields.length; i++) {
+				values[i] = fields[i].get(obj);
+			}
+		}
+		catch (IllegalArgumentException | IllegalAccessException e) {
+			throw new BugError(e);
+		}
+		return values;
+	}
+
+	@Override
+	public void setId(Object obj, Object id)
+	{
+		try {
+			idField.set(obj, id);
+		}
+		catch (IllegalArgumentException | IllegalAccessException e) {
+			throw new BugError(e);
+		}
+	}
+
+	@Override
+	public void setValues(Object obj, Object[] values)
+	{
+		try {
+			for (int i = 0; i < fields.length; i++) {
+				Object value = values[i];
+				if (value == null && fields[i].getType().isPrimitive()) {
+					continue;
+				}
+				fields[i].set(obj, value);
+			}
+		}
+		catch (IllegalArgumentException | IllegalAccessException e) {
+			throw new BugError(e);
+		}
+	}
+}
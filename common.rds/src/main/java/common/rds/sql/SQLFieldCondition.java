@@ -1,7 +1,5 @@
 package common.rds.sql;
 
-import java.text.MessageFormat;
-
 /**
  * @author wls
  */
@@ -16,8 +14,6 @@ public class SQLFieldCondition
 	private final String fieldName;
 	private final Object value;
 
-	private final static String CONDITION_FOMAT = "{0} = ?";
-
 	/**
 	 * @param fieldName
 	 * @param value
@@ -30,7 +26,7 @@ public class SQLFieldCondition
 
 	public String getFieldCondition()
 	{
-		return MessageFormat.format(CONDITION_FOMAT, fieldName);
+		return fieldName + " = ?";
 	}
 
 	public Object getValue()
@@ -1,7 +1,5 @@
 package common.rds.sql;
 
-import java.text.MessageFormat;
-
 /**
  * @author wls
  */
@@ -26,10 +24,6 @@ public class SQLFieldRangeCondition
 	private final Object maxVal;
 	private final boolean includeMin, includeMax;
 
-	private static final String LEFT_OR_RIGHT_CONDITION = "{0} {1} ?";
-
-	private static final String CONDITION = "{0} AND {1}";
-
 	/**
 	 * @param filedName
 	 * @param minVal
@@ -48,10 +42,8 @@ public class SQLFieldRangeCondition
 
 	public String getFieldRangeCondition()
 	{
-		String leftCondition = minVal == null ? null : MessageFormat.format(LEFT_OR_RIGHT_CONDITION, fieldName,
-				includeMin ? GTE_SYMBOL : GT_SYMBOL);
-		String rightCondition = maxVal == null ? null : MessageFormat.format(LEFT_OR_RIGHT_CONDITION, fieldName,
-				includeMax ? LTE_SYMBOL : LT_SYMBOL);
+		String leftCondition = minVal == null ? null : fieldName + " " + (includeMin ? GTE_SYMBOL : GT_SYMBOL) + " ?";
+		String rightCondition = maxVal == null ? null : fieldName + " " + (includeMax ? LTE_SYMBOL : LT_SYMBOL) + " ?";
 
 		if (leftCondition == null) {
 			return rightCondition;
@@ -61,7 +53,7 @@ public class SQLFieldRangeCondition
 			return leftCondition;
 		}
 
-		return MessageFormat.format(CONDITION, leftCondition, rightCondition);
+		return leftCondition + " AND " + rightCondition;
 	}
 
 	public Object getMaxVal()
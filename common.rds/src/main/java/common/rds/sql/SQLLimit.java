@@ -10,8 +10,6 @@
 
 package common.rds.sql;
 
-import java.text.MessageFormat;
-
 /**
  * @author wls
  */
@@ -23,7 +21,11 @@ public class SQLLimit
 		return new SQLLimit(start, limit);
 	}
 
-	private static final String MYSQL_LIMIT_CLAUSE = "limit {0},{1}";
+	/**
+	 * start和limit作为参数绑定, 不同的分页共用一条SQL
+	 */
+	private static final String MYSQL_LIMIT_CLAUSE = "limit ?,?";
+
 	int start;
 
 	int limit;
@@ -34,8 +36,18 @@ public class SQLLimit
 		this.limit = limit;
 	}
 
+	public int getLimit()
+	{
+		return limit;
+	}
+
 	public String getMySqlLimitClause()
 	{
-		return MessageFormat.format(MYSQL_LIMIT_CLAUSE, start, limit);
+		return MYSQL_LIMIT_CLAUSE;
+	}
+
+	public int getStart()
+	{
+		return start;
 	}
 }
@@ -1,7 +1,5 @@
 package common.rds.sql;
 
-import java.text.MessageFormat;
-
 /**
  * @author wls
  */
@@ -34,8 +32,6 @@ public class SQLOrder
 	public static final String DESC_TYPE = "desc";
 	public static final String INC_TYPE = "";
 
-	private static final String ORDER_CLAUSE = " order by {0} {1}";
-
 	String orderField;
 
 	String orderType;
@@ -48,7 +44,7 @@ public class SQLOrder
 
 	public String getOrderClause()
 	{
-		return MessageFormat.format(ORDER_CLAUSE, orderField, orderType == null ? "" : orderType);
+		return " order by " + orderField + " " + (orderType == null ? "" : orderType);
 	}
 
 	public String getOrderField()
@@ -0,0 +1,60 @@
+package common.rds.sql;
+
+/**
+ * 按上一页最后一条记录定位的分页(keyset分页), 排序列相同时按id排序. 不论翻到第几页, 数据库都只读取limit条记录
+ *
+ * @author wls
+ */
+public class SQLSeek
+{
+	/**
+	 * @param orderField
+	 *            排序的列名, null表示只按id排序. 排序列不能有null值
+	 * @param desc
+	 *            是否降序
+	 * @param after
+	 *            是否有上一页, 有时参数需要上一页最后一条的排序值和id
+	 * @param limit
+	 * @return
+	 */
+	public static SQLSeek create(String orderField, boolean desc, boolean after, int limit)
+	{
+		return new SQLSeek(orderField, desc, after, limit);
+	}
+
+	private final String orderField;
+
+	private final boolean desc;
+
+	private final boolean after;
+
+	private final int limit;
+
+	private SQLSeek(String orderField, boolean desc, boolean after, int limit)
+	{
+		this.orderField = orderField;
+		this.desc = desc;
+		this.after = after;
+		this.limit = limit;
+	}
+
+	public int getLimit()
+	{
+		return limit;
+	}
+
+	public String getOrderField()
+	{
+		return orderField;
+	}
+
+	public boolean isAfter()
+	{
+		return after;
+	}
+
+	public boolean isDesc()
+	{
+		return desc;
+	}
+}
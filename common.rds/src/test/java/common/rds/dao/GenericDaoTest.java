@@ -0,0 +1,145 @@
+package common.rds.dao;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import common.rds.dbutils.DbunitsDsOperator;
+import common.rds.dbutils.JdbcOperator;
+import common.rds.dbutils.ReplicaRoutingOperator;
+import common.rds.dbutils.ReplicaRoutingOperator.Balance;
+import common.rds.dbutils.ReplicaRoutingOperator.PrimaryScope;
+import common.rds.dbutils.TestDataSources;
+import common.rds.sql.H2SQLProvider;
+import common.rds.sql.SQLOrder;
+
+/**
+ * @author wls
+ */
+public class GenericDaoTest
+{
+	public static class TestItemDao extends GenericDao<TestItem>
+	{
+		public TestItemDao(JdbcDataSource primary, JdbcDataSource replica)
+		{
+			super("id");
+			sqlProvider = new H2SQLProvider("id", persistentClass);
+			jdbcTemplate = new JdbcTemplate(primary);
+			jdbcReader = new ReplicaRoutingOperator(new DbunitsDsOperator(primary),
+					Collections.<JdbcOperator, Integer> singletonMap(new DbunitsDsOperator(replica), 1), Balance.WEIGHTED);
+		}
+	}
+
+	private static final int ROWS = 1100;
+
+	private JdbcDataSource primaryDs;
+
+	private JdbcDataSource replicaDs;
+
+	private ExecutorService executor;
+
+	private TestItemDao dao;
+
+	@Before
+	public void setUp()
+	{
+		primaryDs = TestDataSources.create("primary");
+		replicaDs = TestDataSources.create("replica");
+		String sql = "create table test_item (id bigint primary key, name varchar(32))";
+		TestDataSources.execute(primaryDs, sql);
+		TestDataSources.execute(replicaDs, sql);
+		//从库还没有同步任何记录
+		TestDataSources.execute(primaryDs, "insert into test_item select x, 'item' || x from system_range(1, " + ROWS + ")");
+		executor = Executors.newFixedThreadPool(4);
+		dao = new TestItemDao(primaryDs, replicaDs);
+		dao.setQueryExecutor(executor);
+	}
+
+	@After
+	public void tearDown()
+	{
+		executor.shutdown();
+		TestDataSources.shutdown(primaryDs, replicaDs);
+	}
+
+	/**
+	 * 参数补齐时重复的id不会多删, 返回实际删除的行数
+	 */
+	@Test
+	public void testBatchDelete()
+	{
+		int[] counts = dao.batchDelete(Arrays.asList(1L, 2L, 3L));
+		assertEquals(1, counts.length);
+		assertEquals(3, counts[0]);
+		int rows = new JdbcTemplate(primaryDs).queryForObject("select count(*) from test_item", Integer.class);
+		assertEquals(ROWS - 3, rows);
+	}
+
+	/**
+	 * 当前线程固定使用主库时, 多批in查询也都在主库执行
+	 */
+	@Test
+	public void testGetByIdsPinnedToPrimary()
+	{
+		List<Long> ids = new ArrayList<>();
+		for (long id = 1; id <= ROWS; id++) {
+			ids.add(id);
+		}
+		assertEquals(0, dao.getByIds(ids).size());
+		PrimaryScope scope = ReplicaRoutingOperator.usePrimary();
+		try {
+			assertEquals(ROWS, dao.getByIds(ids).size());
+		}
+		finally {
+			scope.close();
+		}
+	}
+
+	/**
+	 * 排序字段相同的记录按id区分先后, 逐页读取时升序和降序都不重复也不遗漏
+	 */
+	@Test
+	public void testSeekEqualOrderValues()
+	{
+		TestDataSources.execute(replicaDs, "insert into test_item select x, 'item' || mod(x, 3) from system_range(1, 20)");
+		List<Long> expected = new ArrayList<>();
+		for (int name = 0; name < 3; name++) {
+			for (long id = 1; id <= 20; id++) {
+				if (id % 3 == name) {
+					expected.add(id);
+				}
+			}
+		}
+		assertEquals(expected, seekIds(SQLOrder.INC_TYPE));
+		Collections.reverse(expected);
+		assertEquals(expected, seekIds(SQLOrder.DESC_TYPE));
+	}
+
+	/**
+	 * 每页4条, 按name排序读取id在1到20之间的所有记录
+	 */
+	private List<Long> seekIds(String orderType)
+	{
+		List<Long> ids = new ArrayList<>();
+		SeekPage.Token after = null;
+		do {
+			SeekPage<TestItem> page = dao.seekByFieldRange("id", 1L, 20L, true, true, null, null, "name", orderType, after, 4);
+			for (TestItem item : page.getRows()) {
+				ids.add(item.getId());
+			}
+			after = page.getNext();
+		} while (after != null);
+		return ids;
+	}
+}
@@ -0,0 +1,95 @@
+package common.rds.dao;
+
+import static common.rds.dbutils.TestDataSources.nameOf;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import common.rds.dbutils.JdbcOperator;
+import common.rds.dbutils.ReplicaRoutingOperator;
+import common.rds.dbutils.ReplicaRoutingOperator.Balance;
+import common.rds.dbutils.TestDataSources;
+import common.spring.SpringContext;
+
+/**
+ * @author wls
+ */
+public class JdbcRepositoryTest
+{
+	private JdbcDataSource primaryDs;
+
+	private JdbcDataSource replica1Ds;
+
+	private JdbcDataSource replica2Ds;
+
+	private AnnotationConfigApplicationContext context;
+
+	@Before
+	public void setUp()
+	{
+		primaryDs = TestDataSources.create("primary");
+		replica1Ds = TestDataSources.create("replica1");
+		replica2Ds = TestDataSources.create("replica2");
+		context = new AnnotationConfigApplicationContext();
+		context.getBeanFactory().registerSingleton("primary", primaryDs);
+		context.getBeanFactory().registerSingleton("replica1", replica1Ds);
+		context.getBeanFactory().registerSingleton("replica2", replica2Ds);
+		context.register(SpringContext.class, JdbcRepository.class);
+	}
+
+	@After
+	public void tearDown()
+	{
+		context.close();
+		TestDataSources.shutdown(primaryDs, replica1Ds, replica2Ds);
+	}
+
+	/**
+	 * 声明了ReplicaGroup的主库查询分配到从库, JdbcTemplate和从库自己的JdbcOperator不变
+	 */
+	@Test
+	public void testReplicaGroup()
+	{
+		ReplicaGroup group = new ReplicaGroup();
+		group.setPrimary("primary");
+		group.getReplicas().put("replica1", 1);
+		group.getReplicas().put("replica2", 1);
+		group.setBalance(Balance.WEIGHTED);
+		context.getBeanFactory().registerSingleton("replicaGroup", group);
+		context.refresh();
+
+		JdbcRepository repository = context.getBean(JdbcRepository.class);
+		JdbcOperator operator = repository.getOperator("primary");
+		assertTrue(operator instanceof ReplicaRoutingOperator);
+		assertTrue(nameOf(operator).startsWith("replica"));
+		assertEquals("primary", nameOf(((ReplicaRoutingOperator) operator).getPrimary()));
+		assertEquals("primary",
+				repository.getJdbcTemplate("primary").queryForObject("select name from db_name", String.class));
+		assertEquals("replica1", nameOf(repository.getOperator("replica1")));
+	}
+
+	@Test(expected = BeanCreationException.class)
+	public void testUnknownReplica()
+	{
+		ReplicaGroup group = new ReplicaGroup();
+		group.setPrimary("primary");
+		group.getReplicas().put("replica3", 1);
+		context.getBeanFactory().registerSingleton("replicaGroup", group);
+		context.refresh();
+	}
+
+	@Test
+	public void testWithoutReplicaGroup()
+	{
+		context.refresh();
+		JdbcOperator operator = context.getBean(JdbcRepository.class).getOperator("primary");
+		assertTrue(!(operator instanceof ReplicaRoutingOperator));
+		assertEquals("primary", nameOf(operator));
+	}
+}
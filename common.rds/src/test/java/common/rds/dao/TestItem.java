@@ -0,0 +1,33 @@
+package common.rds.dao;
+
+/**
+ * 测试使用的实体, 对应表test_item
+ *
+ * @author wls
+ */
+public class TestItem
+{
+	private long id;
+
+	private String name;
+
+	public long getId()
+	{
+		return id;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public void setId(long id)
+	{
+		this.id = id;
+	}
+
+	public void setName(String name)
+	{
+		this.name = name;
+	}
+}
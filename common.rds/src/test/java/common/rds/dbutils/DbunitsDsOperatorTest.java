@@ -0,0 +1,74 @@
+package common.rds.dbutils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.RowMapper;
+
+import common.rds.exp.SQLRuntimeException;
+
+/**
+ * @author wls
+ */
+public class DbunitsDsOperatorTest
+{
+	private static final RowMapper<Long> ID_MAPPER = new RowMapper<Long>() {
+		@Override
+		public Long mapRow(ResultSet rs, int rowNum) throws SQLException
+		{
+			return rs.getLong(1);
+		}
+	};
+
+	private JdbcDataSource ds;
+
+	private DbunitsDsOperator operator;
+
+	@Before
+	public void setUp()
+	{
+		ds = TestDataSources.create("h2");
+		TestDataSources.execute(ds, "create table test_row as select x as id from system_range(1, 2500)");
+		operator = new DbunitsDsOperator(ds);
+	}
+
+	@After
+	public void tearDown()
+	{
+		TestDataSources.shutdown(ds);
+	}
+
+	/**
+	 * 不是MySQL时默认使用正数的fetchSize
+	 */
+	@Test
+	public void testStream()
+	{
+		long sum = 0;
+		int count = 0;
+		try (CloseableIterator<Long> it = operator.stream("select id from test_row where id > ? order by id", ID_MAPPER, 0)) {
+			while (it.hasNext()) {
+				sum += it.next();
+				count++;
+			}
+		}
+		assertEquals(2500, count);
+		assertEquals(2500L * 2501 / 2, sum);
+	}
+
+	/**
+	 * Integer.MIN_VALUE只有MySQL驱动接受
+	 */
+	@Test(expected = SQLRuntimeException.class)
+	public void testStreamMinFetchSize()
+	{
+		operator.setFetchSize(Integer.MIN_VALUE);
+		operator.stream("select id from test_row", ID_MAPPER).close();
+	}
+}
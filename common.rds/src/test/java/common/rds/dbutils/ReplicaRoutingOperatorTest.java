@@ -0,0 +1,214 @@
+package common.rds.dbutils;
+
+import static common.rds.dbutils.TestDataSources.nameOf;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import common.rds.dbutils.ReplicaRoutingOperator.Balance;
+import common.rds.dbutils.ReplicaRoutingOperator.PrimaryScope;
+
+/**
+ * @author wls
+ */
+public class ReplicaRoutingOperatorTest
+{
+	private static CountDownLatch started;
+
+	private static CountDownLatch release;
+
+	/**
+	 * H2函数, 阻塞调用它的查询直到{@link #release}
+	 *
+	 * @return
+	 * @throws InterruptedException
+	 */
+	public static int block() throws InterruptedException
+	{
+		started.countDown();
+		release.await();
+		return 1;
+	}
+
+	private JdbcDataSource primaryDs;
+
+	private JdbcDataSource replica1Ds;
+
+	private JdbcDataSource replica2Ds;
+
+	@Before
+	public void setUp()
+	{
+		primaryDs = TestDataSources.create("primary");
+		replica1Ds = TestDataSources.create("replica1");
+		replica2Ds = TestDataSources.create("replica2");
+	}
+
+	@After
+	public void tearDown()
+	{
+		TestDataSources.shutdown(primaryDs, replica1Ds, replica2Ds);
+	}
+
+	/**
+	 * 从库都空闲时分散到各个从库, 一个从库有正在执行的查询时选择另一个
+	 */
+	@Test
+	public void testLeastOutstanding() throws Exception
+	{
+		final ReplicaRoutingOperator operator = routing(Balance.LEAST_OUTSTANDING, 1, 1);
+		assertEquals(2, count(operator, 100).size());
+
+		String sql = "create alias block for \"" + ReplicaRoutingOperatorTest.class.getName() + ".block\"";
+		TestDataSources.execute(replica1Ds, sql);
+		TestDataSources.execute(replica2Ds, sql);
+		started = new CountDownLatch(1);
+		release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		Set<String> names;
+		Future<String> blocked;
+		try {
+			blocked = executor.submit(new Callable<String>() {
+				@Override
+				public String call()
+				{
+					return operator.columnQuerySingle("select name from db_name where block() = 1");
+				}
+			});
+			assertTrue(started.await(10, TimeUnit.SECONDS));
+			names = count(operator, 20).keySet();
+		}
+		finally {
+			release.countDown();
+			executor.shutdown();
+		}
+		assertEquals(1, names.size());
+		assertFalse(names.contains(blocked.get()));
+		assertNull(count(operator, 100).get("primary"));
+	}
+
+	@Test
+	public void testNoReplica()
+	{
+		ReplicaRoutingOperator operator = new ReplicaRoutingOperator(new DbunitsDsOperator(primaryDs),
+				Collections.<JdbcOperator, Integer> emptyMap(), Balance.WEIGHTED);
+		assertEquals("primary", nameOf(operator));
+	}
+
+	/**
+	 * 读写事务中使用主库, 只读事务和事务外使用从库
+	 */
+	@Test
+	public void testTransaction()
+	{
+		final ReplicaRoutingOperator operator = routing(Balance.WEIGHTED, 1, 1);
+		TransactionCallback<String> callback = new TransactionCallback<String>() {
+			@Override
+			public String doInTransaction(TransactionStatus status)
+			{
+				return nameOf(operator);
+			}
+		};
+		TransactionTemplate template = new TransactionTemplate(new DataSourceTransactionManager(primaryDs));
+		assertEquals("primary", template.execute(callback));
+		template.setReadOnly(true);
+		assertTrue(template.execute(callback).startsWith("replica"));
+		assertTrue(nameOf(operator).startsWith("replica"));
+	}
+
+	/**
+	 * 嵌套的范围全部关闭后才恢复使用从库, 重复关闭没有影响
+	 */
+	@Test
+	public void testUsePrimary()
+	{
+		ReplicaRoutingOperator operator = routing(Balance.WEIGHTED, 1, 1);
+		PrimaryScope outer = ReplicaRoutingOperator.usePrimary();
+		PrimaryScope inner = null;
+		try {
+			assertEquals("primary", nameOf(operator));
+			inner = ReplicaRoutingOperator.usePrimary();
+			assertEquals("primary", nameOf(operator));
+			inner.close();
+			assertTrue(ReplicaRoutingOperator.isPrimaryPinned());
+			assertEquals("primary", nameOf(operator));
+			outer.close();
+			assertFalse(ReplicaRoutingOperator.isPrimaryPinned());
+			assertTrue(nameOf(operator).startsWith("replica"));
+		}
+		finally {
+			if (inner != null) {
+				inner.close();
+			}
+			outer.close();
+		}
+		assertFalse(ReplicaRoutingOperator.isPrimaryPinned());
+
+		PrimaryScope scope = ReplicaRoutingOperator.usePrimary();
+		try {
+			assertEquals("primary", nameOf(operator));
+		}
+		finally {
+			scope.close();
+		}
+		assertFalse(ReplicaRoutingOperator.isPrimaryPinned());
+	}
+
+	/**
+	 * 按1:3的权重分配
+	 */
+	@Test
+	public void testWeighted()
+	{
+		Map<String, Integer> counts = count(routing(Balance.WEIGHTED, 1, 3), 2000);
+		assertNull(counts.get("primary"));
+		int replica1 = counts.get("replica1");
+		assertEquals(2000, replica1 + counts.get("replica2"));
+		//期望500, 标准差约19
+		assertTrue("replica1: " + replica1, replica1 > 400 && replica1 < 600);
+	}
+
+	/**
+	 * @return <库的名字, 查询次数>
+	 */
+	private Map<String, Integer> count(JdbcOperator operator, int queries)
+	{
+		Map<String, Integer> counts = new HashMap<>();
+		for (int i = 0; i < queries; i++) {
+			String name = nameOf(operator);
+			Integer count = counts.get(name);
+			counts.put(name, count == null ? 1 : count + 1);
+		}
+		return counts;
+	}
+
+	private ReplicaRoutingOperator routing(Balance balance, int weight1, int weight2)
+	{
+		Map<JdbcOperator, Integer> replicas = new LinkedHashMap<>();
+		replicas.put(new DbunitsDsOperator(replica1Ds), weight1);
+		replicas.put(new DbunitsDsOperator(replica2Ds), weight2);
+		return new ReplicaRoutingOperator(new DbunitsDsOperator(primaryDs), replicas, balance);
+	}
+}
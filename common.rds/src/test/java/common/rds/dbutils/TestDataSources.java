@@ -0,0 +1,67 @@
+package common.rds.dbutils;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.h2.jdbcx.JdbcDataSource;
+
+import common.rds.exp.SQLRuntimeException;
+
+/**
+ * 测试使用的H2内存库(MySQL兼容模式). 每个库有一张只有一行的表db_name, 内容是库的名字, 用来判断查询落在了哪个库
+ *
+ * @author wls
+ */
+public class TestDataSources
+{
+	private static final AtomicInteger DATABASE_SEQUENCE = new AtomicInteger();
+
+	/**
+	 * @param name
+	 *            写入db_name的名字
+	 * @return
+	 */
+	public static JdbcDataSource create(String name)
+	{
+		JdbcDataSource ds = new JdbcDataSource();
+		ds.setURL("jdbc:h2:mem:rds_test_" + DATABASE_SEQUENCE.incrementAndGet() + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+		execute(ds, "create table db_name (name varchar(32))");
+		execute(ds, "insert into db_name values ('" + name + "')");
+		return ds;
+	}
+
+	public static void execute(DataSource ds, String sql)
+	{
+		try (Connection con = ds.getConnection(); Statement st = con.createStatement()) {
+			st.execute(sql);
+		}
+		catch (SQLException e) {
+			throw new SQLRuntimeException(e);
+		}
+	}
+
+	/**
+	 * @param operator
+	 * @return 查询落在的库的名字
+	 */
+	public static String nameOf(JdbcOperator operator)
+	{
+		return operator.columnQuerySingle("select name from db_name");
+	}
+
+	/**
+	 * 删除内存库
+	 *
+	 * @param dss
+	 */
+	public static void shutdown(DataSource... dss)
+	{
+		for (DataSource ds : dss) {
+			execute(ds, "shutdown");
+		}
+	}
+}